@@ -0,0 +1,103 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.core.MethodParameter;
+import org.springframework.shell.CompletionContext;
+import org.springframework.shell.CompletionProposal;
+import org.springframework.shell.standard.ValueProviderSupport;
+
+import schemacrawler.shell.catalog.NameIndex;
+import schemacrawler.shell.state.SchemaCrawlerShellState;
+
+/**
+ * Completes names of database objects in the loaded catalog, from the
+ * name index. Fully qualified names are offered when they start with
+ * the word being completed, with or without identifier quotes, and
+ * otherwise plain names.
+ */
+@Configurable
+public class CatalogNameValueProvider
+  extends ValueProviderSupport
+{
+
+  private static final int MAX_COMPLETIONS = 100;
+
+  @Autowired
+  private SchemaCrawlerShellState state;
+
+  @Override
+  public List<CompletionProposal> complete(final MethodParameter parameter,
+                                           final CompletionContext completionContext,
+                                           final String[] hints)
+  {
+    final List<CompletionProposal> proposals = new ArrayList<>();
+    if (state == null || !state.isLoaded())
+    {
+      return proposals;
+    }
+
+    final String prefix = completionContext.currentWordUpToCursor();
+    final String word = prefix == null? "": prefix;
+    final Set<String> names = new LinkedHashSet<>();
+    for (final NameIndex.Entry entry: NameIndex.nameIndex(state.getCatalog())
+      .find(word, MAX_COMPLETIONS))
+    {
+      final String fullName = entry.getNamedObject().getFullName();
+      final String unquotedFullName = entry.getUnquotedFullName();
+      if (fullName.regionMatches(true, 0, word, 0, word.length()))
+      {
+        names.add(fullName);
+      }
+      else if (unquotedFullName
+        .regionMatches(true, 0, word, 0, word.length()))
+      {
+        names.add(unquotedFullName);
+      }
+      else
+      {
+        names.add(entry.getNamedObject().getName());
+      }
+    }
+    for (final String name: names)
+    {
+      proposals.add(new CompletionProposal(name));
+    }
+    return proposals;
+  }
+
+}
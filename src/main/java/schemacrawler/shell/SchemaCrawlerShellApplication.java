@@ -53,6 +53,12 @@ public class SchemaCrawlerShellApplication
     // No-op
   }
 
+  @Bean
+  public CatalogNameValueProvider catalogNameValueProvider()
+  {
+    return new CatalogNameValueProvider();
+  }
+
   @Bean
   public PromptProvider schemaCrawlerShellPromptProvider()
   {
@@ -0,0 +1,113 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import schemacrawler.schemacrawler.InclusionRule;
+
+/**
+ * Includes text that is included by any of a number of inclusion
+ * rules. Used to widen a limit, such as the tables in a loaded
+ * catalog, without changing the rules that are already in place.
+ */
+public final class AnyInclusionRule
+  implements InclusionRule
+{
+
+  private static final long serialVersionUID = -2876531042359624019L;
+
+  private final List<InclusionRule> inclusionRules;
+
+  public AnyInclusionRule(final InclusionRule... inclusionRules)
+  {
+    requireNonNull(inclusionRules, "No inclusion rules provided");
+
+    this.inclusionRules = new ArrayList<>();
+    for (final InclusionRule inclusionRule: inclusionRules)
+    {
+      // Rules are flattened, so that widening a limit again and again
+      // does not nest rules
+      if (inclusionRule instanceof AnyInclusionRule)
+      {
+        this.inclusionRules
+          .addAll(((AnyInclusionRule) inclusionRule).inclusionRules);
+      }
+      else if (inclusionRule != null
+               && !this.inclusionRules.contains(inclusionRule))
+      {
+        this.inclusionRules.add(inclusionRule);
+      }
+    }
+  }
+
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass())
+    {
+      return false;
+    }
+    return inclusionRules.equals(((AnyInclusionRule) obj).inclusionRules);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return inclusionRules.hashCode();
+  }
+
+  @Override
+  public boolean test(final String text)
+  {
+    for (final InclusionRule inclusionRule: inclusionRules)
+    {
+      if (inclusionRule.test(text))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "any" + inclusionRules;
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.sql.Connection;
+import java.util.logging.Level;
+
+import javax.sql.DataSource;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schemacrawler.Config;
+import schemacrawler.schemacrawler.SchemaCrawlerOptions;
+import schemacrawler.schemacrawler.SchemaRetrievalOptions;
+import schemacrawler.tools.catalogloader.CatalogLoader;
+import schemacrawler.tools.catalogloader.CatalogLoaderRegistry;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Loads a catalog with the catalog loader for the database system,
+ * using a single connection from the data source, which is returned
+ * to the pool once the catalog is loaded.
+ */
+public final class CatalogCrawler
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(CatalogCrawler.class.getName());
+
+  public static Catalog crawl(final DataSource dataSource,
+                              final Config additionalConfiguration,
+                              final SchemaRetrievalOptions schemaRetrievalOptions,
+                              final SchemaCrawlerOptions schemaCrawlerOptions)
+    throws Exception
+  {
+    try (final Connection connection = dataSource.getConnection();)
+    {
+      final CatalogLoaderRegistry catalogLoaderRegistry = new CatalogLoaderRegistry();
+      final CatalogLoader catalogLoader = catalogLoaderRegistry
+        .lookupCatalogLoader(schemaRetrievalOptions.getDatabaseServerType()
+          .getDatabaseSystemIdentifier());
+      LOGGER.log(Level.CONFIG,
+                 new StringFormat("Catalog loader: %s",
+                                  catalogLoader.getClass().getName()));
+
+      catalogLoader.setAdditionalConfiguration(additionalConfiguration);
+      catalogLoader.setConnection(connection);
+      catalogLoader.setSchemaRetrievalOptions(schemaRetrievalOptions);
+      catalogLoader.setSchemaCrawlerOptions(schemaCrawlerOptions);
+
+      final Catalog catalog = catalogLoader.loadCatalog();
+      requireNonNull(catalog, "Catalog could not be retrieved");
+
+      return catalog;
+    }
+  }
+
+  private CatalogCrawler()
+  {
+    // Prevent instantiation
+  }
+
+}
@@ -0,0 +1,435 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Column;
+import schemacrawler.schema.ForeignKey;
+import schemacrawler.schema.ForeignKeyColumnReference;
+import schemacrawler.schema.Index;
+import schemacrawler.schema.IndexColumn;
+import schemacrawler.schema.NamedObject;
+import schemacrawler.schema.PrimaryKey;
+import schemacrawler.schema.Routine;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Table;
+import schemacrawler.schema.Trigger;
+
+/**
+ * Hierarchical (Merkle) hash of a catalog. Each schema, table, column
+ * and other table detail has a hash, and the hash of each node covers
+ * the hashes of its children. Two fingerprints are compared by
+ * descending only into nodes whose hashes differ, so comparing nearly
+ * identical catalogs takes time in proportion to the differences, not
+ * to the size of the catalogs.
+ */
+public final class CatalogFingerprint
+  implements Serializable
+{
+
+  private static final long serialVersionUID = -2766584300962446263L;
+
+  private static final String CATALOG_FINGERPRINT = "schemacrawler.shell.catalog_fingerprint";
+  private static final int HASH_LENGTH = 16;
+
+  private static final Set<String> ALLOWED_CLASSES = new HashSet<>(Arrays
+    .asList(CatalogFingerprint.class.getName(),
+            TreeMap.class.getName(),
+            String.class.getName()));
+
+  /**
+   * Reads only allowed classes, so that a snapshot file cannot be used
+   * to create objects of any other class.
+   */
+  private static final class SnapshotInputStream
+    extends ObjectInputStream
+  {
+
+    private SnapshotInputStream(final InputStream in)
+      throws IOException
+    {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass objectStreamClass)
+      throws IOException, ClassNotFoundException
+    {
+      final String className = objectStreamClass.getName();
+      // Hashes are byte arrays
+      if (!ALLOWED_CLASSES.contains(className)
+          && !byte[].class.getName().equals(className))
+      {
+        throw new InvalidClassException(className,
+                                        "Not allowed in a catalog snapshot");
+      }
+      return super.resolveClass(objectStreamClass);
+    }
+
+  }
+
+  /**
+   * Gets the fingerprint for a catalog, computing it if it has not
+   * already been cached on the catalog.
+   *
+   * @param catalog
+   *        Catalog to fingerprint
+   * @return Catalog fingerprint
+   */
+  public static CatalogFingerprint fingerprint(final Catalog catalog)
+  {
+    requireNonNull(catalog, "No catalog provided");
+
+    final CatalogFingerprint cachedFingerprint = catalog
+      .getAttribute(CATALOG_FINGERPRINT);
+    if (cachedFingerprint != null)
+    {
+      return cachedFingerprint;
+    }
+
+    final List<CatalogFingerprint> schemas = catalog.getSchemas()
+      .parallelStream().map(schema -> schemaNode(catalog, schema))
+      .collect(Collectors.toList());
+    final CatalogFingerprint fingerprint = new CatalogFingerprint("catalog",
+                                                                  "",
+                                                                  schemas);
+    catalog.setAttribute(CATALOG_FINGERPRINT, fingerprint);
+    return fingerprint;
+  }
+
+  /**
+   * Loads a fingerprint from a snapshot file.
+   *
+   * @param snapshotFile
+   *        Snapshot file
+   * @return Catalog fingerprint
+   * @throws IOException
+   *         On an exception reading the file
+   */
+  public static CatalogFingerprint load(final Path snapshotFile)
+    throws IOException
+  {
+    try (
+        final ObjectInputStream in = new SnapshotInputStream(Files
+          .newInputStream(snapshotFile));)
+    {
+      return (CatalogFingerprint) in.readObject();
+    }
+    catch (final ClassNotFoundException e)
+    {
+      throw new IOException("Cannot read snapshot " + snapshotFile, e);
+    }
+  }
+
+  private static CatalogFingerprint columnNode(final Column column)
+  {
+    return new CatalogFingerprint("column:" + column.getName(),
+                                  values(column.getOrdinalPosition(),
+                                         column.getColumnDataType()
+                                           .getDatabaseSpecificTypeName(),
+                                         column.getSize(),
+                                         column.getDecimalDigits(),
+                                         column.isNullable(),
+                                         column.isAutoIncremented(),
+                                         column.getDefaultValue(),
+                                         column.getRemarks()),
+                                  Collections.emptyList());
+  }
+
+  private static CatalogFingerprint foreignKeyNode(final ForeignKey foreignKey)
+  {
+    final List<Object> columnReferences = new ArrayList<>();
+    for (final ForeignKeyColumnReference columnReference: foreignKey
+      .getColumnReferences())
+    {
+      columnReferences.add(columnReference.getForeignKeyColumn()
+        .getFullName());
+      columnReferences.add(columnReference.getPrimaryKeyColumn()
+        .getFullName());
+    }
+    return leaf("foreign-key:" + foreignKey.getName(),
+                columnReferences.toArray());
+  }
+
+  private static byte[] hash(final String value,
+                             final List<CatalogFingerprint> children)
+  {
+    final MessageDigest digest;
+    try
+    {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (final NoSuchAlgorithmException e)
+    {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException("Cannot compute hash", e);
+    }
+    digest.update(value.getBytes(UTF_8));
+    for (final CatalogFingerprint child: children)
+    {
+      digest.update(child.name.getBytes(UTF_8));
+      digest.update(child.hash);
+    }
+    return Arrays.copyOf(digest.digest(), HASH_LENGTH);
+  }
+
+  private static CatalogFingerprint indexNode(final Index index)
+  {
+    final List<Object> values = new ArrayList<>();
+    values.add(index.isUnique());
+    for (final IndexColumn indexColumn: index.getColumns())
+    {
+      values.add(indexColumn.getName());
+      values.add(indexColumn.getSortSequence());
+    }
+    return leaf("index:" + index.getName(), values.toArray());
+  }
+
+  private static CatalogFingerprint leaf(final String name,
+                                         final Object... values)
+  {
+    return new CatalogFingerprint(name,
+                                  values(values),
+                                  Collections.emptyList());
+  }
+
+  private static CatalogFingerprint primaryKeyNode(final PrimaryKey primaryKey)
+  {
+    final List<Object> values = new ArrayList<>();
+    for (final IndexColumn indexColumn: primaryKey.getColumns())
+    {
+      values.add(indexColumn.getName());
+    }
+    return leaf("primary-key:" + primaryKey.getName(), values.toArray());
+  }
+
+  private static CatalogFingerprint routineNode(final Routine routine)
+  {
+    return leaf("routine:" + routine.getSpecificName(),
+                routine.getName(),
+                routine.getRoutineType(),
+                routine.getColumns().stream().map(NamedObject::getName)
+                  .collect(Collectors.joining(",")),
+                routine.getDefinition(),
+                routine.getRemarks());
+  }
+
+  private static CatalogFingerprint schemaNode(final Catalog catalog,
+                                               final Schema schema)
+  {
+    final List<CatalogFingerprint> children = new ArrayList<>();
+    for (final Table table: catalog.getTables(schema))
+    {
+      children.add(tableNode(table));
+    }
+    for (final Routine routine: catalog.getRoutines(schema))
+    {
+      children.add(routineNode(routine));
+    }
+    return new CatalogFingerprint("schema:" + schema.getFullName(),
+                                  values(schema.getRemarks()),
+                                  children);
+  }
+
+  private static CatalogFingerprint tableNode(final Table table)
+  {
+    final List<CatalogFingerprint> children = new ArrayList<>();
+    for (final Column column: table.getColumns())
+    {
+      children.add(columnNode(column));
+    }
+    final PrimaryKey primaryKey = table.getPrimaryKey();
+    if (primaryKey != null)
+    {
+      children.add(primaryKeyNode(primaryKey));
+    }
+    for (final ForeignKey foreignKey: table.getImportedForeignKeys())
+    {
+      children.add(foreignKeyNode(foreignKey));
+    }
+    for (final Index index: table.getIndexes())
+    {
+      children.add(indexNode(index));
+    }
+    for (final Trigger trigger: table.getTriggers())
+    {
+      children.add(leaf("trigger:" + trigger.getName(),
+                        trigger.getEventManipulationType(),
+                        trigger.getConditionTiming(),
+                        trigger.getActionStatement()));
+    }
+    return new CatalogFingerprint("table:" + table.getName(),
+                                  values(table.getTableType(),
+                                         table.getDefinition(),
+                                         table.getRemarks()),
+                                  children);
+  }
+
+  private static String values(final Object... values)
+  {
+    final StringBuilder buffer = new StringBuilder();
+    for (final Object value: values)
+    {
+      buffer.append(String.valueOf(value)).append('\u0000');
+    }
+    return buffer.toString();
+  }
+
+  private final String name;
+  private final byte[] valueHash;
+  private final byte[] hash;
+  private final Map<String, CatalogFingerprint> children;
+
+  private CatalogFingerprint(final String name,
+                             final String value,
+                             final List<CatalogFingerprint> children)
+  {
+    this.name = name;
+    // Children are sorted by name, so that the hash does not depend on
+    // the order of retrieval. Children with the same name, such as
+    // unnamed indexes, are sorted by hash, and numbered to keep them
+    // apart.
+    final List<CatalogFingerprint> sortedChildren = new ArrayList<>(children);
+    sortedChildren.sort(Comparator
+      .comparing((final CatalogFingerprint child) -> child.name)
+      .thenComparing(CatalogFingerprint::getHash));
+    this.children = new TreeMap<>();
+    for (final CatalogFingerprint child: sortedChildren)
+    {
+      String childName = child.name;
+      for (int i = 2; this.children.containsKey(childName); i++)
+      {
+        childName = child.name + "#" + i;
+      }
+      this.children.put(childName, child);
+    }
+    valueHash = hash(value, Collections.emptyList());
+    hash = hash(value, new ArrayList<>(this.children.values()));
+  }
+
+  /**
+   * Compares this fingerprint with another, and lists differences.
+   * Each difference is a path to a node, prefixed with "+" if it is
+   * only in the other fingerprint, "-" if it is only in this one, and
+   * "~" if it has changed.
+   *
+   * @param other
+   *        Fingerprint to compare with
+   * @return Differences, or an empty list if the fingerprints match
+   */
+  public List<String> diff(final CatalogFingerprint other)
+  {
+    requireNonNull(other, "No fingerprint provided");
+
+    final List<String> differences = new ArrayList<>();
+    diff(other, "", differences);
+    return differences;
+  }
+
+  public String getHash()
+  {
+    final StringBuilder buffer = new StringBuilder(hash.length * 2);
+    for (final byte b: hash)
+    {
+      buffer.append(String.format("%02x", b));
+    }
+    return buffer.toString();
+  }
+
+  @Override
+  public String toString()
+  {
+    return name + " " + getHash();
+  }
+
+  private void diff(final CatalogFingerprint other,
+                    final String path,
+                    final List<String> differences)
+  {
+    if (Arrays.equals(hash, other.hash))
+    {
+      return;
+    }
+
+    // Report a change to the node itself, such as a changed data type
+    // or remarks, before any changes to its children
+    if (!Arrays.equals(valueHash, other.valueHash))
+    {
+      differences.add("~ " + path + name);
+    }
+
+    final String childPath = path + name + "/";
+    final Set<String> childNames = new TreeSet<>(children.keySet());
+    childNames.addAll(other.children.keySet());
+    for (final String childName: childNames)
+    {
+      final CatalogFingerprint child = children.get(childName);
+      final CatalogFingerprint otherChild = other.children.get(childName);
+      if (otherChild == null)
+      {
+        differences.add("- " + childPath + childName);
+      }
+      else if (child == null)
+      {
+        differences.add("+ " + childPath + childName);
+      }
+      else
+      {
+        child.diff(otherChild, childPath, differences);
+      }
+    }
+  }
+
+}
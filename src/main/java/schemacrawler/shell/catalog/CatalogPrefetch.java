@@ -0,0 +1,163 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Schema;
+import schemacrawler.schemacrawler.SchemaCrawlerOptions;
+import sf.util.ObjectToString;
+import sf.util.SchemaCrawlerLogger;
+
+/**
+ * Loads a catalog at the minimum info level in the background, right
+ * after connecting, while the user sets up filters and options. The
+ * prefetched catalog is used by a later load at the same info level and
+ * with the same options, and the prefetched schemas are used to load
+ * schemas one at a time. Otherwise the prefetch is cancelled.
+ */
+public final class CatalogPrefetch
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(CatalogPrefetch.class.getName());
+
+  public static final String PREFETCH = "schemacrawler.shell.prefetch";
+
+  private final SchemaCrawlerOptions schemaCrawlerOptions;
+  private final String options;
+  private final ExecutorService executorService;
+  private final Future<Catalog> prefetched;
+
+  /**
+   * Starts loading a catalog in the background.
+   *
+   * @param schemaCrawlerOptions
+   *        Options that the catalog is loaded with
+   * @param loader
+   *        Loads the catalog, using a single connection
+   */
+  public CatalogPrefetch(final SchemaCrawlerOptions schemaCrawlerOptions,
+                         final Callable<Catalog> loader)
+  {
+    this.schemaCrawlerOptions = requireNonNull(schemaCrawlerOptions,
+                                               "No SchemaCrawler options provided");
+    requireNonNull(loader, "No catalog loader provided");
+    options = ObjectToString.toString(schemaCrawlerOptions);
+
+    executorService = Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "schemacrawler-prefetch");
+      thread.setDaemon(true);
+      return thread;
+    });
+    prefetched = executorService.submit(loader);
+    executorService.shutdown();
+
+    LOGGER.log(Level.INFO, "Started prefetching catalog");
+  }
+
+  /**
+   * Cancels the prefetch, if it has not completed.
+   */
+  public void cancel()
+  {
+    if (prefetched.cancel(true))
+    {
+      LOGGER.log(Level.INFO, "Cancelled prefetching catalog");
+    }
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Gets the prefetched catalog, waiting for the prefetch to complete,
+   * if it was loaded with the given options.
+   *
+   * @param schemaCrawlerOptions
+   *        Options that the catalog is to be loaded with
+   * @return Prefetched catalog, or empty if the options are different,
+   *         or the prefetch failed
+   */
+  public Optional<Catalog> getCatalog(final SchemaCrawlerOptions schemaCrawlerOptions)
+  {
+    if (!options.equals(ObjectToString.toString(schemaCrawlerOptions)))
+    {
+      return Optional.empty();
+    }
+    return get();
+  }
+
+  /**
+   * Gets the schemas from the prefetched catalog, if the prefetch has
+   * completed, and selected schemas in the same way.
+   *
+   * @param schemaCrawlerOptions
+   *        Options that the catalog is to be loaded with
+   * @return Prefetched schemas, or empty if schemas were selected
+   *         differently, or the prefetch has not completed
+   */
+  public Optional<Collection<Schema>> getSchemas(final SchemaCrawlerOptions schemaCrawlerOptions)
+  {
+    if (!prefetched.isDone() || !this.schemaCrawlerOptions
+      .getSchemaInclusionRule()
+      .equals(schemaCrawlerOptions.getSchemaInclusionRule()))
+    {
+      return Optional.empty();
+    }
+    return get().map(Catalog::getSchemas);
+  }
+
+  private Optional<Catalog> get()
+  {
+    try
+    {
+      return Optional.of(prefetched.get());
+    }
+    catch (final InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      return Optional.empty();
+    }
+    catch (final Exception e)
+    {
+      LOGGER.log(Level.WARNING, "Could not prefetch catalog", e);
+      return Optional.empty();
+    }
+  }
+
+}
@@ -0,0 +1,355 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import schemacrawler.schema.BaseForeignKey;
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.ColumnReference;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Table;
+
+/**
+ * A view of a loaded catalog that shows only some of its tables, and
+ * the schemas for those tables. Foreign keys and weak associations to
+ * tables that are not in the view are hidden, and the view has its own
+ * attributes, starting with those of the catalog. All other catalog
+ * metadata is shown unchanged. Used to render parts of a catalog
+ * without copying it.
+ */
+public final class CatalogSubset
+  implements InvocationHandler
+{
+
+  private static final String WEAK_ASSOCIATIONS = "schemacrawler.weak_associations";
+
+  /**
+   * Creates a view of a catalog, showing only the given tables.
+   *
+   * @param catalog
+   *        Loaded catalog
+   * @param tables
+   *        Tables to show
+   * @return Catalog view
+   */
+  public static Catalog restrict(final Catalog catalog,
+                                 final Collection<Table> tables)
+  {
+    requireNonNull(catalog, "No catalog provided");
+    requireNonNull(tables, "No tables provided");
+
+    return (Catalog) Proxy
+      .newProxyInstance(CatalogSubset.class.getClassLoader(),
+                        new Class<?>[] { Catalog.class },
+                        new CatalogSubset(catalog, tables));
+  }
+
+  private static Object delegate(final Object target,
+                                 final Method method,
+                                 final Object[] args)
+    throws Throwable
+  {
+    try
+    {
+      return method.invoke(target, args);
+    }
+    catch (final InvocationTargetException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Gets the table that a table in a view shows.
+   */
+  private static Object unwrap(final Object object)
+  {
+    Object unwrapped = object;
+    while (unwrapped != null && Proxy.isProxyClass(unwrapped.getClass())
+           && Proxy
+             .getInvocationHandler(unwrapped) instanceof SubsetTable)
+    {
+      unwrapped = ((SubsetTable) Proxy.getInvocationHandler(unwrapped)).table;
+    }
+    return unwrapped;
+  }
+
+  /**
+   * Shows a table in the view, hiding foreign keys and weak
+   * associations to tables that are not in the view.
+   */
+  private final class SubsetTable
+    implements InvocationHandler
+  {
+
+    private final Table table;
+
+    SubsetTable(final Table table)
+    {
+      this.table = table;
+    }
+
+    @Override
+    public Object invoke(final Object proxy,
+                         final Method method,
+                         final Object[] args)
+      throws Throwable
+    {
+      final String methodName = method.getName();
+      final int argCount = args == null? 0: args.length;
+
+      switch (methodName)
+      {
+        case "equals":
+          if (argCount == 1)
+          {
+            return table.equals(unwrap(args[0]));
+          }
+          break;
+        case "hashCode":
+          if (argCount == 0)
+          {
+            return table.hashCode();
+          }
+          break;
+        case "compareTo":
+          if (argCount == 1)
+          {
+            return delegate(table,
+                            method,
+                            new Object[] { unwrap(args[0]) });
+          }
+          break;
+        default:
+          break;
+      }
+
+      final Object result = delegate(table, method, args);
+      if (("getForeignKeys".equals(methodName)
+           || "getImportedForeignKeys".equals(methodName)
+           || "getExportedForeignKeys".equals(methodName))
+          && argCount == 0)
+      {
+        return inView((Collection<?>) result, new ArrayList<>());
+      }
+      if ("getAttribute".equals(methodName)
+          && WEAK_ASSOCIATIONS.equals(args[0])
+          && result instanceof Collection)
+      {
+        return inView((Collection<?>) result, new TreeSet<>());
+      }
+      if ("getRelatedTables".equals(methodName) && argCount == 1)
+      {
+        final List<Table> relatedTables = new ArrayList<>();
+        for (final Object relatedTable: (Collection<?>) result)
+        {
+          if (subsetTables.containsKey(relatedTable))
+          {
+            relatedTables.add(subsetTables.get(relatedTable));
+          }
+        }
+        return relatedTables;
+      }
+      return result;
+    }
+
+    /**
+     * Keeps only foreign keys between tables in the view.
+     */
+    private <C extends Collection<Object>> C inView(final Collection<?> foreignKeys,
+                                                    final C inView)
+    {
+      for (final Object foreignKey: foreignKeys)
+      {
+        boolean isInView = true;
+        for (final ColumnReference columnReference: (BaseForeignKey<?>) foreignKey)
+        {
+          isInView = isInView
+                     && subsetTables.containsKey(columnReference
+                       .getForeignKeyColumn().getParent())
+                     && subsetTables.containsKey(columnReference
+                       .getPrimaryKeyColumn().getParent());
+        }
+        if (isInView)
+        {
+          inView.add(foreignKey);
+        }
+      }
+      return inView;
+    }
+
+  }
+
+  private final Catalog catalog;
+  private final Map<Object, Table> subsetTables;
+  private final List<Schema> schemas;
+  private final Map<String, Object> attributes;
+
+  private CatalogSubset(final Catalog catalog, final Collection<Table> tables)
+  {
+    this.catalog = catalog;
+
+    // Tables are keyed by the tables that they show
+    subsetTables = new LinkedHashMap<>();
+    final Set<Schema> tableSchemas = new LinkedHashSet<>();
+    for (final Table table: tables)
+    {
+      final Table subsetTable = (Table) unwrap(table);
+      subsetTables.put(subsetTable,
+                       (Table) Proxy
+                         .newProxyInstance(CatalogSubset.class
+                           .getClassLoader(),
+                                           interfaces(subsetTable.getClass()),
+                                           new SubsetTable(subsetTable)));
+      tableSchemas.add(table.getSchema());
+    }
+    schemas = new ArrayList<>();
+    for (final Schema schema: catalog.getSchemas())
+    {
+      if (tableSchemas.contains(schema))
+      {
+        schemas.add(schema);
+      }
+    }
+
+    attributes = new HashMap<>(catalog.getAttributes());
+  }
+
+  @Override
+  public Object invoke(final Object proxy,
+                       final Method method,
+                       final Object[] args)
+    throws Throwable
+  {
+    final String methodName = method.getName();
+    final int argCount = args == null? 0: args.length;
+
+    switch (methodName)
+    {
+      case "getTables":
+        if (argCount == 0)
+        {
+          return new ArrayList<>(subsetTables.values());
+        }
+        if (argCount == 1)
+        {
+          final List<Table> schemaTables = new ArrayList<>();
+          for (final Table table: subsetTables.values())
+          {
+            if (table.getSchema().equals(args[0]))
+            {
+              schemaTables.add(table);
+            }
+          }
+          return schemaTables;
+        }
+        break;
+      case "getSchemas":
+        if (argCount == 0)
+        {
+          return new ArrayList<>(schemas);
+        }
+        break;
+      case "getAttribute":
+        if (argCount == 1)
+        {
+          return attributes.get(args[0]);
+        }
+        if (argCount == 2)
+        {
+          return attributes.getOrDefault(args[0], args[1]);
+        }
+        break;
+      case "getAttributes":
+        return new HashMap<>(attributes);
+      case "hasAttribute":
+        return attributes.containsKey(args[0]);
+      case "lookupAttribute":
+        return Optional.ofNullable(attributes.get(args[0]));
+      case "removeAttribute":
+        attributes.remove(args[0]);
+        return null;
+      case "setAttribute":
+        if (args[1] == null)
+        {
+          attributes.remove(args[0]);
+        }
+        else
+        {
+          attributes.put((String) args[0], args[1]);
+        }
+        return null;
+      default:
+        break;
+    }
+
+    final Object result = delegate(catalog, method, args);
+
+    // Show tables in this view from lookups, and hide other tables
+    if ("lookupTable".equals(methodName) && result instanceof Optional
+        && ((Optional<?>) result).isPresent())
+    {
+      return Optional
+        .ofNullable(subsetTables.get(((Optional<?>) result).get()));
+    }
+    return result;
+  }
+
+  private Class<?>[] interfaces(final Class<?> tableClass)
+  {
+    final Set<Class<?>> interfaces = new LinkedHashSet<>();
+    for (Class<?> type = tableClass; type != null; type = type
+      .getSuperclass())
+    {
+      for (final Class<?> tableInterface: type.getInterfaces())
+      {
+        interfaces.add(tableInterface);
+      }
+    }
+    return interfaces.toArray(new Class<?>[interfaces.size()]);
+  }
+
+}
@@ -0,0 +1,403 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Column;
+import schemacrawler.schema.NamedObject;
+import schemacrawler.schema.Routine;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Table;
+import schemacrawler.schema.Trigger;
+import schemacrawler.schema.View;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Inverted full-text index over the remarks, table and view
+ * definitions, trigger bodies and routine definitions of a loaded
+ * catalog. Text is split into words, ignoring case, and each word has
+ * a posting list of the definitions that contain it, with the number
+ * of times it occurs. Searches match definitions that contain all the words, ranked by
+ * TF-IDF. The index is built once, and cached on the catalog.
+ */
+public final class DefinitionIndex
+  implements Serializable
+{
+
+  /**
+   * Kinds of indexed definitions.
+   */
+  public enum DefinitionKind
+  {
+   remarks,
+   table,
+   view,
+   trigger,
+   routine;
+  }
+
+  /**
+   * A definition that matches a search, with its rank.
+   */
+  public static final class Match
+    implements Serializable
+  {
+
+    private static final long serialVersionUID = 8843712290531145810L;
+
+    private final DefinitionKind kind;
+    private final NamedObject namedObject;
+    private final double score;
+
+    private Match(final DefinitionKind kind,
+                  final NamedObject namedObject,
+                  final double score)
+    {
+      this.kind = kind;
+      this.namedObject = namedObject;
+      this.score = score;
+    }
+
+    public DefinitionKind getKind()
+    {
+      return kind;
+    }
+
+    public NamedObject getNamedObject()
+    {
+      return namedObject;
+    }
+
+    public double getScore()
+    {
+      return score;
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format("%7.3f %-8s %s",
+                           score,
+                           kind,
+                           namedObject.getFullName());
+    }
+
+  }
+
+  private static final class Definition
+    implements Serializable
+  {
+
+    private static final long serialVersionUID = -3263447102957640113L;
+
+    private final DefinitionKind kind;
+    private final NamedObject namedObject;
+    private final int length;
+
+    private Definition(final DefinitionKind kind,
+                       final NamedObject namedObject,
+                       final int length)
+    {
+      this.kind = kind;
+      this.namedObject = namedObject;
+      this.length = length;
+    }
+
+  }
+
+  /**
+   * Posting list for a word, with ids of definitions in increasing
+   * order, and the number of times the word occurs in each.
+   */
+  private static final class Postings
+    implements Serializable
+  {
+
+    private static final long serialVersionUID = 4470385922101937361L;
+
+    private int[] definitionIds = new int[4];
+    private int[] frequencies = new int[4];
+    private int size;
+
+    void add(final int definitionId, final int frequency)
+    {
+      if (size == definitionIds.length)
+      {
+        definitionIds = Arrays.copyOf(definitionIds, size * 2);
+        frequencies = Arrays.copyOf(frequencies, size * 2);
+      }
+      definitionIds[size] = definitionId;
+      frequencies[size] = frequency;
+      size++;
+    }
+
+    int frequency(final int definitionId)
+    {
+      final int index = Arrays.binarySearch(definitionIds,
+                                            0,
+                                            size,
+                                            definitionId);
+      return index < 0? 0: frequencies[index];
+    }
+
+    void trim()
+    {
+      definitionIds = Arrays.copyOf(definitionIds, size);
+      frequencies = Arrays.copyOf(frequencies, size);
+    }
+
+  }
+
+  private static final long serialVersionUID = -2719865137609461628L;
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(DefinitionIndex.class.getName());
+
+  private static final String DEFINITION_INDEX = "schemacrawler.shell.definition_index";
+
+  /**
+   * Gets the definition index for a catalog, building it if it has not
+   * already been cached on the catalog.
+   *
+   * @param catalog
+   *        Loaded catalog
+   * @return Definition index
+   */
+  public static DefinitionIndex definitionIndex(final Catalog catalog)
+  {
+    requireNonNull(catalog, "No catalog provided");
+
+    final DefinitionIndex cachedIndex = catalog
+      .getAttribute(DEFINITION_INDEX);
+    if (cachedIndex != null)
+    {
+      return cachedIndex;
+    }
+
+    final DefinitionIndex index = new DefinitionIndex(catalog);
+    catalog.setAttribute(DEFINITION_INDEX, index);
+    return index;
+  }
+
+  private static boolean isWordCharacter(final char ch)
+  {
+    return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$'
+           || ch == '#';
+  }
+
+  /**
+   * Splits text into lower case words. Qualified names, such as
+   * SCHEMA.TABLE.COLUMN, are split into their parts.
+   */
+  private static List<String> words(final String text)
+  {
+    final List<String> words = new ArrayList<>();
+    final int length = text.length();
+    int start = -1;
+    for (int i = 0; i <= length; i++)
+    {
+      final boolean isWordCharacter = i < length
+                                      && isWordCharacter(text.charAt(i));
+      if (isWordCharacter && start < 0)
+      {
+        start = i;
+      }
+      else if (!isWordCharacter && start >= 0)
+      {
+        words.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+        start = -1;
+      }
+    }
+    return words;
+  }
+
+  private final List<Definition> definitions;
+  private final Map<String, Postings> postings;
+
+  private DefinitionIndex(final Catalog catalog)
+  {
+    definitions = new ArrayList<>();
+    postings = new HashMap<>();
+
+    for (final Schema schema: catalog.getSchemas())
+    {
+      add(DefinitionKind.remarks, schema, schema.getRemarks());
+    }
+    for (final Table table: catalog.getTables())
+    {
+      add(DefinitionKind.remarks, table, table.getRemarks());
+      final DefinitionKind tableKind = table instanceof View? DefinitionKind.view
+                                                            : DefinitionKind.table;
+      add(tableKind, table, table.getDefinition());
+      for (final Column column: table.getColumns())
+      {
+        add(DefinitionKind.remarks, column, column.getRemarks());
+      }
+      for (final Trigger trigger: table.getTriggers())
+      {
+        add(DefinitionKind.trigger, trigger, trigger.getActionStatement());
+      }
+    }
+    for (final Routine routine: catalog.getRoutines())
+    {
+      add(DefinitionKind.remarks, routine, routine.getRemarks());
+      add(DefinitionKind.routine, routine, routine.getDefinition());
+    }
+
+    for (final Postings wordPostings: postings.values())
+    {
+      wordPostings.trim();
+    }
+
+    LOGGER.log(Level.INFO,
+               new StringFormat("Indexed %d words in %d definitions",
+                                postings.size(),
+                                definitions.size()));
+  }
+
+  /**
+   * Searches for definitions that contain all the words in the search
+   * text, ignoring case. Definitions are ranked by how often the words
+   * occur in them, weighted by how rare the words are in the catalog,
+   * and scaled down for longer definitions.
+   *
+   * @param text
+   *        Words to search for
+   * @param limit
+   *        Maximum number of definitions to return
+   * @return Matching definitions, best first
+   */
+  public List<Match> search(final String text, final int limit)
+  {
+    requireNonNull(text, "No search text provided");
+
+    final Set<String> words = new LinkedHashSet<>(words(text));
+    if (words.isEmpty())
+    {
+      return Collections.emptyList();
+    }
+
+    final List<Postings> wordPostings = new ArrayList<>(words.size());
+    for (final String word: words)
+    {
+      final Postings postingsForWord = postings.get(word);
+      if (postingsForWord == null)
+      {
+        return Collections.emptyList();
+      }
+      wordPostings.add(postingsForWord);
+    }
+    // Walk the shortest posting list, and look up the others
+    wordPostings.sort(Comparator.comparingInt(list -> list.size));
+
+    final double count = definitions.size();
+    final Postings shortest = wordPostings.get(0);
+    final List<Match> matches = new ArrayList<>();
+    for (int i = 0; i < shortest.size; i++)
+    {
+      final int definitionId = shortest.definitionIds[i];
+      double score = 0;
+      for (final Postings postingsForWord: wordPostings)
+      {
+        final int frequency = postingsForWord.frequency(definitionId);
+        if (frequency == 0)
+        {
+          score = -1;
+          break;
+        }
+        score += (1 + Math.log(frequency))
+                 * Math.log(1 + count / postingsForWord.size);
+      }
+      if (score >= 0)
+      {
+        final Definition definition = definitions.get(definitionId);
+        matches.add(new Match(definition.kind,
+                              definition.namedObject,
+                              score / Math.sqrt(definition.length)));
+      }
+    }
+
+    matches.sort(Comparator.comparingDouble(Match::getScore).reversed()
+      .thenComparing(match -> match.getNamedObject().getFullName()));
+    return matches.size() > limit? matches.subList(0, limit): matches;
+  }
+
+  public int size()
+  {
+    return definitions.size();
+  }
+
+  private void add(final DefinitionKind kind,
+                   final NamedObject namedObject,
+                   final String text)
+  {
+    if (text == null || text.trim().isEmpty())
+    {
+      return;
+    }
+
+    final List<String> words = words(text);
+    if (words.isEmpty())
+    {
+      return;
+    }
+
+    final int definitionId = definitions.size();
+    definitions.add(new Definition(kind, namedObject, words.size()));
+
+    final Map<String, Integer> frequencies = new HashMap<>();
+    for (final String word: words)
+    {
+      frequencies.merge(word, 1, Integer::sum);
+    }
+    for (final Map.Entry<String, Integer> frequency: frequencies.entrySet())
+    {
+      postings.computeIfAbsent(frequency.getKey(), key -> new Postings())
+        .add(definitionId, frequency.getValue());
+    }
+  }
+
+}
@@ -0,0 +1,295 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.ForeignKey;
+import schemacrawler.schema.ForeignKeyColumnReference;
+import schemacrawler.schema.Table;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Compact adjacency index over the foreign keys of a loaded catalog.
+ * Tables are numbered, and parent and child relationships are held in
+ * compressed arrays of table ids. Sets of tables are bitsets of table
+ * ids, so expanding a set of tables by any number of generations of
+ * ancestors or descendants is a sequence of bitset operations. The
+ * index is built once, and cached on the catalog.
+ */
+public final class ForeignKeyAdjacencyIndex
+  implements Serializable
+{
+
+  private static final long serialVersionUID = 5329427393214218461L;
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(ForeignKeyAdjacencyIndex.class.getName());
+
+  private static final String FOREIGN_KEY_ADJACENCY_INDEX = "schemacrawler.shell.foreign_key_adjacency_index";
+
+  /**
+   * Gets the adjacency index for a catalog, building it if it has not
+   * already been cached on the catalog.
+   *
+   * @param catalog
+   *        Catalog to index
+   * @return Adjacency index
+   */
+  public static ForeignKeyAdjacencyIndex adjacencyIndex(final Catalog catalog)
+  {
+    requireNonNull(catalog, "No catalog provided");
+
+    final ForeignKeyAdjacencyIndex cachedIndex = catalog
+      .getAttribute(FOREIGN_KEY_ADJACENCY_INDEX);
+    if (cachedIndex != null)
+    {
+      return cachedIndex;
+    }
+
+    final ForeignKeyAdjacencyIndex index = new ForeignKeyAdjacencyIndex(catalog
+      .getTables());
+    catalog.setAttribute(FOREIGN_KEY_ADJACENCY_INDEX, index);
+    return index;
+  }
+
+  private final Table[] tables;
+  private final Map<Table, Integer> tableIds;
+  // Adjacency lists in compressed sparse row form - the neighbors of
+  // table i are in targets[offsets[i]] to targets[offsets[i + 1] - 1]
+  private final int[] parentOffsets;
+  private final int[] parents;
+  private final int[] childOffsets;
+  private final int[] children;
+
+  private ForeignKeyAdjacencyIndex(final Collection<Table> catalogTables)
+  {
+    tables = catalogTables.toArray(new Table[catalogTables.size()]);
+    tableIds = new HashMap<>(tables.length * 2);
+    for (int i = 0; i < tables.length; i++)
+    {
+      tableIds.put(tables[i], i);
+    }
+
+    // Collect edges from each child table to its parent tables
+    final List<int[]> edges = new ArrayList<>();
+    for (int child = 0; child < tables.length; child++)
+    {
+      for (final ForeignKey foreignKey: tables[child]
+        .getImportedForeignKeys())
+      {
+        final List<ForeignKeyColumnReference> columnReferences = foreignKey
+          .getColumnReferences();
+        if (columnReferences.isEmpty())
+        {
+          continue;
+        }
+        // All column references in a foreign key are between the same
+        // two tables
+        final Integer parent = tableIds
+          .get(columnReferences.get(0).getPrimaryKeyColumn().getParent());
+        if (parent != null && parent != child)
+        {
+          edges.add(new int[] { child, parent });
+        }
+      }
+    }
+
+    parentOffsets = new int[tables.length + 1];
+    parents = new int[edges.size()];
+    childOffsets = new int[tables.length + 1];
+    children = new int[edges.size()];
+    compress(edges, 0, parentOffsets, parents);
+    compress(edges, 1, childOffsets, children);
+
+    LOGGER.log(Level.INFO,
+               new StringFormat("Indexed %d foreign key relationships between %d tables",
+                                edges.size(),
+                                tables.length));
+  }
+
+  /**
+   * Splits tables into groups that are connected by foreign keys,
+   * ignoring the direction of the relationships. Tables without any
+   * relationships are each in their own group.
+   *
+   * @return Bitsets of ids of connected tables
+   */
+  public List<BitSet> connectedComponents()
+  {
+    final List<BitSet> components = new ArrayList<>();
+    final BitSet unassigned = new BitSet(tables.length);
+    unassigned.set(0, tables.length);
+    for (int i = unassigned.nextSetBit(0); i >= 0; i = unassigned
+      .nextSetBit(i + 1))
+    {
+      final BitSet component = new BitSet(tables.length);
+      component.set(i);
+      BitSet frontier = component;
+      while (!frontier.isEmpty())
+      {
+        final BitSet related = expand(frontier, 1, 1);
+        related.andNot(component);
+        component.or(related);
+        frontier = related;
+      }
+      unassigned.andNot(component);
+      components.add(component);
+    }
+    return components;
+  }
+
+  /**
+   * Expands a set of tables by the given number of generations of
+   * ancestors and descendants.
+   *
+   * @param selected
+   *        Bitset of ids of selected tables
+   * @param parentDepth
+   *        Number of generations of ancestors, or a negative number for
+   *        all ancestors
+   * @param childDepth
+   *        Number of generations of descendants, or a negative number
+   *        for all descendants
+   * @return Bitset of ids of selected tables, with their related tables
+   */
+  public BitSet expand(final BitSet selected,
+                       final int parentDepth,
+                       final int childDepth)
+  {
+    final BitSet expanded = (BitSet) selected.clone();
+    expanded.or(expand(selected, parentDepth, parentOffsets, parents));
+    expanded.or(expand(selected, childDepth, childOffsets, children));
+    return expanded;
+  }
+
+  /**
+   * Selects tables that match a predicate.
+   *
+   * @param predicate
+   *        Predicate to match tables
+   * @return Bitset of ids of matching tables
+   */
+  public BitSet select(final Predicate<Table> predicate)
+  {
+    final BitSet selected = new BitSet(tables.length);
+    for (int i = 0; i < tables.length; i++)
+    {
+      if (predicate.test(tables[i]))
+      {
+        selected.set(i);
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Looks up tables for a set of table ids.
+   *
+   * @param selected
+   *        Bitset of ids of tables
+   * @return Tables
+   */
+  public List<Table> tables(final BitSet selected)
+  {
+    final List<Table> selectedTables = new ArrayList<>(selected
+      .cardinality());
+    for (int i = selected.nextSetBit(0); i >= 0; i = selected
+      .nextSetBit(i + 1))
+    {
+      selectedTables.add(tables[i]);
+    }
+    return selectedTables;
+  }
+
+  private void compress(final List<int[]> edges,
+                        final int from,
+                        final int[] offsets,
+                        final int[] targets)
+  {
+    final int to = 1 - from;
+    for (final int[] edge: edges)
+    {
+      offsets[edge[from] + 1]++;
+    }
+    for (int i = 0; i < tables.length; i++)
+    {
+      offsets[i + 1] += offsets[i];
+    }
+    final int[] next = Arrays.copyOf(offsets, tables.length);
+    for (final int[] edge: edges)
+    {
+      targets[next[edge[from]]++] = edge[to];
+    }
+  }
+
+  private BitSet expand(final BitSet selected,
+                        final int depth,
+                        final int[] offsets,
+                        final int[] targets)
+  {
+    final BitSet visited = (BitSet) selected.clone();
+    BitSet frontier = selected;
+    for (int generation = 0; depth < 0 || generation < depth; generation++)
+    {
+      final BitSet nextFrontier = new BitSet(tables.length);
+      for (int i = frontier.nextSetBit(0); i >= 0; i = frontier
+        .nextSetBit(i + 1))
+      {
+        for (int j = offsets[i]; j < offsets[i + 1]; j++)
+        {
+          nextFrontier.set(targets[j]);
+        }
+      }
+      nextFrontier.andNot(visited);
+      if (nextFrontier.isEmpty())
+      {
+        break;
+      }
+      visited.or(nextFrontier);
+      frontier = nextFrontier;
+    }
+    return visited;
+  }
+
+}
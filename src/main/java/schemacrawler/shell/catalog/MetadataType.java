@@ -0,0 +1,115 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import schemacrawler.crawl.MetadataRetrievalStrategy;
+import schemacrawler.schemacrawler.SchemaInfoLevel;
+import schemacrawler.schemacrawler.SchemaRetrievalOptions;
+import schemacrawler.schemacrawler.SchemaRetrievalOptionsBuilder;
+
+/**
+ * Types of metadata that can be retrieved with different strategies,
+ * either one object at a time with JDBC database metadata calls, or in
+ * bulk with data dictionary queries.
+ */
+public enum MetadataType
+{
+
+ tables(SchemaRetrievalOptionsBuilder::withTableRetrievalStrategy,
+        SchemaRetrievalOptions::getTableRetrievalStrategy,
+        RetrievalFlag.tables),
+ columns(SchemaRetrievalOptionsBuilder::withTableColumnRetrievalStrategy,
+         SchemaRetrievalOptions::getTableColumnRetrievalStrategy,
+         RetrievalFlag.tablecolumns),
+ foreignkeys(SchemaRetrievalOptionsBuilder::withForeignKeyRetrievalStrategy,
+             SchemaRetrievalOptions::getForeignKeyRetrievalStrategy,
+             RetrievalFlag.foreignkeys),
+ indexes(SchemaRetrievalOptionsBuilder::withIndexRetrievalStrategy,
+         SchemaRetrievalOptions::getIndexRetrievalStrategy,
+         RetrievalFlag.indexes),
+ procedures(SchemaRetrievalOptionsBuilder::withProcedureRetrievalStrategy,
+            SchemaRetrievalOptions::getProcedureRetrievalStrategy,
+            RetrievalFlag.routines);
+
+  private final BiConsumer<SchemaRetrievalOptionsBuilder, MetadataRetrievalStrategy> setter;
+  private final Function<SchemaRetrievalOptions, MetadataRetrievalStrategy> getter;
+  private final RetrievalFlag retrievalFlag;
+
+  private MetadataType(final BiConsumer<SchemaRetrievalOptionsBuilder, MetadataRetrievalStrategy> setter,
+                       final Function<SchemaRetrievalOptions, MetadataRetrievalStrategy> getter,
+                       final RetrievalFlag retrievalFlag)
+  {
+    this.setter = setter;
+    this.getter = getter;
+    this.retrievalFlag = retrievalFlag;
+  }
+
+  /**
+   * Gets the retrieval strategy for this type of metadata.
+   *
+   * @param schemaRetrievalOptions
+   *        Retrieval options
+   * @return Retrieval strategy
+   */
+  public MetadataRetrievalStrategy getRetrievalStrategy(final SchemaRetrievalOptions schemaRetrievalOptions)
+  {
+    return getter.apply(schemaRetrievalOptions);
+  }
+
+  /**
+   * Sets the retrieval strategy for this type of metadata.
+   *
+   * @param schemaRetrievalOptionsBuilder
+   *        Retrieval options builder
+   * @param retrievalStrategy
+   *        Retrieval strategy
+   */
+  public void setRetrievalStrategy(final SchemaRetrievalOptionsBuilder schemaRetrievalOptionsBuilder,
+                                   final MetadataRetrievalStrategy retrievalStrategy)
+  {
+    setter.accept(schemaRetrievalOptionsBuilder, retrievalStrategy);
+  }
+
+  /**
+   * Checks whether this type of metadata is retrieved at an info level.
+   *
+   * @param schemaInfoLevel
+   *        Info level
+   * @return Whether this type of metadata is retrieved
+   */
+  public boolean isRetrieved(final SchemaInfoLevel schemaInfoLevel)
+  {
+    return retrievalFlag.isRetrieved(schemaInfoLevel);
+  }
+
+}
@@ -0,0 +1,393 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Column;
+import schemacrawler.schema.NamedObject;
+import schemacrawler.schema.Routine;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Sequence;
+import schemacrawler.schema.Table;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Name index over the schemas, tables, columns, routines and sequences
+ * of a loaded catalog. Objects can be looked up by name or fully
+ * qualified name, with or without identifier quotes and ignoring case,
+ * in a hash index, and found by the start of any of these names in a
+ * prefix trie. The index is built once, and
+ * cached on the catalog.
+ */
+public final class NameIndex
+  implements Serializable
+{
+
+  /**
+   * An indexed database object.
+   */
+  public static final class Entry
+    implements Serializable
+  {
+
+    private static final long serialVersionUID = -4018290167238569421L;
+
+    private final NamedObjectKind kind;
+    private final NamedObject namedObject;
+
+    private Entry(final NamedObjectKind kind, final NamedObject namedObject)
+    {
+      this.kind = kind;
+      this.namedObject = namedObject;
+    }
+
+    public NamedObjectKind getKind()
+    {
+      return kind;
+    }
+
+    public NamedObject getNamedObject()
+    {
+      return namedObject;
+    }
+
+    /**
+     * Gets the fully qualified name without identifier quotes, as it
+     * would be typed in the shell.
+     *
+     * @return Fully qualified name, without quotes
+     */
+    public String getUnquotedFullName()
+    {
+      return unquote(namedObject.getFullName());
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format("%-8s %s", kind, namedObject.getFullName());
+    }
+
+  }
+
+  /**
+   * Kinds of indexed database objects.
+   */
+  public enum NamedObjectKind
+  {
+   schema,
+   table,
+   column,
+   routine,
+   sequence;
+  }
+
+  /**
+   * A node in the prefix trie. Child nodes are held in arrays sorted by
+   * character, rather than in maps, to keep the trie compact.
+   */
+  private static final class TrieNode
+    implements Serializable
+  {
+
+    private static final long serialVersionUID = 2295713584126340537L;
+
+    private char[] labels = new char[0];
+    private TrieNode[] children = new TrieNode[0];
+    private int[] entryIds = new int[0];
+
+    TrieNode child(final char label)
+    {
+      final int index = Arrays.binarySearch(labels, label);
+      return index < 0? null: children[index];
+    }
+
+    TrieNode childOrNew(final char label)
+    {
+      final int index = Arrays.binarySearch(labels, label);
+      if (index >= 0)
+      {
+        return children[index];
+      }
+
+      final int insertAt = -index - 1;
+      final TrieNode child = new TrieNode();
+      final char[] newLabels = new char[labels.length + 1];
+      final TrieNode[] newChildren = new TrieNode[children.length + 1];
+      System.arraycopy(labels, 0, newLabels, 0, insertAt);
+      System.arraycopy(children, 0, newChildren, 0, insertAt);
+      newLabels[insertAt] = label;
+      newChildren[insertAt] = child;
+      System.arraycopy(labels,
+                       insertAt,
+                       newLabels,
+                       insertAt + 1,
+                       labels.length - insertAt);
+      System.arraycopy(children,
+                       insertAt,
+                       newChildren,
+                       insertAt + 1,
+                       children.length - insertAt);
+      labels = newLabels;
+      children = newChildren;
+      return child;
+    }
+
+  }
+
+  private static final long serialVersionUID = -1657293440148803472L;
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(NameIndex.class.getName());
+
+  private static final String NAME_INDEX = "schemacrawler.shell.name_index";
+
+  /**
+   * Gets the name index for a catalog, building it if it has not
+   * already been cached on the catalog.
+   *
+   * @param catalog
+   *        Catalog to index
+   * @return Name index
+   */
+  public static NameIndex nameIndex(final Catalog catalog)
+  {
+    requireNonNull(catalog, "No catalog provided");
+
+    final NameIndex cachedIndex = catalog.getAttribute(NAME_INDEX);
+    if (cachedIndex != null)
+    {
+      return cachedIndex;
+    }
+
+    final NameIndex index = new NameIndex(catalog);
+    catalog.setAttribute(NAME_INDEX, index);
+    return index;
+  }
+
+  private static String normalize(final String name)
+  {
+    return name.toLowerCase(Locale.ENGLISH);
+  }
+
+  private static String unquote(final String name)
+  {
+    return name.replace("\"", "").replace("`", "");
+  }
+
+  private final List<Entry> entries;
+  private final Map<String, int[]> names;
+  private final TrieNode trie;
+
+  private NameIndex(final Catalog catalog)
+  {
+    entries = new ArrayList<>();
+    final Map<String, List<Integer>> indexedNames = new HashMap<>();
+
+    for (final Schema schema: catalog.getSchemas())
+    {
+      add(NamedObjectKind.schema, schema, indexedNames);
+    }
+    for (final Table table: catalog.getTables())
+    {
+      add(NamedObjectKind.table, table, indexedNames);
+      for (final Column column: table.getColumns())
+      {
+        add(NamedObjectKind.column, column, indexedNames);
+      }
+    }
+    for (final Routine routine: catalog.getRoutines())
+    {
+      add(NamedObjectKind.routine, routine, indexedNames);
+    }
+    for (final Sequence sequence: catalog.getSequences())
+    {
+      add(NamedObjectKind.sequence, sequence, indexedNames);
+    }
+
+    // The hash index and the trie share the same arrays of entry ids
+    names = new HashMap<>(indexedNames.size() * 2);
+    trie = new TrieNode();
+    for (final Map.Entry<String, List<Integer>> indexedName: indexedNames
+      .entrySet())
+    {
+      final List<Integer> entryIdsList = indexedName.getValue();
+      final int[] entryIds = new int[entryIdsList.size()];
+      for (int i = 0; i < entryIds.length; i++)
+      {
+        entryIds[i] = entryIdsList.get(i);
+      }
+      names.put(indexedName.getKey(), entryIds);
+
+      TrieNode node = trie;
+      for (final char label: indexedName.getKey().toCharArray())
+      {
+        node = node.childOrNew(label);
+      }
+      node.entryIds = entryIds;
+    }
+
+    LOGGER.log(Level.INFO,
+               new StringFormat("Indexed names of %d database objects",
+                                entries.size()));
+  }
+
+  /**
+   * Finds database objects with names, or fully qualified names, that
+   * start with a prefix, ignoring case. Objects are returned in order
+   * of name.
+   *
+   * @param prefix
+   *        Start of the name
+   * @param limit
+   *        Maximum number of objects to return
+   * @return Matching database objects
+   */
+  public List<Entry> find(final String prefix, final int limit)
+  {
+    requireNonNull(prefix, "No prefix provided");
+
+    TrieNode node = trie;
+    for (final char label: normalize(prefix).toCharArray())
+    {
+      node = node.child(label);
+      if (node == null)
+      {
+        return Collections.emptyList();
+      }
+    }
+
+    final List<Entry> found = new ArrayList<>();
+    collect(node, limit, new BitSet(entries.size()), found);
+    return found;
+  }
+
+  /**
+   * Looks up database objects by name, or fully qualified name,
+   * ignoring case.
+   *
+   * @param name
+   *        Name of the object
+   * @return Database objects with the name
+   */
+  public List<Entry> lookup(final String name)
+  {
+    requireNonNull(name, "No name provided");
+
+    final int[] entryIds = names.get(normalize(name));
+    if (entryIds == null)
+    {
+      return Collections.emptyList();
+    }
+    final List<Entry> found = new ArrayList<>(entryIds.length);
+    for (final int entryId: entryIds)
+    {
+      found.add(entries.get(entryId));
+    }
+    return found;
+  }
+
+  public int size()
+  {
+    return entries.size();
+  }
+
+  private void add(final NamedObjectKind kind,
+                   final NamedObject namedObject,
+                   final Map<String, List<Integer>> indexedNames)
+  {
+    final int entryId = entries.size();
+    entries.add(new Entry(kind, namedObject));
+
+    final String name = normalize(namedObject.getName());
+    final String fullName = normalize(namedObject.getFullName());
+    final String unquotedFullName = unquote(fullName);
+    indexedNames.computeIfAbsent(name, key -> new ArrayList<>())
+      .add(entryId);
+    if (!fullName.equals(name))
+    {
+      indexedNames.computeIfAbsent(fullName, key -> new ArrayList<>())
+        .add(entryId);
+    }
+    // Quoted names are indexed without quotes too, as they are typed
+    if (!unquotedFullName.equals(fullName)
+        && !unquotedFullName.equals(name))
+    {
+      indexedNames.computeIfAbsent(unquotedFullName, key -> new ArrayList<>())
+        .add(entryId);
+    }
+  }
+
+  /**
+   * Collects entries in the trie under a node, depth first, so that
+   * shorter names come before longer names that start with them.
+   */
+  private void collect(final TrieNode node,
+                       final int limit,
+                       final BitSet seen,
+                       final List<Entry> found)
+  {
+    for (final int entryId: node.entryIds)
+    {
+      if (found.size() >= limit)
+      {
+        return;
+      }
+      if (!seen.get(entryId))
+      {
+        seen.set(entryId);
+        found.add(entries.get(entryId));
+      }
+    }
+    for (final TrieNode child: node.children)
+    {
+      if (found.size() >= limit)
+      {
+        return;
+      }
+      collect(child, limit, seen, found);
+    }
+  }
+
+}
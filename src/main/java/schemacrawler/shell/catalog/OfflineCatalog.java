@@ -0,0 +1,185 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+import static schemacrawler.filter.ReducerFactory.getRoutineReducer;
+import static schemacrawler.filter.ReducerFactory.getSchemaReducer;
+import static schemacrawler.filter.ReducerFactory.getSequenceReducer;
+import static schemacrawler.filter.ReducerFactory.getSynonymReducer;
+import static schemacrawler.filter.ReducerFactory.getTableReducer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.logging.Level;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Routine;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Sequence;
+import schemacrawler.schema.Synonym;
+import schemacrawler.schema.Table;
+import schemacrawler.schemacrawler.InfoLevel;
+import schemacrawler.schemacrawler.SchemaCrawlerException;
+import schemacrawler.schemacrawler.SchemaCrawlerOptions;
+import schemacrawler.tools.integration.serialization.JavaSerializedCatalog;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Saves a loaded catalog to a file, and loads it again, for sessions
+ * that work without a database connection. Catalogs are saved with Java
+ * serialization, in the same format as the SchemaCrawler serialize
+ * command. Limit and grep options are applied to the catalog as it is
+ * loaded, in the same way as they are applied when crawling a database.
+ */
+public final class OfflineCatalog
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(OfflineCatalog.class.getName());
+
+  private static final String SHELL_ATTRIBUTE_PREFIX = "schemacrawler.shell.";
+  private static final String INFO_LEVEL = "schemacrawler.offline.info_level";
+
+  /**
+   * Gets the info level that a saved catalog was loaded with.
+   *
+   * @param catalog
+   *        Catalog loaded from a file
+   * @return Info level, or unknown for catalogs that were not saved by
+   *         the shell
+   */
+  public static InfoLevel getInfoLevel(final Catalog catalog)
+  {
+    requireNonNull(catalog, "No catalog provided");
+    final Object infoLevel = catalog.getAttribute(INFO_LEVEL);
+    if (infoLevel == null)
+    {
+      return InfoLevel.unknown;
+    }
+    return InfoLevel.valueOfFromString(String.valueOf(infoLevel));
+  }
+
+  /**
+   * Loads a saved catalog, keeping only the database objects that are
+   * included by the options.
+   *
+   * @param catalogFile
+   *        Saved catalog file
+   * @param schemaCrawlerOptions
+   *        Options to filter the catalog
+   * @return Loaded catalog
+   * @throws IOException
+   *         On an exception reading the file
+   */
+  public static Catalog load(final Path catalogFile,
+                             final SchemaCrawlerOptions schemaCrawlerOptions)
+    throws IOException
+  {
+    requireNonNull(catalogFile, "No catalog file provided");
+    requireNonNull(schemaCrawlerOptions, "No SchemaCrawler options provided");
+
+    LOGGER.log(Level.INFO,
+               new StringFormat("Loading offline catalog from <%s>",
+                                catalogFile));
+
+    final JavaSerializedCatalog catalog;
+    try (final InputStream in = Files.newInputStream(catalogFile);)
+    {
+      catalog = new JavaSerializedCatalog(in);
+    }
+    catch (final SchemaCrawlerException | ClassCastException e)
+    {
+      throw new IOException("Not a catalog file, " + catalogFile, e);
+    }
+
+    // Indexes cached by the shell are for the whole saved catalog, so
+    // they are built again if they are needed
+    for (final String attribute: new ArrayList<>(catalog.getAttributes()
+      .keySet()))
+    {
+      if (attribute.startsWith(SHELL_ATTRIBUTE_PREFIX))
+      {
+        catalog.removeAttribute(attribute);
+      }
+    }
+
+    catalog.reduce(Schema.class, getSchemaReducer(schemaCrawlerOptions));
+    catalog.reduce(Table.class, getTableReducer(schemaCrawlerOptions));
+    catalog.reduce(Routine.class, getRoutineReducer(schemaCrawlerOptions));
+    catalog.reduce(Synonym.class, getSynonymReducer(schemaCrawlerOptions));
+    catalog.reduce(Sequence.class, getSequenceReducer(schemaCrawlerOptions));
+
+    return catalog;
+  }
+
+  /**
+   * Saves a catalog to a file.
+   *
+   * @param catalog
+   *        Loaded catalog
+   * @param infoLevel
+   *        Info level that the catalog was loaded with
+   * @param catalogFile
+   *        File to save to
+   * @throws IOException
+   *         On an exception writing the file
+   */
+  public static void save(final Catalog catalog,
+                          final InfoLevel infoLevel,
+                          final Path catalogFile)
+    throws IOException
+  {
+    requireNonNull(catalog, "No catalog provided");
+    requireNonNull(infoLevel, "No info level provided");
+    requireNonNull(catalogFile, "No catalog file provided");
+
+    catalog.setAttribute(INFO_LEVEL, infoLevel.name());
+    try (final OutputStream out = Files.newOutputStream(catalogFile);)
+    {
+      new JavaSerializedCatalog(catalog).save(out);
+    }
+    catch (final SchemaCrawlerException e)
+    {
+      throw new IOException("Cannot save catalog to " + catalogFile, e);
+    }
+  }
+
+  private OfflineCatalog()
+  {
+    // Prevent instantiation
+  }
+
+}
@@ -0,0 +1,258 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static sf.util.Utility.isBlank;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import schemacrawler.schemacrawler.SchemaInfoLevel;
+import schemacrawler.schemacrawler.SchemaInfoLevelBuilder;
+
+/**
+ * Kinds of metadata that can be retrieved, or skipped, independently of
+ * the info level. Skipping metadata that is not needed avoids the
+ * queries that retrieve it, some of which are expensive on some
+ * databases, such as privileges on Oracle. Each kind of metadata is
+ * retrieved with some database metadata calls, or information schema
+ * view queries, which are its sources.
+ */
+public enum RetrievalFlag
+{
+
+ databaseinfo(SchemaInfoLevelBuilder::setRetrieveDatabaseInfo,
+              SchemaInfoLevel::isRetrieveDatabaseInfo),
+ additionaldatabaseinfo(SchemaInfoLevelBuilder::setRetrieveAdditionalDatabaseInfo,
+                        SchemaInfoLevel::isRetrieveAdditionalDatabaseInfo),
+ additionaljdbcdriverinfo(SchemaInfoLevelBuilder::setRetrieveAdditionalJdbcDriverInfo,
+                          SchemaInfoLevel::isRetrieveAdditionalJdbcDriverInfo),
+ columndatatypes(SchemaInfoLevelBuilder::setRetrieveColumnDataTypes,
+                 SchemaInfoLevel::isRetrieveColumnDataTypes,
+                 "getTypeInfo",
+                 "OVERRIDE_TYPE_INFO"),
+ tables(SchemaInfoLevelBuilder::setRetrieveTables,
+        SchemaInfoLevel::isRetrieveTables,
+        "getTables",
+        "TABLES"),
+ tablecolumns(SchemaInfoLevelBuilder::setRetrieveTableColumns,
+              SchemaInfoLevel::isRetrieveTableColumns,
+              "getColumns",
+              "TABLE_COLUMNS",
+              "EXT_HIDDEN_TABLE_COLUMNS"),
+ tableprivileges(SchemaInfoLevelBuilder::setRetrieveTablePrivileges,
+                 SchemaInfoLevel::isRetrieveTablePrivileges,
+                 "getTablePrivileges"),
+ tablecolumnprivileges(SchemaInfoLevelBuilder::setRetrieveTableColumnPrivileges,
+                       SchemaInfoLevel::isRetrieveTableColumnPrivileges,
+                       "getColumnPrivileges"),
+ tableconstraints(SchemaInfoLevelBuilder::setRetrieveTableConstraintInformation,
+                  SchemaInfoLevel::isRetrieveTableConstraintInformation,
+                  "TABLE_CONSTRAINTS",
+                  "CHECK_CONSTRAINTS",
+                  "CONSTRAINT_COLUMN_USAGE"),
+ tableconstraintdefinitions(SchemaInfoLevelBuilder::setRetrieveTableConstraintDefinitions,
+                            SchemaInfoLevel::isRetrieveTableConstraintDefinitions,
+                            "EXT_TABLE_CONSTRAINTS"),
+ tabledefinitions(SchemaInfoLevelBuilder::setRetrieveTableDefinitionsInformation,
+                  SchemaInfoLevel::isRetrieveTableDefinitionsInformation,
+                  "EXT_TABLES"),
+ additionaltableattributes(SchemaInfoLevelBuilder::setRetrieveAdditionalTableAttributes,
+                           SchemaInfoLevel::isRetrieveAdditionalTableAttributes,
+                           "ADDITIONAL_TABLE_ATTRIBUTES"),
+ additionalcolumnattributes(SchemaInfoLevelBuilder::setRetrieveAdditionalColumnAttributes,
+                            SchemaInfoLevel::isRetrieveAdditionalColumnAttributes,
+                            "ADDITIONAL_COLUMN_ATTRIBUTES"),
+ viewinformation(SchemaInfoLevelBuilder::setRetrieveViewInformation,
+                 SchemaInfoLevel::isRetrieveViewInformation,
+                 "VIEWS",
+                 "VIEW_TABLE_USAGE"),
+ triggers(SchemaInfoLevelBuilder::setRetrieveTriggerInformation,
+          SchemaInfoLevel::isRetrieveTriggerInformation,
+          "TRIGGERS"),
+ indexes(SchemaInfoLevelBuilder::setRetrieveIndexes,
+         SchemaInfoLevel::isRetrieveIndexes,
+         "getIndexInfo",
+         "getPrimaryKeys",
+         "INDEXES",
+         "PRIMARY_KEYS"),
+ indexinformation(SchemaInfoLevelBuilder::setRetrieveIndexInformation,
+                  SchemaInfoLevel::isRetrieveIndexInformation,
+                  "EXT_INDEXES"),
+ indexcolumninformation(SchemaInfoLevelBuilder::setRetrieveIndexColumnInformation,
+                        SchemaInfoLevel::isRetrieveIndexColumnInformation,
+                        "EXT_INDEX_COLUMNS"),
+ primarykeydefinitions(SchemaInfoLevelBuilder::setRetrievePrimaryKeyDefinitions,
+                       SchemaInfoLevel::isRetrievePrimaryKeyDefinitions,
+                       "EXT_PRIMARY_KEYS"),
+ foreignkeys(SchemaInfoLevelBuilder::setRetrieveForeignKeys,
+             SchemaInfoLevel::isRetrieveForeignKeys,
+             "getImportedKeys",
+             "getExportedKeys",
+             "getCrossReference",
+             "FOREIGN_KEYS"),
+ foreignkeydefinitions(SchemaInfoLevelBuilder::setRetrieveForeignKeyDefinitions,
+                       SchemaInfoLevel::isRetrieveForeignKeyDefinitions,
+                       "EXT_FOREIGN_KEYS"),
+ routines(SchemaInfoLevelBuilder::setRetrieveRoutines,
+          SchemaInfoLevel::isRetrieveRoutines,
+          "getProcedures",
+          "getFunctions",
+          "PROCEDURES",
+          "FUNCTIONS"),
+ routinecolumns(SchemaInfoLevelBuilder::setRetrieveRoutineColumns,
+                SchemaInfoLevel::isRetrieveRoutineColumns,
+                "getProcedureColumns",
+                "getFunctionColumns",
+                "PROCEDURE_COLUMNS",
+                "FUNCTION_COLUMNS"),
+ routinedefinitions(SchemaInfoLevelBuilder::setRetrieveRoutineInformation,
+                    SchemaInfoLevel::isRetrieveRoutineInformation,
+                    "ROUTINES"),
+ sequences(SchemaInfoLevelBuilder::setRetrieveSequenceInformation,
+           SchemaInfoLevel::isRetrieveSequenceInformation,
+           "SEQUENCES",
+           "EXT_SEQUENCES"),
+ synonyms(SchemaInfoLevelBuilder::setRetrieveSynonymInformation,
+          SchemaInfoLevel::isRetrieveSynonymInformation,
+          "EXT_SYNONYMS"),
+ userdefinedtypes(SchemaInfoLevelBuilder::setRetrieveUserDefinedColumnDataTypes,
+                  SchemaInfoLevel::isRetrieveUserDefinedColumnDataTypes,
+                  "getUDTs"),
+ serverinfo(SchemaInfoLevelBuilder::setRetrieveServerInfo,
+            SchemaInfoLevel::isRetrieveServerInfo,
+            "SERVER_INFORMATION");
+
+  /**
+   * Parses a comma-separated list of retrieval flags.
+   *
+   * @param flags
+   *        Comma-separated flag names, or blank for none
+   * @return Retrieval flags
+   * @throws IllegalArgumentException
+   *         If a flag name is not known
+   */
+  public static Set<RetrievalFlag> parse(final String flags)
+  {
+    final Set<RetrievalFlag> retrievalFlags = EnumSet
+      .noneOf(RetrievalFlag.class);
+    if (isBlank(flags))
+    {
+      return retrievalFlags;
+    }
+    for (final String flag: flags.split(","))
+    {
+      if (!isBlank(flag))
+      {
+        final String name = flag.trim().toLowerCase(Locale.ENGLISH);
+        try
+        {
+          retrievalFlags.add(RetrievalFlag.valueOf(name));
+        }
+        catch (final IllegalArgumentException e)
+        {
+          throw new IllegalArgumentException(String
+            .format("Unknown metadata <%s>, expected one of %s",
+                    flag.trim(),
+                    Arrays.toString(values())),
+                                             e);
+        }
+      }
+    }
+    return retrievalFlags;
+  }
+
+  /**
+   * Finds the kind of metadata retrieved by a database metadata call,
+   * or an information schema view query.
+   *
+   * @param source
+   *        Name of a database metadata method, or of an information
+   *        schema view
+   * @return Kind of metadata, if it is known
+   */
+  public static Optional<RetrievalFlag> retrievedBy(final String source)
+  {
+    for (final RetrievalFlag retrievalFlag: values())
+    {
+      if (retrievalFlag.sources.contains(source))
+      {
+        return Optional.of(retrievalFlag);
+      }
+    }
+    return Optional.empty();
+  }
+
+  private final BiConsumer<SchemaInfoLevelBuilder, Boolean> setter;
+  private final Predicate<SchemaInfoLevel> getter;
+  private final Set<String> sources;
+
+  private RetrievalFlag(final BiConsumer<SchemaInfoLevelBuilder, Boolean> setter,
+                        final Predicate<SchemaInfoLevel> getter,
+                        final String... sources)
+  {
+    this.setter = setter;
+    this.getter = getter;
+    this.sources = new HashSet<>(Arrays.asList(sources));
+  }
+
+  /**
+   * Checks whether this kind of metadata is retrieved.
+   *
+   * @param schemaInfoLevel
+   *        Info level
+   * @return Whether this kind of metadata is retrieved
+   */
+  public boolean isRetrieved(final SchemaInfoLevel schemaInfoLevel)
+  {
+    return getter.test(schemaInfoLevel);
+  }
+
+  /**
+   * Sets whether this kind of metadata is retrieved.
+   *
+   * @param schemaInfoLevelBuilder
+   *        Info level builder
+   * @param retrieve
+   *        Whether to retrieve this kind of metadata
+   */
+  public void setRetrieve(final SchemaInfoLevelBuilder schemaInfoLevelBuilder,
+                          final boolean retrieve)
+  {
+    setter.accept(schemaInfoLevelBuilder, retrieve);
+  }
+
+}
@@ -0,0 +1,719 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Reducible;
+import schemacrawler.schema.Schema;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * A catalog made up of separately loaded parts, usually one for each
+ * schema, that keeps within a heap budget. When heap usage goes over
+ * the budget, as parts are loaded or read back from disk, the least
+ * recently used parts are written to disk, and read back in only when
+ * they are next needed. Parts are written again only if they have
+ * changed since they were read back, so that changes to catalog
+ * objects, such as row counts, are kept. The parts are presented as a single catalog, with collections
+ * of catalog objects streamed from one part after another, and schema
+ * lookups routed to the part that has the schema. Foreign keys to
+ * tables in other parts reference partial tables, as they would for
+ * tables that are not included in a crawl.
+ */
+public final class SpilledCatalog
+  implements InvocationHandler, Serializable
+{
+
+  private static final class CatalogPart
+  {
+
+    private final List<String> schemaNames;
+    private Catalog catalog;
+    private Path file;
+    // Digest of the part as it was last written to disk, to tell if it
+    // has changed since it was read back
+    private byte[] digest;
+    private long lastUsed;
+
+    CatalogPart(final Catalog catalog, final long lastUsed)
+    {
+      this.catalog = catalog;
+      this.lastUsed = lastUsed;
+      schemaNames = new ArrayList<>();
+      for (final Schema schema: catalog.getSchemas())
+      {
+        schemaNames.add(schema.getFullName());
+      }
+    }
+
+    synchronized void delete()
+      throws IOException
+    {
+      if (file != null)
+      {
+        Files.deleteIfExists(file);
+      }
+    }
+
+    synchronized Catalog get(final long lastUsed)
+      throws IOException, ClassNotFoundException
+    {
+      this.lastUsed = lastUsed;
+      if (catalog == null)
+      {
+        LOGGER.log(Level.FINE,
+                   new StringFormat("Reading catalog part from <%s>", file));
+        try (
+            final ObjectInputStream in = new ObjectInputStream(Files
+              .newInputStream(file));)
+        {
+          catalog = (Catalog) in.readObject();
+        }
+      }
+      return catalog;
+    }
+
+    synchronized long getLastUsed()
+    {
+      return lastUsed;
+    }
+
+    synchronized boolean isLoaded()
+    {
+      return catalog != null;
+    }
+
+    synchronized boolean isSpilled()
+    {
+      return file != null;
+    }
+
+    synchronized void spill(final Path directory)
+      throws IOException
+    {
+      if (catalog == null)
+      {
+        return;
+      }
+      if (file == null)
+      {
+        file = Files.createTempFile(directory, "catalog", ".ser");
+        file.toFile().deleteOnExit();
+      }
+      else if (Arrays.equals(digest(catalog, new OutputStream()
+      {
+
+        @Override
+        public void write(final byte[] bytes,
+                          final int offset,
+                          final int length)
+        {
+          // Only the digest is needed
+        }
+
+        @Override
+        public void write(final int b)
+        {
+          // Only the digest is needed
+        }
+
+      }), digest))
+      {
+        LOGGER.log(Level.FINE,
+                   new StringFormat("Catalog part in <%s> has not changed",
+                                    file));
+        catalog = null;
+        return;
+      }
+
+      LOGGER.log(Level.FINE,
+                 new StringFormat("Writing catalog part to <%s>", file));
+      digest = digest(catalog, Files.newOutputStream(file));
+      catalog = null;
+    }
+
+  }
+
+  private static final long serialVersionUID = 3541092263488717309L;
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(SpilledCatalog.class.getName());
+
+  /**
+   * Gets the spilled catalog that presents a catalog, if it is made up
+   * of separately loaded parts.
+   *
+   * @param catalog
+   *        Catalog
+   * @return Spilled catalog, if the catalog is made up of parts
+   */
+  public static Optional<SpilledCatalog> lookupSpilledCatalog(final Catalog catalog)
+  {
+    if (catalog != null && Proxy.isProxyClass(catalog.getClass()))
+    {
+      final InvocationHandler handler = Proxy.getInvocationHandler(catalog);
+      if (handler instanceof SpilledCatalog)
+      {
+        return Optional.of((SpilledCatalog) handler);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Serializes a catalog to a stream, and closes it.
+   *
+   * @return Digest of the serialized catalog
+   */
+  private static byte[] digest(final Catalog catalog,
+                               final OutputStream outputStream)
+    throws IOException
+  {
+    final MessageDigest digest;
+    try
+    {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (final NoSuchAlgorithmException e)
+    {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException("Cannot compute digest", e);
+    }
+    try (
+        final ObjectOutputStream out = new ObjectOutputStream(new DigestOutputStream(outputStream,
+                                                                                     digest));)
+    {
+      out.writeObject(catalog);
+    }
+    return digest.digest();
+  }
+
+  private static long usedHeap()
+  {
+    final Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Gets heap usage, after collecting garbage if heap usage looks to be
+   * over the budget, so that parts are not written to disk only because
+   * of garbage left from loading.
+   */
+  private static long usedHeap(final long heapBudget)
+  {
+    final long usedHeap = usedHeap();
+    if (usedHeap <= heapBudget)
+    {
+      return usedHeap;
+    }
+    System.gc();
+    return usedHeap();
+  }
+
+  private final long heapBudget;
+  private final Map<String, Object> attributes;
+  private final transient List<CatalogPart> parts;
+  private final transient Map<String, CatalogPart> schemaParts;
+  private final transient AtomicLong uses;
+  private transient Path directory;
+  // Parts read from a serialized catalog, before they are added
+  private transient List<Catalog> serializedParts;
+
+  /**
+   * Creates an empty catalog, to add parts to.
+   *
+   * @param heapBudget
+   *        Heap usage, in bytes, above which parts are written to disk
+   */
+  public SpilledCatalog(final long heapBudget)
+  {
+    this.heapBudget = heapBudget;
+    parts = new ArrayList<>();
+    schemaParts = new HashMap<>();
+    attributes = new ConcurrentHashMap<>();
+    uses = new AtomicLong();
+  }
+
+  /**
+   * Adds a loaded part of the catalog, and writes parts to disk if heap
+   * usage is over the budget.
+   *
+   * @param catalog
+   *        Loaded catalog part
+   * @throws IOException
+   *         On an exception writing parts to disk
+   */
+  public synchronized void add(final Catalog catalog)
+    throws IOException
+  {
+    requireNonNull(catalog, "No catalog provided");
+
+    final CatalogPart part = new CatalogPart(catalog, uses.incrementAndGet());
+    parts.add(part);
+    for (final String schemaName: part.schemaNames)
+    {
+      schemaParts.put(schemaName, part);
+    }
+
+    keepWithinBudget(null);
+  }
+
+  /**
+   * Deletes the files that parts were written to. Parts that were
+   * written to disk cannot be read back after this, so this is called
+   * once the catalog is no longer used.
+   *
+   * @throws IOException
+   *         On an exception deleting files
+   */
+  public synchronized void delete()
+    throws IOException
+  {
+    for (final CatalogPart part: parts)
+    {
+      part.delete();
+    }
+    if (directory != null)
+    {
+      Files.deleteIfExists(directory);
+      directory = null;
+    }
+  }
+
+  /**
+   * Directory that parts are written to, if any have been written.
+   *
+   * @return Directory for parts on disk
+   */
+  public synchronized Optional<Path> getDirectory()
+  {
+    return Optional.ofNullable(directory);
+  }
+
+  /**
+   * Heap usage, in bytes, above which parts are written to disk.
+   *
+   * @return Heap budget
+   */
+  public long getHeapBudget()
+  {
+    return heapBudget;
+  }
+
+  @Override
+  public Object invoke(final Object proxy,
+                       final Method method,
+                       final Object[] args)
+    throws Throwable
+  {
+    final String methodName = method.getName();
+    final int argCount = args == null? 0: args.length;
+
+    switch (methodName)
+    {
+      case "equals":
+        return argCount == 1 && proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "getAttribute":
+        return attributes.getOrDefault(args[0],
+                                       argCount == 2? args[1]: null);
+      case "getAttributes":
+        return new HashMap<>(attributes);
+      case "hasAttribute":
+        return attributes.containsKey(args[0]);
+      case "lookupAttribute":
+        return Optional.ofNullable(attributes.get(args[0]));
+      case "removeAttribute":
+        attributes.remove(args[0]);
+        return null;
+      case "setAttribute":
+        if (args[1] == null)
+        {
+          attributes.remove(args[0]);
+        }
+        else
+        {
+          attributes.put((String) args[0], args[1]);
+        }
+        return null;
+      case "reduce":
+        for (final CatalogPart part: parts)
+        {
+          invoke(catalog(part), method, args);
+        }
+        return null;
+      default:
+        break;
+    }
+
+    // Route calls about a schema to the part that has the schema
+    if (argCount > 0 && args[0] instanceof Schema)
+    {
+      final CatalogPart part = schemaParts
+        .get(((Schema) args[0]).getFullName());
+      if (part != null)
+      {
+        return invoke(catalog(part), method, args);
+      }
+      else if (Optional.class.equals(method.getReturnType()))
+      {
+        return Optional.empty();
+      }
+      else if (Collection.class.isAssignableFrom(method.getReturnType()))
+      {
+        return new ArrayList<>();
+      }
+    }
+
+    // Combine collections, except for system data types, which are the
+    // same in every part
+    if (Collection.class.isAssignableFrom(method.getReturnType())
+        && !"getSystemColumnDataTypes".equals(methodName))
+    {
+      return combined(method, args);
+    }
+    if (Optional.class.equals(method.getReturnType()))
+    {
+      for (final CatalogPart part: parts)
+      {
+        final Optional<?> result = (Optional<?>) invoke(catalog(part),
+                                                        method,
+                                                        args);
+        if (result.isPresent())
+        {
+          return result;
+        }
+      }
+      return Optional.empty();
+    }
+
+    // Catalog-wide information, such as crawl and database information,
+    // is the same in every part
+    return invoke(catalog(parts.get(0)), method, args);
+  }
+
+  /**
+   * Whether any parts have been added.
+   *
+   * @return Whether the catalog is empty
+   */
+  public synchronized boolean isEmpty()
+  {
+    return parts.isEmpty();
+  }
+
+  /**
+   * Whether any part of the catalog has been written to disk.
+   *
+   * @return Whether the catalog has been spilled
+   */
+  public boolean isSpilled()
+  {
+    for (final CatalogPart part: parts)
+    {
+      if (part.isSpilled())
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Presents the parts as a single catalog.
+   *
+   * @return Catalog
+   */
+  public Catalog toCatalog()
+  {
+    if (parts.isEmpty())
+    {
+      throw new IllegalStateException("No catalog parts loaded");
+    }
+    return (Catalog) Proxy
+      .newProxyInstance(SpilledCatalog.class.getClassLoader(),
+                        new Class<?>[] { Catalog.class, Reducible.class },
+                        this);
+  }
+
+  /**
+   * Gets the catalog in a part, reading it back from disk if needed, and
+   * then writes the least recently used other parts to disk if heap
+   * usage is now over the budget.
+   */
+  private Catalog catalog(final CatalogPart part)
+    throws IOException, ClassNotFoundException
+  {
+    final boolean wasLoaded = part.isLoaded();
+    final Catalog catalog = part.get(uses.incrementAndGet());
+    if (!wasLoaded)
+    {
+      keepWithinBudget(part);
+    }
+    return catalog;
+  }
+
+  /**
+   * Writes loaded parts to disk, least recently used first, until heap
+   * usage is within the budget.
+   *
+   * @param inUse
+   *        Part that is being used, which is kept in memory
+   */
+  private synchronized void keepWithinBudget(final CatalogPart inUse)
+    throws IOException
+  {
+    long usedHeap = usedHeap(heapBudget);
+    if (usedHeap <= heapBudget)
+    {
+      return;
+    }
+    LOGGER.log(Level.INFO,
+               new StringFormat("Heap usage of %d bytes is over the budget of %d bytes, so writing catalog to disk",
+                                usedHeap,
+                                heapBudget));
+    if (directory == null)
+    {
+      directory = Files.createTempDirectory("schemacrawler");
+      directory.toFile().deleteOnExit();
+    }
+
+    final List<CatalogPart> loadedParts = new ArrayList<>();
+    for (final CatalogPart part: parts)
+    {
+      if (part != inUse && part.isLoaded())
+      {
+        loadedParts.add(part);
+      }
+    }
+    loadedParts.sort(Comparator.comparingLong(CatalogPart::getLastUsed));
+    for (final CatalogPart part: loadedParts)
+    {
+      part.spill(directory);
+      usedHeap = usedHeap(heapBudget);
+      if (usedHeap <= heapBudget)
+      {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads the parts written by {@link #writeObject(ObjectOutputStream)},
+   * to be added to a new catalog by {@link #readResolve()}.
+   */
+  private void readObject(final ObjectInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+    final int size = in.readInt();
+    serializedParts = new ArrayList<>(size);
+    for (int i = 0; i < size; i++)
+    {
+      serializedParts.add((Catalog) in.readObject());
+    }
+  }
+
+  /**
+   * Creates a catalog from the parts that were read, with the same heap
+   * budget, so that parts are written to disk again if needed.
+   */
+  private Object readResolve()
+    throws InvalidObjectException
+  {
+    final SpilledCatalog spilledCatalog = new SpilledCatalog(heapBudget);
+    spilledCatalog.attributes.putAll(attributes);
+    try
+    {
+      for (final Catalog catalog: serializedParts)
+      {
+        spilledCatalog.add(catalog);
+      }
+    }
+    catch (final IOException e)
+    {
+      final InvalidObjectException exception = new InvalidObjectException("Cannot write catalog part to disk");
+      exception.initCause(e);
+      throw exception;
+    }
+    return spilledCatalog;
+  }
+
+  /**
+   * Writes every part, including parts on disk, since the files that
+   * parts are written to do not outlast the session.
+   */
+  private synchronized void writeObject(final ObjectOutputStream out)
+    throws IOException
+  {
+    out.defaultWriteObject();
+    out.writeInt(parts.size());
+    for (final CatalogPart part: parts)
+    {
+      try
+      {
+        out.writeObject(catalog(part));
+      }
+      catch (final ClassNotFoundException e)
+      {
+        throw new IOException("Cannot read catalog part", e);
+      }
+    }
+  }
+
+  /**
+   * Streams a collection from one part after another, so that parts on
+   * disk are read back only when the iteration reaches them.
+   */
+  private Collection<Object> combined(final Method method,
+                                      final Object[] args)
+  {
+    final List<CatalogPart> combinedParts = new ArrayList<>(parts);
+    return new AbstractCollection<Object>()
+    {
+
+      @Override
+      public Iterator<Object> iterator()
+      {
+        final Iterator<CatalogPart> partsIterator = combinedParts
+          .iterator();
+        return new Iterator<Object>()
+        {
+
+          private Iterator<?> partIterator = Collections.emptyIterator();
+
+          @Override
+          public boolean hasNext()
+          {
+            while (!partIterator.hasNext() && partsIterator.hasNext())
+            {
+              partIterator = partCollection(partsIterator.next(),
+                                            method,
+                                            args).iterator();
+            }
+            return partIterator.hasNext();
+          }
+
+          @Override
+          public Object next()
+          {
+            if (!hasNext())
+            {
+              throw new NoSuchElementException();
+            }
+            return partIterator.next();
+          }
+
+        };
+      }
+
+      @Override
+      public int size()
+      {
+        int size = 0;
+        for (final CatalogPart part: combinedParts)
+        {
+          size += partCollection(part, method, args).size();
+        }
+        return size;
+      }
+
+    };
+  }
+
+  private Collection<?> partCollection(final CatalogPart part,
+                                       final Method method,
+                                       final Object[] args)
+  {
+    try
+    {
+      return (Collection<?>) invoke(catalog(part), method, args);
+    }
+    catch (final RuntimeException | Error e)
+    {
+      throw e;
+    }
+    catch (final Throwable e)
+    {
+      throw new IllegalStateException("Cannot read catalog part", e);
+    }
+  }
+
+  private Object invoke(final Catalog catalog,
+                        final Method method,
+                        final Object[] args)
+    throws Throwable
+  {
+    try
+    {
+      return method.invoke(catalog, args);
+    }
+    catch (final InvocationTargetException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+}
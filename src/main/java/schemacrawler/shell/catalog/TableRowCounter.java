@@ -0,0 +1,461 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+import static sf.util.Utility.isBlank;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+import javax.sql.DataSource;
+
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Table;
+import schemacrawler.schemacrawler.SchemaCrawlerException;
+import schemacrawler.utility.Identifiers;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Counts rows in tables in parallel, with each worker using its own
+ * pooled connection. Counts can optionally be read from the
+ * statistics views of the database, and are cached between loads.
+ * Approximate counts are cached apart from exact counts, and are used
+ * only when approximate counts are asked for.
+ */
+public final class TableRowCounter
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(TableRowCounter.class.getName());
+
+  public static final String APPROXIMATE_ROW_COUNTS = "schemacrawler.shell.row_counts.approximate";
+  public static final String ROW_COUNT_THREADS = "schemacrawler.shell.row_counts.threads";
+  public static final String ROW_COUNT_QUERY_TIMEOUT = "schemacrawler.shell.row_counts.query_timeout";
+
+  /**
+   * Table attribute for row counts, which is the same attribute that
+   * SchemaCrawler text and diagram output shows counts from.
+   */
+  public static final String ROW_COUNT = "schemacrawler.table.count";
+
+  /**
+   * Table attribute that is set when the row count is approximate, from
+   * database statistics.
+   */
+  public static final String ROW_COUNT_APPROXIMATE = "schemacrawler.shell.row_count.approximate";
+
+  /**
+   * Queries against statistics views, keyed by database system
+   * identifier. Each query takes the schema name and table name as
+   * parameters.
+   */
+  private static final Map<String, String> APPROXIMATE_ROW_COUNT_QUERIES;
+  static
+  {
+    APPROXIMATE_ROW_COUNT_QUERIES = new HashMap<>();
+    APPROXIMATE_ROW_COUNT_QUERIES
+      .put("postgresql",
+           "SELECT CAST(C.RELTUPLES AS BIGINT) FROM PG_CATALOG.PG_CLASS C "
+                         + "INNER JOIN PG_CATALOG.PG_NAMESPACE N ON N.OID = C.RELNAMESPACE "
+                         + "WHERE N.NSPNAME = ? AND C.RELNAME = ?");
+    APPROXIMATE_ROW_COUNT_QUERIES
+      .put("oracle",
+           "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = ? AND TABLE_NAME = ?");
+    APPROXIMATE_ROW_COUNT_QUERIES
+      .put("sqlserver",
+           "SELECT SUM(P.ROWS) FROM SYS.PARTITIONS P "
+                        + "INNER JOIN SYS.TABLES T ON T.OBJECT_ID = P.OBJECT_ID "
+                        + "INNER JOIN SYS.SCHEMAS S ON S.SCHEMA_ID = T.SCHEMA_ID "
+                        + "WHERE S.NAME = ? AND T.NAME = ? AND P.INDEX_ID IN (0, 1)");
+    APPROXIMATE_ROW_COUNT_QUERIES
+      .put("mysql",
+           "SELECT TABLE_ROWS FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?");
+    APPROXIMATE_ROW_COUNT_QUERIES
+      .put("db2",
+           "SELECT CARD FROM SYSCAT.TABLES WHERE TABSCHEMA = ? AND TABNAME = ?");
+  }
+
+  /**
+   * Checks whether a table may have rows. A table that has not been
+   * counted may have rows.
+   *
+   * @param table
+   *        Table to check
+   * @return False only if the table was counted, and is empty
+   */
+  public static boolean hasRows(final Table table)
+  {
+    final Number rowCount = table.getAttribute(ROW_COUNT);
+    return rowCount == null || rowCount.longValue() > 0;
+  }
+
+  /**
+   * Checks whether the row count of a table is approximate, from
+   * database statistics.
+   *
+   * @param table
+   *        Table to check
+   * @return True only if the table has an approximate row count
+   */
+  public static boolean isApproximateRowCount(final Table table)
+  {
+    return table.getAttribute(ROW_COUNT) != null
+           && table.hasAttribute(ROW_COUNT_APPROXIMATE);
+  }
+
+  /**
+   * Sets the exact row count of a table, so that it is shown in output.
+   *
+   * @param table
+   *        Table that was counted
+   * @param rowCount
+   *        Number of rows in the table
+   */
+  public static void setRowCount(final Table table, final long rowCount)
+  {
+    setRowCount(table, rowCount, false);
+  }
+
+  /**
+   * Sets the row count of a table, so that it is shown in output.
+   *
+   * @param table
+   *        Table that was counted
+   * @param rowCount
+   *        Number of rows in the table
+   * @param approximate
+   *        Whether the count is approximate, from database statistics
+   */
+  public static void setRowCount(final Table table,
+                                 final long rowCount,
+                                 final boolean approximate)
+  {
+    table.setAttribute(ROW_COUNT, rowCount);
+    if (approximate)
+    {
+      table.setAttribute(ROW_COUNT_APPROXIMATE, true);
+    }
+    else
+    {
+      table.removeAttribute(ROW_COUNT_APPROXIMATE);
+    }
+  }
+
+  public static boolean supportsApproximateRowCounts(final String databaseSystemIdentifier)
+  {
+    return APPROXIMATE_ROW_COUNT_QUERIES.containsKey(databaseSystemIdentifier);
+  }
+
+  private final DataSource dataSource;
+  private final Identifiers identifiers;
+  private final Map<String, Long> rowCountsCache;
+  private final Map<String, Long> approximateRowCountsCache;
+  private final String approximateRowCountQuery;
+  private final int threads;
+  private final int queryTimeout;
+
+  /**
+   * Row counter for tables.
+   *
+   * @param dataSource
+   *        Pool of connections to count rows with
+   * @param identifiers
+   *        Identifiers for quoting table names
+   * @param rowCountsCache
+   *        Exact row counts retained between loads, keyed by full table
+   *        name
+   * @param approximateRowCountsCache
+   *        Approximate row counts retained between loads, keyed by full
+   *        table name
+   * @param databaseSystemIdentifier
+   *        Database system, used to look up a statistics query for
+   *        approximate counts, or null for exact counts only
+   * @param threads
+   *        Number of tables to count concurrently
+   * @param queryTimeout
+   *        Timeout in seconds for each count, or 0 for no timeout
+   */
+  public TableRowCounter(final DataSource dataSource,
+                         final Identifiers identifiers,
+                         final Map<String, Long> rowCountsCache,
+                         final Map<String, Long> approximateRowCountsCache,
+                         final String databaseSystemIdentifier,
+                         final int threads,
+                         final int queryTimeout)
+  {
+    this.dataSource = requireNonNull(dataSource, "No data source provided");
+    this.identifiers = requireNonNull(identifiers, "No identifiers provided");
+    this.rowCountsCache = requireNonNull(rowCountsCache,
+                                         "No row counts cache provided");
+    this.approximateRowCountsCache = requireNonNull(approximateRowCountsCache,
+                                                    "No approximate row counts cache provided");
+    if (isBlank(databaseSystemIdentifier))
+    {
+      approximateRowCountQuery = null;
+    }
+    else
+    {
+      approximateRowCountQuery = APPROXIMATE_ROW_COUNT_QUERIES
+        .get(databaseSystemIdentifier);
+    }
+    this.threads = Math.max(1, threads);
+    this.queryTimeout = Math.max(0, queryTimeout);
+  }
+
+  /**
+   * Counts rows for the provided tables. Tables for which a count
+   * could not be obtained (for example, because the query timed out)
+   * are not present in the returned map. Use
+   * {@link #isApproximate(Table)} to find which counts are approximate.
+   *
+   * @param tables
+   *        Tables to count
+   * @return Row counts for tables
+   * @throws SchemaCrawlerException
+   *         On an exception counting rows
+   */
+  public Map<Table, Long> countRows(final Collection<Table> tables)
+    throws SchemaCrawlerException
+  {
+    final Map<Table, Long> rowCounts = new ConcurrentHashMap<>();
+    final Queue<Table> pending = new ConcurrentLinkedQueue<>();
+    for (final Table table: tables)
+    {
+      final Long cachedRowCount = cachedRowCount(table);
+      if (cachedRowCount != null)
+      {
+        rowCounts.put(table, cachedRowCount);
+      }
+      else
+      {
+        pending.add(table);
+      }
+    }
+    LOGGER.log(Level.INFO,
+               new StringFormat("Counting rows for %d tables, with %d cached",
+                                pending.size(),
+                                rowCounts.size()));
+    if (pending.isEmpty())
+    {
+      return rowCounts;
+    }
+
+    final int workers = Math.min(threads, pending.size());
+    final ExecutorService executorService = Executors
+      .newFixedThreadPool(workers);
+    try
+    {
+      final Future<?>[] futures = new Future<?>[workers];
+      for (int i = 0; i < workers; i++)
+      {
+        futures[i] = executorService.submit(() -> {
+          countRows(pending, rowCounts);
+          return null;
+        });
+      }
+      for (final Future<?> future: futures)
+      {
+        future.get();
+      }
+    }
+    catch (final Exception e)
+    {
+      throw new SchemaCrawlerException("Could not count table rows", e);
+    }
+    finally
+    {
+      executorService.shutdownNow();
+    }
+
+    return rowCounts;
+  }
+
+  /**
+   * Checks whether the count for a table is approximate, after rows are
+   * counted. Exact counts are always used when they are known.
+   *
+   * @param table
+   *        Counted table
+   * @return True if the count is approximate
+   */
+  public boolean isApproximate(final Table table)
+  {
+    final String tableName = table.getFullName();
+    return approximateRowCountQuery != null
+           && !rowCountsCache.containsKey(tableName)
+           && approximateRowCountsCache.containsKey(tableName);
+  }
+
+  private Long approximateRowCount(final Connection connection,
+                                   final Table table)
+  {
+    if (approximateRowCountQuery == null)
+    {
+      return null;
+    }
+
+    final Schema schema = table.getSchema();
+    final String schemaName = isBlank(schema.getName())? schema
+      .getCatalogName(): schema.getName();
+    try (
+        final PreparedStatement statement = connection
+          .prepareStatement(approximateRowCountQuery);)
+    {
+      setQueryTimeout(statement);
+      statement.setString(1, schemaName);
+      statement.setString(2, table.getName());
+      try (final ResultSet results = statement.executeQuery();)
+      {
+        if (results.next())
+        {
+          final long rowCount = results.getLong(1);
+          // Statistics that are missing, or that show an empty table
+          // cannot be trusted, but an exact count is cheap for an
+          // empty table
+          if (!results.wasNull() && rowCount > 0)
+          {
+            return rowCount;
+          }
+        }
+      }
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.log(Level.FINE,
+                 new StringFormat("Could not get approximate row count for table <%s>",
+                                  table),
+                 e);
+    }
+    return null;
+  }
+
+  /**
+   * Gets a cached count, preferring an exact count. Approximate counts
+   * are used only when approximate counts are asked for.
+   */
+  private Long cachedRowCount(final Table table)
+  {
+    final String tableName = table.getFullName();
+    final Long rowCount = rowCountsCache.get(tableName);
+    if (rowCount != null || approximateRowCountQuery == null)
+    {
+      return rowCount;
+    }
+    return approximateRowCountsCache.get(tableName);
+  }
+
+  private void countRows(final Queue<Table> pending,
+                         final Map<Table, Long> rowCounts)
+    throws SQLException
+  {
+    try (final Connection connection = dataSource.getConnection();)
+    {
+      Table table;
+      while ((table = pending.poll()) != null)
+      {
+        if (Thread.currentThread().isInterrupted())
+        {
+          return;
+        }
+
+        Long rowCount = approximateRowCount(connection, table);
+        if (rowCount != null)
+        {
+          rowCounts.put(table, rowCount);
+          approximateRowCountsCache.put(table.getFullName(), rowCount);
+          continue;
+        }
+        rowCount = exactRowCount(connection, table);
+        if (rowCount != null)
+        {
+          rowCounts.put(table, rowCount);
+          rowCountsCache.put(table.getFullName(), rowCount);
+        }
+      }
+    }
+  }
+
+  private Long exactRowCount(final Connection connection, final Table table)
+  {
+    final String sql = "SELECT COUNT(*) FROM "
+                       + identifiers.quoteFullName(table);
+    try (final Statement statement = connection.createStatement();)
+    {
+      setQueryTimeout(statement);
+      try (final ResultSet results = statement.executeQuery(sql);)
+      {
+        if (results.next())
+        {
+          return results.getLong(1);
+        }
+      }
+    }
+    catch (final SQLException e)
+    {
+      // A count that fails, or times out, leaves the table in the
+      // catalog
+      LOGGER.log(Level.WARNING,
+                 new StringFormat("Could not count rows for table <%s>",
+                                  table),
+                 e);
+    }
+    return null;
+  }
+
+  /**
+   * Sets the timeout for a count only if there is one, so that a
+   * timeout set on the connection, such as for cancelling a command,
+   * is kept otherwise.
+   */
+  private void setQueryTimeout(final Statement statement)
+    throws SQLException
+  {
+    if (queryTimeout > 0)
+    {
+      statement.setQueryTimeout(queryTimeout);
+    }
+  }
+
+}
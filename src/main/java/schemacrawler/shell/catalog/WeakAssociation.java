@@ -0,0 +1,110 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+
+import schemacrawler.schema.Column;
+
+/**
+ * A relationship between two columns that is inferred from column and
+ * table names, and is not backed by a foreign key in the database.
+ */
+public final class WeakAssociation
+  implements Serializable, Comparable<WeakAssociation>
+{
+
+  private static final long serialVersionUID = -4227373926862960386L;
+
+  private final Column foreignKeyColumn;
+  private final Column primaryKeyColumn;
+
+  public WeakAssociation(final Column foreignKeyColumn,
+                         final Column primaryKeyColumn)
+  {
+    this.foreignKeyColumn = requireNonNull(foreignKeyColumn,
+                                           "No foreign key column provided");
+    this.primaryKeyColumn = requireNonNull(primaryKeyColumn,
+                                           "No primary key column provided");
+  }
+
+  @Override
+  public int compareTo(final WeakAssociation other)
+  {
+    int compare = foreignKeyColumn.compareTo(other.foreignKeyColumn);
+    if (compare == 0)
+    {
+      compare = primaryKeyColumn.compareTo(other.primaryKeyColumn);
+    }
+    return compare;
+  }
+
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+    if (!(obj instanceof WeakAssociation))
+    {
+      return false;
+    }
+    final WeakAssociation other = (WeakAssociation) obj;
+    return foreignKeyColumn.equals(other.foreignKeyColumn)
+           && primaryKeyColumn.equals(other.primaryKeyColumn);
+  }
+
+  public Column getForeignKeyColumn()
+  {
+    return foreignKeyColumn;
+  }
+
+  public Column getPrimaryKeyColumn()
+  {
+    return primaryKeyColumn;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return 31 * foreignKeyColumn.hashCode() + primaryKeyColumn.hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return foreignKeyColumn.getFullName() + " --> "
+           + primaryKeyColumn.getFullName();
+  }
+
+}
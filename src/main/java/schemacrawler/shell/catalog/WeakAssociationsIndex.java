@@ -0,0 +1,308 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.catalog;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Column;
+import schemacrawler.schema.Index;
+import schemacrawler.schema.PrimaryKey;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Table;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Infers weak associations by matching column names against a hash
+ * index of primary key and unique column names, and of key names
+ * derived from table names. Each column is looked up once, so
+ * inference is roughly linear in the number of columns. Schemas are
+ * matched in parallel, and results are cached on the catalog.
+ */
+public final class WeakAssociationsIndex
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(WeakAssociationsIndex.class.getName());
+
+  private static final String WEAK_ASSOCIATIONS = "schemacrawler.shell.weak_associations";
+
+  private static final String[] TABLE_NAME_PREFIXES = {
+                                                        "tbl",
+                                                        "tb",
+                                                        "t" };
+
+  /**
+   * Gets weak associations for a catalog, inferring them if they have
+   * not already been cached on the catalog.
+   *
+   * @param catalog
+   *        Catalog to analyze
+   * @return Weak associations, sorted
+   */
+  public static List<WeakAssociation> weakAssociations(final Catalog catalog)
+  {
+    requireNonNull(catalog, "No catalog provided");
+
+    final List<WeakAssociation> cachedWeakAssociations = catalog
+      .getAttribute(WEAK_ASSOCIATIONS);
+    if (cachedWeakAssociations != null)
+    {
+      return cachedWeakAssociations;
+    }
+
+    final List<WeakAssociation> weakAssociations = new WeakAssociationsIndex(catalog)
+      .match();
+    catalog.setAttribute(WEAK_ASSOCIATIONS, weakAssociations);
+    return weakAssociations;
+  }
+
+  /**
+   * Normalizes a name for matching, by lower-casing it, and removing
+   * anything that is not a letter or a digit.
+   */
+  static String normalize(final String name)
+  {
+    if (name == null)
+    {
+      return "";
+    }
+    final StringBuilder buffer = new StringBuilder(name.length());
+    for (final char ch: name.toLowerCase(Locale.ENGLISH).toCharArray())
+    {
+      if (Character.isLetterOrDigit(ch))
+      {
+        buffer.append(ch);
+      }
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * Stems of a table name, that is, the normalized name, without
+   * common prefixes, and in singular form.
+   */
+  static Set<String> tableNameStems(final String tableName)
+  {
+    final Set<String> stems = new HashSet<>();
+
+    String stem = normalize(tableName);
+    final String lowerCaseTableName = tableName.toLowerCase(Locale.ENGLISH);
+    for (final String prefix: TABLE_NAME_PREFIXES)
+    {
+      if (lowerCaseTableName.startsWith(prefix + "_"))
+      {
+        stem = stem.substring(prefix.length());
+        break;
+      }
+    }
+    if (stem.isEmpty())
+    {
+      return stems;
+    }
+
+    stems.add(stem);
+    if (stem.endsWith("ies") && stem.length() > 3)
+    {
+      stems.add(stem.substring(0, stem.length() - 3) + "y");
+    }
+    else if (stem.endsWith("ses") && stem.length() > 3)
+    {
+      stems.add(stem.substring(0, stem.length() - 2));
+    }
+    else if (stem.endsWith("s") && stem.length() > 1)
+    {
+      stems.add(stem.substring(0, stem.length() - 1));
+    }
+    return stems;
+  }
+
+  private final Catalog catalog;
+  private final Map<String, List<Column>> keyColumnsIndex;
+
+  private WeakAssociationsIndex(final Catalog catalog)
+  {
+    this.catalog = catalog;
+    keyColumnsIndex = buildIndex(catalog.getTables());
+  }
+
+  private void addToIndex(final Map<String, List<Column>> index,
+                          final String key,
+                          final Column column)
+  {
+    if (key.isEmpty())
+    {
+      return;
+    }
+    final List<Column> columns = index.computeIfAbsent(key,
+                                                       k -> new ArrayList<>());
+    if (!columns.contains(column))
+    {
+      columns.add(column);
+    }
+  }
+
+  private Map<String, List<Column>> buildIndex(final Collection<Table> tables)
+  {
+    final Map<String, List<Column>> index = new HashMap<>();
+    for (final Table table: tables)
+    {
+      final List<Column> keyColumns = new ArrayList<>();
+      final PrimaryKey primaryKey = table.getPrimaryKey();
+      if (primaryKey != null && primaryKey.getColumns().size() == 1)
+      {
+        keyColumns.add(lookupTableColumn(table,
+                                         primaryKey.getColumns().get(0)
+                                           .getName()));
+      }
+      for (final Index tableIndex: table.getIndexes())
+      {
+        if (tableIndex.isUnique() && tableIndex.getColumns().size() == 1)
+        {
+          keyColumns.add(lookupTableColumn(table,
+                                           tableIndex.getColumns().get(0)
+                                             .getName()));
+        }
+      }
+
+      final Set<String> stems = tableNameStems(table.getName());
+      for (final Column keyColumn: keyColumns)
+      {
+        if (keyColumn == null)
+        {
+          continue;
+        }
+
+        final String keyName = normalize(keyColumn.getName());
+        // A key named after its table, such as CUSTOMER_ID in
+        // CUSTOMERS, matches columns of the same name in other tables
+        boolean isNamedForTable = false;
+        for (final String stem: stems)
+        {
+          if (keyName.startsWith(stem) && keyName.length() > stem.length())
+          {
+            isNamedForTable = true;
+            break;
+          }
+        }
+        if (isNamedForTable)
+        {
+          addToIndex(index, keyName, keyColumn);
+        }
+        else
+        {
+          // A generic key, such as ID in CUSTOMERS, matches columns
+          // named for the table, such as CUSTOMER_ID or CUSTOMERID
+          for (final String stem: stems)
+          {
+            addToIndex(index, stem + keyName, keyColumn);
+          }
+        }
+      }
+    }
+
+    LOGGER.log(Level.INFO,
+               new StringFormat("Indexed %d key names for weak associations",
+                                index.size()));
+    return index;
+  }
+
+  private Column lookupTableColumn(final Table table, final String columnName)
+  {
+    return table.lookupColumn(columnName).orElse(null);
+  }
+
+  private List<WeakAssociation> match()
+  {
+    final List<WeakAssociation> weakAssociations = catalog.getSchemas()
+      .parallelStream().map(this::match).flatMap(List::stream).sorted()
+      .collect(Collectors.toList());
+
+    LOGGER.log(Level.INFO,
+               new StringFormat("Found %d weak associations",
+                                weakAssociations.size()));
+    return Collections.unmodifiableList(weakAssociations);
+  }
+
+  private List<WeakAssociation> match(final Schema schema)
+  {
+    final List<WeakAssociation> weakAssociations = new ArrayList<>();
+    for (final Table table: catalog.getTables(schema))
+    {
+      for (final Column column: table.getColumns())
+      {
+        if (column.isPartOfForeignKey() || isPrimaryKeyColumn(table, column))
+        {
+          continue;
+        }
+
+        final List<Column> keyColumns = keyColumnsIndex
+          .get(normalize(column.getName()));
+        if (keyColumns == null)
+        {
+          continue;
+        }
+        for (final Column keyColumn: keyColumns)
+        {
+          if (!keyColumn.getParent().equals(table))
+          {
+            weakAssociations.add(new WeakAssociation(column, keyColumn));
+          }
+        }
+      }
+    }
+    return weakAssociations;
+  }
+
+  /**
+   * Columns of a composite primary key, such as in a link table, can
+   * still be weak associations to other tables.
+   */
+  private boolean isPrimaryKeyColumn(final Table table, final Column column)
+  {
+    final PrimaryKey primaryKey = table.getPrimaryKey();
+    return primaryKey != null && primaryKey.getColumns().size() == 1
+           && column.isPartOfPrimaryKey();
+  }
+
+}
@@ -0,0 +1,428 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.commands;
+
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Level;
+
+import javax.validation.constraints.Min;
+
+import org.jline.utils.AttributedString;
+import org.jline.utils.AttributedStyle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.shell.Availability;
+import org.springframework.shell.standard.ShellCommandGroup;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellMethodAvailability;
+import org.springframework.shell.standard.ShellOption;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Column;
+import schemacrawler.schema.DescribedObject;
+import schemacrawler.schema.NamedObject;
+import schemacrawler.schema.Routine;
+import schemacrawler.schema.RoutineColumn;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Table;
+import schemacrawler.schemacrawler.InclusionRule;
+import schemacrawler.schemacrawler.InfoLevel;
+import schemacrawler.schemacrawler.RegularExpressionInclusionRule;
+import schemacrawler.shell.CatalogNameValueProvider;
+import schemacrawler.shell.catalog.CatalogFingerprint;
+import schemacrawler.shell.catalog.DefinitionIndex;
+import schemacrawler.shell.catalog.ForeignKeyAdjacencyIndex;
+import schemacrawler.shell.catalog.NameIndex;
+import schemacrawler.shell.catalog.OfflineCatalog;
+import schemacrawler.shell.catalog.WeakAssociation;
+import schemacrawler.shell.catalog.WeakAssociationsIndex;
+import schemacrawler.shell.state.SchemaCrawlerShellState;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+@ShellComponent
+@ShellCommandGroup("7. Catalog Commands")
+public class CatalogCommands
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(CatalogCommands.class.getName());
+
+  @Autowired
+  private final SchemaCrawlerShellState state;
+
+  public CatalogCommands(final SchemaCrawlerShellState state)
+  {
+    this.state = state;
+  }
+
+  @ShellMethod(value = "Describe database objects with a name, or fully qualified name", prefix = "-")
+  public AttributedString describe(@ShellOption(help = "Name, or fully qualified name, ignoring case", valueProvider = CatalogNameValueProvider.class) final String name)
+  {
+    try
+    {
+      LOGGER.log(Level.INFO, new StringFormat("name=%s", name));
+
+      final List<NameIndex.Entry> entries = NameIndex
+        .nameIndex(state.getCatalog()).lookup(name);
+      for (final NameIndex.Entry entry: entries)
+      {
+        describe(entry);
+      }
+
+      return new AttributedString(String
+        .format("Found %d objects named %s", entries.size(), name),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot describe database objects", e);
+    }
+  }
+
+  @ShellMethod(value = "Compare catalog snapshots, or a snapshot with the loaded catalog", prefix = "-")
+  public AttributedString diffCatalog(@ShellOption(help = "Name or file of the snapshot to compare from") final String from,
+                                      @ShellOption(defaultValue = "", help = "Name or file of the snapshot to compare to, or the loaded catalog if not provided") final String to)
+  {
+    try
+    {
+      LOGGER.log(Level.INFO, new StringFormat("from=%s, to=%s", from, to));
+
+      final CatalogFingerprint fromFingerprint = lookupSnapshot(from);
+      final CatalogFingerprint toFingerprint;
+      if (to.isEmpty())
+      {
+        if (!state.isLoaded())
+        {
+          return new AttributedString("Cannot compare with the loaded catalog, since there is no schema metadata loaded",
+                                      AttributedStyle.DEFAULT
+                                        .foreground(AttributedStyle.RED));
+        }
+        toFingerprint = CatalogFingerprint.fingerprint(state.getCatalog());
+      }
+      else
+      {
+        toFingerprint = lookupSnapshot(to);
+      }
+
+      final List<String> differences = fromFingerprint.diff(toFingerprint);
+      for (final String difference: differences)
+      {
+        System.out.println(difference);
+      }
+
+      return new AttributedString(String
+        .format("Found %d differences", differences.size()),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot compare catalogs", e);
+    }
+  }
+
+  public Availability diffCatalogAvailability()
+  {
+    // Saved snapshots can be compared without a loaded catalog
+    return Availability.available();
+  }
+
+  @ShellMethod(value = "Find database objects with names that start with a prefix", prefix = "-")
+  public AttributedString find(@ShellOption(help = "Start of the name, or fully qualified name, ignoring case", valueProvider = CatalogNameValueProvider.class) final String name,
+                               @ShellOption(defaultValue = "100", help = "Maximum number of objects to list") @Min(1) final int limit)
+  {
+    try
+    {
+      LOGGER.log(Level.INFO,
+                 new StringFormat("name=%s, limit=%d", name, limit));
+
+      final List<NameIndex.Entry> entries = NameIndex
+        .nameIndex(state.getCatalog()).find(name, limit);
+      for (final NameIndex.Entry entry: entries)
+      {
+        System.out.println(entry);
+      }
+
+      return new AttributedString(String.format("Found %d objects",
+                                                entries.size()),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot find database objects", e);
+    }
+  }
+
+  @ShellMethodAvailability
+  public Availability isLoaded()
+  {
+    final boolean isLoaded = state.isLoaded();
+    return isLoaded? Availability.available(): Availability
+      .unavailable("there is no schema metadata loaded");
+  }
+
+  @ShellMethod(value = "List tables related by foreign keys to matching tables", prefix = "-")
+  public AttributedString relatedTables(@ShellOption(defaultValue = ".*", help = "Regular expression to match fully qualified names of tables to start from") final String tables,
+                                        @ShellOption(defaultValue = "0", help = "Number of generations of ancestors, or -1 for all ancestors") final int parents,
+                                        @ShellOption(defaultValue = "0", help = "Number of generations of descendents, or -1 for all descendents") final int children)
+  {
+    try
+    {
+      LOGGER.log(Level.INFO,
+                 new StringFormat("tables=%s, parents=%d, children=%d",
+                                  tables,
+                                  parents,
+                                  children));
+
+      final ForeignKeyAdjacencyIndex adjacencyIndex = ForeignKeyAdjacencyIndex
+        .adjacencyIndex(state.getCatalog());
+      final InclusionRule tableInclusionRule = new RegularExpressionInclusionRule(tables);
+      final BitSet selected = adjacencyIndex
+        .select(table -> tableInclusionRule.test(table.getFullName()));
+      final BitSet related = adjacencyIndex.expand(selected, parents, children);
+      for (final Table table: adjacencyIndex.tables(related))
+      {
+        System.out.println(table.getFullName());
+      }
+
+      return new AttributedString(String
+        .format("Found %d related tables", related.cardinality()),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot find related tables", e);
+    }
+  }
+
+  @ShellMethod(value = "Save the loaded catalog, to work with offline", prefix = "-")
+  public AttributedString saveCatalog(@ShellOption(help = "File to save the catalog to") final String outputfile)
+  {
+    try
+    {
+      LOGGER.log(Level.INFO, new StringFormat("outputfile=%s", outputfile));
+
+      final Catalog catalog = state.getCatalog();
+      // Catalogs that were loaded offline keep the info level that they
+      // were first saved with
+      final InfoLevel infoLevel;
+      if (state.isOffline())
+      {
+        infoLevel = OfflineCatalog.getInfoLevel(catalog);
+      }
+      else
+      {
+        infoLevel = InfoLevel.valueOfFromString(state.getSchemaCrawlerOptions()
+          .getSchemaInfoLevel().getTag());
+      }
+      OfflineCatalog.save(catalog, infoLevel, Paths.get(outputfile));
+
+      return new AttributedString(String.format("Saved catalog to %s",
+                                                outputfile),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot save catalog", e);
+    }
+  }
+
+  @ShellMethod(value = "Search remarks, view definitions, trigger bodies and routine definitions in the loaded catalog", prefix = "-")
+  public AttributedString searchDefinitions(@ShellOption(help = "Words to search for, ignoring case") final String words,
+                                            @ShellOption(defaultValue = "100", help = "Maximum number of definitions to list") @Min(1) final int limit)
+  {
+    try
+    {
+      LOGGER.log(Level.INFO,
+                 new StringFormat("words=%s, limit=%d", words, limit));
+
+      final List<DefinitionIndex.Match> matches = DefinitionIndex
+        .definitionIndex(state.getCatalog()).search(words, limit);
+      for (final DefinitionIndex.Match match: matches)
+      {
+        System.out.println(match);
+      }
+
+      return new AttributedString(String.format("Found %d definitions",
+                                                matches.size()),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot search definitions", e);
+    }
+  }
+
+  @ShellMethod(value = "Save a fingerprint of the loaded catalog, to compare with later", prefix = "-")
+  public AttributedString snapshotCatalog(@ShellOption(help = "Name of the snapshot") final String name,
+                                          @ShellOption(defaultValue = "", help = "File to save the snapshot to") final String outputfile)
+  {
+    try
+    {
+      LOGGER.log(Level.INFO,
+                 new StringFormat("name=%s, outputfile=%s", name, outputfile));
+
+      final CatalogFingerprint fingerprint = CatalogFingerprint
+        .fingerprint(state.getCatalog());
+      state.getCatalogSnapshots().put(name, fingerprint);
+      if (!outputfile.isEmpty())
+      {
+        try (
+            final ObjectOutputStream out = new ObjectOutputStream(Files
+              .newOutputStream(Paths.get(outputfile)));)
+        {
+          out.writeObject(fingerprint);
+        }
+      }
+
+      return new AttributedString(String
+        .format("Saved snapshot %s, with fingerprint %s",
+                name,
+                fingerprint.getHash()),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot save catalog snapshot", e);
+    }
+  }
+
+  @ShellMethod(value = "List weak associations inferred from column names", prefix = "-")
+  public AttributedString weakAssociations()
+  {
+    try
+    {
+      LOGGER.log(Level.INFO, "weak-associations");
+
+      final List<WeakAssociation> weakAssociations = WeakAssociationsIndex
+        .weakAssociations(state.getCatalog());
+      for (final WeakAssociation weakAssociation: weakAssociations)
+      {
+        System.out.println(weakAssociation);
+      }
+
+      return new AttributedString(String
+        .format("Found %d weak associations", weakAssociations.size()),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot find weak associations", e);
+    }
+  }
+
+  private void describe(final NameIndex.Entry entry)
+  {
+    final NamedObject namedObject = entry.getNamedObject();
+    System.out.println(entry);
+    if (namedObject instanceof DescribedObject
+        && ((DescribedObject) namedObject).hasRemarks())
+    {
+      System.out.println("  -- " + ((DescribedObject) namedObject)
+        .getRemarks());
+    }
+
+    switch (entry.getKind())
+    {
+      case schema:
+        System.out.println(String.format("  %d tables",
+                                         state.getCatalog()
+                                           .getTables((Schema) namedObject)
+                                           .size()));
+        break;
+      case table:
+        final Table table = (Table) namedObject;
+        System.out.println("  " + table.getTableType());
+        for (final Column column: table.getColumns())
+        {
+          System.out.println(String.format("  %-30s %s%s",
+                                           column.getName(),
+                                           column.getColumnDataType()
+                                             .getName(),
+                                           column.isNullable()? ""
+                                                              : " not null"));
+        }
+        break;
+      case column:
+        final Column column = (Column) namedObject;
+        System.out.println(String.format("  %s%s",
+                                         column.getColumnDataType().getName(),
+                                         column.isNullable()? ""
+                                                            : " not null"));
+        break;
+      case routine:
+        final Routine routine = (Routine) namedObject;
+        System.out.println("  " + routine.getRoutineType());
+        for (final RoutineColumn<?> routineColumn: routine.getColumns())
+        {
+          System.out.println(String.format("  %-30s %s",
+                                           routineColumn.getName(),
+                                           routineColumn.getColumnDataType()
+                                             .getName()));
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private CatalogFingerprint lookupSnapshot(final String snapshot)
+    throws IOException
+  {
+    final CatalogFingerprint fingerprint = state.getCatalogSnapshots()
+      .get(snapshot);
+    if (fingerprint != null)
+    {
+      return fingerprint;
+    }
+
+    final Path snapshotFile = Paths.get(snapshot);
+    if (!Files.isRegularFile(snapshotFile))
+    {
+      throw new IllegalArgumentException("No snapshot named " + snapshot);
+    }
+    return CatalogFingerprint.load(snapshotFile);
+  }
+
+}
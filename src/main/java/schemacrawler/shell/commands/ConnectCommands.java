@@ -29,10 +29,24 @@ http://www.gnu.org/licenses/
 package schemacrawler.shell.commands;
 
 
+import static schemacrawler.shell.catalog.CatalogPrefetch.PREFETCH;
+import static schemacrawler.shell.state.MetadataCache.DEFAULT_METADATA_CACHE_SIZE;
+import static schemacrawler.shell.state.MetadataCache.METADATA_CACHE_SIZE;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
+import javax.sql.DataSource;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
@@ -46,16 +60,30 @@ import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
 
+import schemacrawler.schema.Catalog;
 import schemacrawler.schemacrawler.Config;
 import schemacrawler.schemacrawler.DatabaseServerType;
+import schemacrawler.schemacrawler.InfoLevel;
 import schemacrawler.schemacrawler.SchemaCrawlerException;
+import schemacrawler.schemacrawler.SchemaCrawlerOptions;
 import schemacrawler.schemacrawler.SchemaCrawlerOptionsBuilder;
+import schemacrawler.schemacrawler.SchemaInfoLevel;
+import schemacrawler.schemacrawler.SchemaInfoLevelBuilder;
+import schemacrawler.schemacrawler.SchemaRetrievalOptions;
 import schemacrawler.schemacrawler.SchemaRetrievalOptionsBuilder;
+import schemacrawler.shell.catalog.CatalogCrawler;
+import schemacrawler.shell.catalog.CatalogPrefetch;
+import schemacrawler.shell.catalog.OfflineCatalog;
+import schemacrawler.shell.state.MetadataCache;
+import schemacrawler.shell.state.ReplayDriver;
+import schemacrawler.shell.state.ResultSetType;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
+import schemacrawler.shell.state.ShellDataSource;
 import schemacrawler.tools.databaseconnector.DatabaseConfigConnectionOptions;
 import schemacrawler.tools.databaseconnector.DatabaseConnector;
 import schemacrawler.tools.databaseconnector.DatabaseConnectorRegistry;
 import schemacrawler.tools.databaseconnector.SingleUseUserCredentials;
+import schemacrawler.tools.options.OutputOptionsBuilder;
 import sf.util.SchemaCrawlerLogger;
 import sf.util.StringFormat;
 import us.fatehi.commandlineparser.CommandLineUtility;
@@ -68,6 +96,29 @@ public class ConnectCommands
   private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
     .getLogger(ConnectCommands.class.getName());
 
+  public static final String MAX_CONNECTIONS = "schemacrawler.shell.connections.max";
+  public static final int DEFAULT_MAX_CONNECTIONS = 4;
+  public static final String CURSOR_FETCH = "schemacrawler.shell.connections.cursor_fetch";
+
+  // Fetch sizes for databases with small driver defaults, such as 10
+  // rows for Oracle, and the driver properties that set fetch sizes
+  // for metadata result sets
+  private static final Map<String, Integer> DEFAULT_FETCH_SIZES = new HashMap<>();
+  private static final Map<String, List<String>> FETCH_SIZE_PROPERTIES = new HashMap<>();
+  static
+  {
+    DEFAULT_FETCH_SIZES.put("oracle", 1000);
+    DEFAULT_FETCH_SIZES.put("postgresql", 1000);
+    DEFAULT_FETCH_SIZES.put("mysql", 1000);
+    DEFAULT_FETCH_SIZES.put("sqlserver", 1000);
+    DEFAULT_FETCH_SIZES.put("db2", 1000);
+
+    FETCH_SIZE_PROPERTIES.put("oracle", Arrays.asList("defaultRowPrefetch"));
+    FETCH_SIZE_PROPERTIES.put("postgresql",
+                              Arrays.asList("defaultRowFetchSize"));
+    FETCH_SIZE_PROPERTIES.put("mysql", Arrays.asList("defaultFetchSize"));
+  }
+
   @Autowired
   private final SchemaCrawlerShellState state;
   private Config config;
@@ -85,24 +136,28 @@ public class ConnectCommands
                                   @ShellOption(defaultValue = "", help = "Database name") final String database,
                                   @ShellOption(defaultValue = "", help = "Additional properties for the JDBC driver") final String urlx,
                                   @NotNull @ShellOption(help = "Database user name") final String user,
-                                  @ShellOption(defaultValue = "", help = "Database password") final String password)
+                                  @ShellOption(defaultValue = "", help = "Database password") final String password,
+                                  @ShellOption(defaultValue = "0", help = "Number of rows fetched in each round trip, or 0 for the default for the database") @Min(0) final int fetchsize,
+                                  @ShellOption(defaultValue = "forward_only", help = "Type of result sets for queries") final ResultSetType resultsettype)
   {
     try
     {
       LOGGER
         .log(Level.INFO,
-             new StringFormat("server=%s, host=%s, port=%d, database=%s, urlx=%s, user=%s, password=xxxx",
+             new StringFormat("server=%s, host=%s, port=%d, database=%s, urlx=%s, user=%s, password=xxxx, fetchsize=%d, resultsettype=%s",
                               databaseSystemIdentifier,
                               host,
                               port,
                               database,
                               urlx,
-                              user));
+                              user,
+                              fetchsize,
+                              resultsettype));
 
       sweep();
       lookupDatabaseConnectorFromServer(databaseSystemIdentifier);
       loadConfig();
-      loadSchemaCrawlerOptionsBuilder();
+      loadSchemaCrawlerOptions();
 
       final SingleUseUserCredentials userCredentials = new SingleUseUserCredentials(user,
                                                                                     password);
@@ -115,8 +170,9 @@ public class ConnectCommands
 
       final String connectionUrl = connectionOptions.getConnectionUrl();
 
-      createDataSource(connectionUrl, user, password);
-      loadSchemaRetrievalOptionsBuilder();
+      createDataSource(connectionUrl, user, password, resultsettype);
+      loadSchemaRetrievalOptionsBuilder(fetchsize);
+      startCatalogPrefetch();
 
       return success();
     }
@@ -129,21 +185,26 @@ public class ConnectCommands
   @ShellMethod(value = "Connect to a database, using a connection URL", prefix = "-")
   public AttributedString connectUrl(@NotNull @ShellOption(value = "-url", help = "JDBC connection URL to the database") final String connectionUrl,
                                      @NotNull @ShellOption(help = "Database user name") final String user,
-                                     @ShellOption(defaultValue = "", help = "Database password") final String password)
+                                     @ShellOption(defaultValue = "", help = "Database password") final String password,
+                                     @ShellOption(defaultValue = "0", help = "Number of rows fetched in each round trip, or 0 for the default for the database") @Min(0) final int fetchsize,
+                                     @ShellOption(defaultValue = "forward_only", help = "Type of result sets for queries") final ResultSetType resultsettype)
   {
     try
     {
       LOGGER.log(Level.INFO,
-                 new StringFormat("url=%s, user=%s, password=xxxx",
+                 new StringFormat("url=%s, user=%s, password=xxxx, fetchsize=%d, resultsettype=%s",
                                   connectionUrl,
-                                  user));
+                                  user,
+                                  fetchsize,
+                                  resultsettype));
 
       sweep();
       lookupDatabaseConnectorFromUrl(connectionUrl);
       loadConfig();
-      loadSchemaCrawlerOptionsBuilder();
-      createDataSource(connectionUrl, user, password);
-      loadSchemaRetrievalOptionsBuilder();
+      loadSchemaCrawlerOptions();
+      createDataSource(connectionUrl, user, password, resultsettype);
+      loadSchemaRetrievalOptionsBuilder(fetchsize);
+      startCatalogPrefetch();
 
       return success();
     }
@@ -153,6 +214,44 @@ public class ConnectCommands
     }
   }
 
+  @ShellMethod(value = "Work offline, with a catalog saved with save-catalog", prefix = "-")
+  public AttributedString connectOffline(@NotNull @ShellOption(value = "-catalogfile", help = "Saved catalog file") final String catalogfile)
+  {
+    try
+    {
+      LOGGER.log(Level.INFO, new StringFormat("catalogfile=%s", catalogfile));
+
+      sweep();
+      // Offline sessions have no database plugin, since there is no
+      // database to identify, so only the default configuration is loaded
+      databaseConnector = null;
+      loadConfig();
+      loadSchemaCrawlerOptions();
+      state.setSchemaRetrievalOptionsBuilder(SchemaRetrievalOptionsBuilder
+        .builder().fromConfig(config));
+      state.setOutputOptions(OutputOptionsBuilder.builder().fromConfig(config)
+        .toOptions());
+
+      final Path catalogFile = Paths.get(catalogfile);
+      final Catalog catalog = OfflineCatalog
+        .load(catalogFile, state.getSchemaCrawlerOptions());
+      final InfoLevel infoLevel = OfflineCatalog.getInfoLevel(catalog);
+      state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> schemaCrawlerOptionsBuilder
+        .withSchemaInfoLevel(SchemaInfoLevelBuilder.builder()
+          .withInfoLevel(infoLevel).withTag(infoLevel.name()).toOptions()));
+      state.setCatalog(catalog);
+      state.setOfflineCatalogFile(catalogFile);
+
+      return new AttributedString("Working offline",
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final SchemaCrawlerException | IOException e)
+    {
+      throw new RuntimeException("Cannot load offline catalog", e);
+    }
+  }
+
   @ShellMethod(value = "Disconnect from a database", prefix = "-")
   public void disconnect()
   {
@@ -192,7 +291,8 @@ public class ConnectCommands
 
   private void createDataSource(final String connectionUrl,
                                 final String user,
-                                final String password)
+                                final String password,
+                                final ResultSetType resultSetType)
   {
     LOGGER.log(Level.FINE, () -> "Creating data-source");
 
@@ -202,9 +302,26 @@ public class ConnectCommands
     dataSource.setUrl(connectionUrl);
     dataSource.setDefaultAutoCommit(false);
     dataSource.setInitialSize(1);
-    dataSource.setMaxTotal(1);
+    dataSource.setMaxTotal(config.getIntegerValue(MAX_CONNECTIONS,
+                                                  DEFAULT_MAX_CONNECTIONS));
+    // The replay driver is not registered, and is only used for replay
+    // URLs
+    final ReplayDriver replayDriver = new ReplayDriver();
+    if (replayDriver.acceptsURL(connectionUrl))
+    {
+      dataSource.setDriver(replayDriver);
+    }
+
+    final long metadataCacheSize = config
+      .getIntegerValue(METADATA_CACHE_SIZE, DEFAULT_METADATA_CACHE_SIZE)
+                                   * 1024L * 1024L;
 
-    state.setDataSource(dataSource);
+    // The fetch size is set once the database plugin has created the
+    // retrieval options
+    state.setDataSource(new ShellDataSource(dataSource,
+                                            0,
+                                            resultSetType,
+                                            new MetadataCache(metadataCacheSize)));
   }
 
   private void loadConfig()
@@ -219,28 +336,105 @@ public class ConnectCommands
     state.setAdditionalConfiguration(config);
   }
 
-  private void loadSchemaCrawlerOptionsBuilder()
+  private void loadSchemaCrawlerOptions()
   {
-    LOGGER.log(Level.FINE, () -> "Creating SchemaCrawler options builder");
+    LOGGER.log(Level.FINE, () -> "Creating SchemaCrawler options");
 
-    final SchemaCrawlerOptionsBuilder schemaCrawlerOptionsBuilder = SchemaCrawlerOptionsBuilder
-      .builder().fromConfig(config);
-    state.setSchemaCrawlerOptionsBuilder(schemaCrawlerOptionsBuilder);
+    final SchemaCrawlerOptions schemaCrawlerOptions = SchemaCrawlerOptionsBuilder
+      .builder().fromConfig(config).toOptions();
+    state.setSchemaCrawlerOptions(schemaCrawlerOptions);
   }
 
-  private void loadSchemaRetrievalOptionsBuilder()
+  private void loadSchemaRetrievalOptionsBuilder(final int fetchSize)
     throws SQLException
   {
     LOGGER.log(Level.FINE,
                () -> "Creating SchemaCrawler retrieval options builder");
 
-    try (final Connection connection = state.getDataSource().getConnection();)
+    final ShellDataSource dataSource = (ShellDataSource) state
+      .getDataSource();
+    final int effectiveFetchSize;
+    try (final Connection connection = dataSource.getConnection();)
     {
       final SchemaRetrievalOptionsBuilder schemaRetrievalOptionsBuilder = databaseConnector
         .getSchemaRetrievalOptionsBuilder(connection);
       schemaRetrievalOptionsBuilder.fromConfig(config);
       state.setSchemaRetrievalOptionsBuilder(schemaRetrievalOptionsBuilder);
+
+      final String databaseSystemIdentifier = String
+        .valueOf(schemaRetrievalOptionsBuilder.getDatabaseServerType()
+          .getDatabaseSystemIdentifier());
+      effectiveFetchSize = fetchSize > 0? fetchSize: DEFAULT_FETCH_SIZES
+        .getOrDefault(databaseSystemIdentifier, 0);
+
+      // Drivers are asked to fetch metadata result sets in large
+      // batches too, since statements for those are created by the
+      // driver
+      final BasicDataSource pool = dataSource.unwrap(BasicDataSource.class);
+      final List<String> fetchSizeProperties = new ArrayList<>();
+      if (effectiveFetchSize > 0)
+      {
+        fetchSizeProperties.addAll(FETCH_SIZE_PROPERTIES
+          .getOrDefault(databaseSystemIdentifier, Collections.emptyList()));
+      }
+      for (final String fetchSizeProperty: fetchSizeProperties)
+      {
+        pool.addConnectionProperty(fetchSizeProperty,
+                                   String.valueOf(effectiveFetchSize));
+      }
+      // MySQL only uses the fetch size with server-side cursors, which
+      // change how the server holds result sets, so they are opt-in
+      if ("mysql".equals(databaseSystemIdentifier)
+          && config.getBooleanValue(CURSOR_FETCH, false))
+      {
+        fetchSizeProperties.add("useCursorFetch");
+        pool.addConnectionProperty("useCursorFetch", "true");
+      }
+      // The pool opened this connection before the driver properties
+      // were known, so it is not reused
+      if (!fetchSizeProperties.isEmpty())
+      {
+        pool.invalidateConnection(connection);
+      }
     }
+
+    LOGGER.log(Level.CONFIG,
+               new StringFormat("Fetch size=%d, result set type=%s",
+                                effectiveFetchSize,
+                                dataSource.getResultSetType()));
+    state.setDataSource(dataSource.withFetchSize(effectiveFetchSize));
+  }
+
+  /**
+   * Starts loading the catalog at the minimum info level in the
+   * background, using one connection from the pool. Prefetch is skipped
+   * if the pool has only one connection, since it would hold up the
+   * user's own commands.
+   */
+  private void startCatalogPrefetch()
+  {
+    if (!config.getBooleanValue(PREFETCH, true)
+        || config.getIntegerValue(MAX_CONNECTIONS,
+                                  DEFAULT_MAX_CONNECTIONS) < 2)
+    {
+      return;
+    }
+
+    final SchemaInfoLevel schemaInfoLevel = SchemaInfoLevelBuilder.builder()
+      .withInfoLevel(InfoLevel.minimum).toOptions();
+    final SchemaCrawlerOptions schemaCrawlerOptions = SchemaCrawlerOptionsBuilder
+      .builder().fromOptions(state.getSchemaCrawlerOptions())
+      .withSchemaInfoLevel(schemaInfoLevel).noEmptyTables(false).toOptions();
+    final SchemaRetrievalOptions schemaRetrievalOptions = state
+      .getSchemaRetrievalOptionsBuilder().toOptions();
+    final DataSource dataSource = state.getDataSource();
+    state
+      .setCatalogPrefetch(new CatalogPrefetch(schemaCrawlerOptions,
+                                              () -> CatalogCrawler
+                                                .crawl(dataSource,
+                                                       config,
+                                                       schemaRetrievalOptions,
+                                                       schemaCrawlerOptions)));
   }
 
   private void lookupDatabaseConnectorFromServer(final String databaseSystemIdentifier)
@@ -29,15 +29,32 @@ http://www.gnu.org/licenses/
 package schemacrawler.shell.commands;
 
 
+import static schemacrawler.shell.catalog.TableRowCounter.ROW_COUNT;
+import static schemacrawler.shell.commands.ConnectCommands.DEFAULT_MAX_CONNECTIONS;
+import static schemacrawler.shell.commands.ConnectCommands.MAX_CONNECTIONS;
+import static schemacrawler.shell.output.OutputCache.OUTPUT_CACHE;
+import static schemacrawler.shell.output.ResultCache.DEFAULT_RESULT_CACHE_SIZE;
+import static schemacrawler.shell.output.ResultCache.RESULT_CACHE_SIZE;
 import static sf.util.Utility.isBlank;
 
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Level;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
+import org.jline.terminal.Terminal;
 import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStyle;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -49,10 +66,24 @@ import org.springframework.shell.standard.ShellMethodAvailability;
 import org.springframework.shell.standard.ShellOption;
 
 import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Table;
 import schemacrawler.schemacrawler.Config;
+import schemacrawler.schemacrawler.InclusionRule;
+import schemacrawler.schemacrawler.RegularExpressionInclusionRule;
 import schemacrawler.schemacrawler.SchemaCrawlerException;
 import schemacrawler.schemacrawler.SchemaCrawlerOptions;
 import schemacrawler.schemacrawler.SchemaRetrievalOptions;
+import schemacrawler.shell.catalog.CatalogFingerprint;
+import schemacrawler.shell.output.CapturingWriter;
+import schemacrawler.shell.output.CompressedOutput;
+import schemacrawler.shell.output.DiagramSplit;
+import schemacrawler.shell.output.OutputCache;
+import schemacrawler.shell.output.OutputCompression;
+import schemacrawler.shell.output.ResultCache;
+import schemacrawler.shell.output.SplitDiagramRenderer;
+import schemacrawler.shell.output.TableDataDump;
+import schemacrawler.shell.state.LazyConnection;
+import schemacrawler.shell.state.QueryCanceller;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
 import schemacrawler.tools.executable.CommandDaisyChain;
 import schemacrawler.tools.executable.CommandDescription;
@@ -61,6 +92,7 @@ import schemacrawler.tools.executable.SchemaCrawlerCommand;
 import schemacrawler.tools.integration.graph.GraphOutputFormat;
 import schemacrawler.tools.options.OutputOptions;
 import schemacrawler.tools.options.OutputOptionsBuilder;
+import sf.util.ObjectToString;
 import sf.util.SchemaCrawlerLogger;
 import sf.util.StringFormat;
 
@@ -72,8 +104,13 @@ public class ExecuteCommands
   private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
     .getLogger(ExecuteCommands.class.getName());
 
+  private static final List<String> CACHEABLE_COMMANDS = Arrays
+    .asList("brief", "schema", "details", "list");
+
   @Autowired
   private SchemaCrawlerShellState state;
+  @Autowired(required = false)
+  private Terminal terminal;
 
   @ShellMethod(value = "List available SchemaCrawler commands", prefix = "-")
   public void commands()
@@ -94,6 +131,103 @@ public class ExecuteCommands
     }
   }
 
+  @ShellMethod(value = "Dump table data to files, several tables at a time", prefix = "-")
+  public AttributedString dumpData(@ShellOption(help = "Directory for data files, one for each table") final String outputdirectory,
+                                   @ShellOption(defaultValue = ".*", help = "Regular expression to match fully qualified names of tables to dump") final String tables,
+                                   @ShellOption(defaultValue = "" + DEFAULT_MAX_CONNECTIONS, help = "Number of tables to dump at a time") @Min(1) final int threads,
+                                   @ShellOption(defaultValue = "0", help = "Largest number of rows fetched from the database at a time, or 0 to fit the memory budget") @Min(0) final int fetchsize,
+                                   @ShellOption(defaultValue = "64", help = "Estimated memory for output buffers and fetched rows, in megabytes") @Min(1) final int memory,
+                                   @ShellOption(defaultValue = "0", help = "Timeout for the command, in seconds, or 0 for no timeout") @Min(0) final int timeout)
+  {
+    if (state.getDataSource() == null)
+    {
+      throw new RuntimeException("Data can only be dumped with a database connection");
+    }
+
+    try
+    {
+      LOGGER.log(Level.INFO,
+                 new StringFormat("outputdirectory=%s, tables=%s, threads=%d, fetchsize=%d, memory=%d, timeout=%d",
+                                  outputdirectory,
+                                  tables,
+                                  threads,
+                                  fetchsize,
+                                  memory,
+                                  timeout));
+
+      final Path directory = Paths.get(outputdirectory);
+      Files.createDirectories(directory);
+
+      final InclusionRule tableInclusionRule = new RegularExpressionInclusionRule(tables);
+      final List<Table> dumpTables = new ArrayList<>();
+      for (final Table table: state.getCatalog().getTables())
+      {
+        if (tableInclusionRule.test(table.getFullName()))
+        {
+          dumpTables.add(table);
+        }
+      }
+
+      // Each worker needs its own connection, so there cannot be more
+      // workers than pooled connections
+      final int maxConnections = state.getAdditionalConfiguration()
+        .getIntegerValue(MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+      final QueryCanceller queryCanceller = new QueryCanceller(0);
+      final TableDataDump dataDump = new TableDataDump(queryCanceller
+        .track(state.getDataSource()),
+                                                       state
+                                                         .getSchemaRetrievalOptionsBuilder()
+                                                         .toOptions()
+                                                         .getIdentifiers(),
+                                                       Math.min(threads,
+                                                                maxConnections),
+                                                       fetchsize,
+                                                       memory * 1024L * 1024L);
+      final Map<Table, Long> dumpedRows = queryCanceller
+        .run(() -> dataDump.dump(dumpTables,
+                                 state.getTableRowCounts(),
+                                 directory),
+             timeout,
+             terminal);
+      if (dumpedRows == null)
+      {
+        return new AttributedString(String
+          .format("Cancelled, with partial output in %s", outputdirectory),
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.RED));
+      }
+
+      long rows = 0;
+      for (final long tableRows: dumpedRows.values())
+      {
+        rows += tableRows;
+      }
+      final int failed = dumpTables.size() - dumpedRows.size();
+      if (failed > 0)
+      {
+        return new AttributedString(String
+          .format("Dumped %d rows from %d tables to %s, and could not dump %d tables",
+                  rows,
+                  dumpedRows.size(),
+                  outputdirectory,
+                  failed),
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.RED));
+      }
+      return new AttributedString(String
+        .format("Dumped %d rows from %d tables to %s",
+                rows,
+                dumpedRows.size(),
+                outputdirectory),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot dump table data", e);
+    }
+  }
+
   @ShellMethod(value = "Execute a SchemaCrawler command", prefix = "-")
   public AttributedString execute(@NotNull @ShellOption(help = "SchemaCrawler command") final String command,
                                   @ShellOption(value = {
@@ -101,33 +235,44 @@ public class ExecuteCommands
                                                          "-outputfile" }, defaultValue = "", help = "Output file name") final String outputfile,
                                   @ShellOption(value = {
                                                          "-fmt",
-                                                         "-outputformat" }, defaultValue = "", help = "Format of the SchemaCrawler output") final String outputformat)
+                                                         "-outputformat" }, defaultValue = "", help = "Format of the SchemaCrawler output") final String outputformat,
+                                  @ShellOption(defaultValue = "none", help = "Split schema diagrams by schema, or by groups of related tables") final DiagramSplit split,
+                                  @ShellOption(defaultValue = "auto", help = "Compress output, or use the output file extension (.gz or .zip) to decide") final OutputCompression compression,
+                                  @ShellOption(defaultValue = "0", help = "Timeout for each query, in seconds, or 0 for no timeout") @Min(0) final int querytimeout,
+                                  @ShellOption(defaultValue = "0", help = "Timeout for the command, in seconds, or 0 for no timeout") @Min(0) final int timeout)
   {
 
-    Connection connection = null;
-    try
+    // Commands can be cancelled with Ctrl-C, or on a timeout
+    final QueryCanceller queryCanceller = new QueryCanceller(querytimeout);
+    // A connection is only borrowed if a chained command uses it, since
+    // most commands work from the loaded catalog alone
+    final LazyConnection lazyConnection;
+    if (state.getDataSource() != null)
     {
-      if (state.isConnected())
-      {
-        connection = state.getDataSource().getConnection();
-      }
+      lazyConnection = new LazyConnection(queryCanceller
+        .track(state.getDataSource()));
     }
-    catch (final SQLException e)
+    else
     {
-      LOGGER.log(Level.FINE, e.getMessage(), e);
-      connection = null;
+      lazyConnection = null;
     }
 
     try
     {
       LOGGER.log(Level.INFO,
-                 new StringFormat("command=%s, outputfile=%s, outputformat=%s",
+                 new StringFormat("command=%s, outputfile=%s, outputformat=%s, split=%s, compression=%s, querytimeout=%d, timeout=%d",
                                   command,
                                   outputfile,
-                                  outputformat));
-
-      final OutputOptionsBuilder outputOptionsBuilder = state
-        .getOutputOptionsBuilder();
+                                  outputformat,
+                                  split,
+                                  compression,
+                                  querytimeout,
+                                  timeout));
+
+      // Output options for this command are derived from the session's
+      // output options, which are not changed
+      final OutputOptionsBuilder outputOptionsBuilder = OutputOptionsBuilder
+        .builder().fromOptions(state.getOutputOptions());
       if (!isBlank(outputfile))
       {
         outputOptionsBuilder.withOutputFile(Paths.get(outputfile));
@@ -139,35 +284,212 @@ public class ExecuteCommands
       outputOptionsBuilder.withOutputFormatValue(outputformat);
 
       final SchemaCrawlerOptions schemaCrawlerOptions = state
-        .getSchemaCrawlerOptionsBuilder().toOptions();
+        .getSchemaCrawlerOptions();
       final SchemaRetrievalOptions schemaRetrievalOptions = state
         .getSchemaRetrievalOptionsBuilder().toOptions();
-      final OutputOptions outputOptions = outputOptionsBuilder.toOptions();
+      OutputOptions outputOptions = outputOptionsBuilder.toOptions();
       final Config additionalConfiguration = state.getAdditionalConfiguration();
 
       // Output file name has to be specified for diagrams
       // (Check after output options have been built)
-      if (GraphOutputFormat
-        .isSupportedFormat(outputOptions.getOutputFormatValue())
-          && isBlank(outputfile))
+      final boolean isDiagram = GraphOutputFormat
+        .isSupportedFormat(outputOptions.getOutputFormatValue());
+      if (isDiagram && isBlank(outputfile))
       {
         throw new RuntimeException("Output file has to be specified for schema diagrams");
       }
+      if (split != DiagramSplit.none && !isDiagram)
+      {
+        throw new RuntimeException("Only schema diagrams can be split");
+      }
+      final OutputCompression outputCompression = compression
+        .resolve(isBlank(outputfile)? null: Paths.get(outputfile));
+      if (outputCompression != OutputCompression.none && isBlank(outputfile))
+      {
+        return new AttributedString("Output file has to be specified for compressed output",
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.RED));
+      }
+      if (outputCompression != OutputCompression.none && isDiagram)
+      {
+        throw new RuntimeException("Schema diagrams cannot be compressed");
+      }
 
       final Catalog catalog = state.getCatalog();
 
-      // NOTE: The daisy chain command may change the provided output
-      // options for each chained command
-      final SchemaCrawlerCommand scCommand = new CommandDaisyChain(command);
-      scCommand.setSchemaCrawlerOptions(schemaCrawlerOptions);
-      scCommand.setOutputOptions(outputOptions);
-      scCommand.setAdditionalConfiguration(additionalConfiguration);
-      scCommand.setIdentifiers(schemaRetrievalOptions.getIdentifiers());
+      if (split != DiagramSplit.none)
+      {
+        final SplitDiagramRenderer diagramRenderer = new SplitDiagramRenderer(command,
+                                                                              schemaCrawlerOptions,
+                                                                              outputOptions,
+                                                                              additionalConfiguration,
+                                                                              schemaRetrievalOptions
+                                                                                .getIdentifiers());
+        final Path indexFile = diagramRenderer
+          .render(catalog, split, Paths.get(outputfile));
+        return new AttributedString(String
+          .format("Diagrams index sent to %s", indexFile),
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.CYAN));
+      }
+
+      // Diagrams are not rendered again if the catalog and options are
+      // unchanged since the last run
+      OutputCache outputCache = null;
+      String outputHash = null;
+      if (isDiagram
+          && additionalConfiguration.getBooleanValue(OUTPUT_CACHE, true))
+      {
+        outputCache = new OutputCache(Paths.get(outputfile));
+        outputHash = diagramHash(outputCache,
+                                 command,
+                                 outputOptions,
+                                 schemaCrawlerOptions,
+                                 catalog);
+        if (outputCache.isCurrent(outputHash))
+        {
+          return new AttributedString(String
+            .format("Output is unchanged in %s", outputfile),
+                                      AttributedStyle.DEFAULT
+                                        .foreground(AttributedStyle.CYAN));
+        }
+        outputCache.invalidate();
+      }
+
+      // Text output for schema commands is cached, keyed by the catalog
+      // version and everything else that determines the output
+      final ResultCache resultCache = state.getResultCache();
+      final long resultCacheSize = additionalConfiguration
+        .getIntegerValue(RESULT_CACHE_SIZE, DEFAULT_RESULT_CACHE_SIZE)
+                                   * 1024L * 1024L;
+      String resultKey = null;
+      String cachedResult = null;
+      if (!isDiagram && resultCacheSize > 0 && isCacheable(command))
+      {
+        resultKey = ResultCache.key(state.getCatalogVersion(),
+                                    command,
+                                    outputOptions.getOutputFormatValue(),
+                                    schemaCrawlerOptions.getTitle(),
+                                    ObjectToString
+                                      .toString(schemaCrawlerOptions),
+                                    new TreeMap<>(additionalConfiguration));
+        cachedResult = resultCache.get(resultKey);
+      }
+
+      // Compressed output is written to a pipe, and compressed on
+      // another thread
+      CompressedOutput compressedOutput = null;
+      Writer outputWriter = null;
+      boolean closeOutputWriter = false;
+      if (outputCompression != OutputCompression.none)
+      {
+        compressedOutput = new CompressedOutput(Paths.get(outputfile),
+                                                outputCompression,
+                                                compressedEntryName(outputfile,
+                                                                    outputOptions
+                                                                      .getOutputFormatValue()));
+        outputWriter = compressedOutput.getWriter();
+      }
+      CapturingWriter capturingWriter = null;
+      if (resultKey != null)
+      {
+        if (outputWriter == null && isBlank(outputfile))
+        {
+          outputWriter = new OutputStreamWriter(System.out,
+                                                outputOptions
+                                                  .getOutputCharset());
+        }
+        else if (outputWriter == null)
+        {
+          outputWriter = Files.newBufferedWriter(Paths.get(outputfile),
+                                                 outputOptions
+                                                   .getOutputCharset());
+          closeOutputWriter = true;
+        }
+        capturingWriter = new CapturingWriter(outputWriter,
+                                              resultCacheSize / 2,
+                                              closeOutputWriter);
+        outputWriter = capturingWriter;
+      }
+      if (outputWriter != null)
+      {
+        outputOptions = OutputOptionsBuilder.builder()
+          .fromOptions(outputOptions).withOutputWriter(outputWriter)
+          .toOptions();
+      }
+
+      boolean completed = true;
+      try
+      {
+        if (cachedResult != null)
+        {
+          LOGGER.log(Level.INFO, "Using cached output");
+          outputWriter.write(cachedResult);
+        }
+        else
+        {
+          // NOTE: The daisy chain command may change the provided output
+          // options for each chained command
+          final SchemaCrawlerCommand scCommand = newCommand(command,
+                                                            schemaCrawlerOptions,
+                                                            outputOptions,
+                                                            schemaRetrievalOptions,
+                                                            catalog);
+          if (lazyConnection != null)
+          {
+            scCommand.setConnection(lazyConnection.getConnection());
+          }
+
+          // Output is closed on the same thread that writes it, since
+          // compressed output is piped from that thread
+          final CapturingWriter capturedOutput = capturingWriter;
+          final CompressedOutput compressingOutput = compressedOutput;
+          completed = queryCanceller.run(() -> {
+            scCommand.execute();
+            if (capturedOutput != null)
+            {
+              capturedOutput.close();
+            }
+            if (compressingOutput != null)
+            {
+              compressingOutput.close();
+            }
+            return Boolean.TRUE;
+          }, timeout, terminal) != null;
+        }
+      }
+      finally
+      {
+        if (capturingWriter != null)
+        {
+          capturingWriter.close();
+        }
+        if (compressedOutput != null)
+        {
+          compressedOutput.close();
+        }
+      }
+
+      if (!completed)
+      {
+        return new AttributedString(isBlank(outputfile)? "Cancelled": String
+          .format("Cancelled, with partial output in %s", outputfile),
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.RED));
+      }
 
-      scCommand.setConnection(connection);
-      scCommand.setCatalog(catalog);
+      if (cachedResult == null && capturingWriter != null
+          && capturingWriter.getCaptured() != null)
+      {
+        resultCache.put(resultKey,
+                        capturingWriter.getCaptured(),
+                        resultCacheSize);
+      }
 
-      scCommand.execute();
+      if (outputCache != null)
+      {
+        outputCache.update(outputHash);
+      }
 
       final String message;
       if (isBlank(outputfile))
@@ -192,11 +514,14 @@ public class ExecuteCommands
     }
     finally
     {
-      if (connection != null)
+      if (lazyConnection != null)
       {
+        LOGGER.log(Level.FINE,
+                   new StringFormat("Connection used=%b",
+                                    lazyConnection.isUsed()));
         try
         {
-          connection.close();
+          lazyConnection.close();
         }
         catch (final SQLException e)
         {
@@ -206,6 +531,91 @@ public class ExecuteCommands
     }
   }
 
+  /**
+   * Only commands whose output depends on nothing but the catalog and
+   * options are cached, and not commands that query data.
+   */
+  private boolean isCacheable(final String command)
+  {
+    for (final String chainedCommand: command.split(","))
+    {
+      if (!CACHEABLE_COMMANDS.contains(chainedCommand.trim()))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Names the single entry in a ZIP archive after the archive, adding
+   * the output format as an extension if the name has none.
+   */
+  private String compressedEntryName(final String outputfile,
+                                     final String outputFormatValue)
+  {
+    String entryName = Paths.get(outputfile).getFileName().toString();
+    if (entryName.toLowerCase().endsWith(".zip")
+        || entryName.toLowerCase().endsWith(".gz"))
+    {
+      entryName = entryName.substring(0, entryName.lastIndexOf('.'));
+    }
+    if (!entryName.contains("."))
+    {
+      entryName = entryName + "." + outputFormatValue;
+    }
+    return entryName;
+  }
+
+  /**
+   * Hashes what a diagram is rendered from, without rendering it. The
+   * catalog fingerprint covers the schema objects shown in the diagram,
+   * and does not change when an unchanged catalog is reloaded. Row
+   * counts are not part of the fingerprint, so they are hashed
+   * separately.
+   */
+  private String diagramHash(final OutputCache outputCache,
+                             final String command,
+                             final OutputOptions outputOptions,
+                             final SchemaCrawlerOptions schemaCrawlerOptions,
+                             final Catalog catalog)
+  {
+    final StringBuilder buffer = new StringBuilder();
+    buffer.append(CatalogFingerprint.fingerprint(catalog).getHash());
+    for (final Table table: catalog.getTables())
+    {
+      final Object rowCount = table.getAttribute(ROW_COUNT);
+      if (rowCount != null)
+      {
+        buffer.append('\u0000').append(table.getFullName()).append('\u0000')
+          .append(rowCount);
+      }
+    }
+
+    final Map<String, String> options = new HashMap<>(state
+      .getAdditionalConfiguration());
+    options.put("command", command);
+    options.put("outputformat", outputOptions.getOutputFormatValue());
+    options.put("options", ObjectToString.toString(schemaCrawlerOptions));
+    return outputCache.hash(buffer.toString(), options);
+  }
+
+  private SchemaCrawlerCommand newCommand(final String command,
+                                          final SchemaCrawlerOptions schemaCrawlerOptions,
+                                          final OutputOptions outputOptions,
+                                          final SchemaRetrievalOptions schemaRetrievalOptions,
+                                          final Catalog catalog)
+    throws SchemaCrawlerException
+  {
+    final SchemaCrawlerCommand scCommand = new CommandDaisyChain(command);
+    scCommand.setSchemaCrawlerOptions(schemaCrawlerOptions);
+    scCommand.setOutputOptions(outputOptions);
+    scCommand.setAdditionalConfiguration(state.getAdditionalConfiguration());
+    scCommand.setIdentifiers(schemaRetrievalOptions.getIdentifiers());
+    scCommand.setCatalog(catalog);
+    return scCommand;
+  }
+
   @ShellMethodAvailability
   public Availability isLoaded()
   {
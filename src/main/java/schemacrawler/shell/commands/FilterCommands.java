@@ -29,8 +29,15 @@ http://www.gnu.org/licenses/
 package schemacrawler.shell.commands;
 
 
+import static schemacrawler.shell.catalog.TableRowCounter.APPROXIMATE_ROW_COUNTS;
+import static schemacrawler.shell.catalog.TableRowCounter.ROW_COUNT_QUERY_TIMEOUT;
+import static schemacrawler.shell.catalog.TableRowCounter.ROW_COUNT_THREADS;
+import static schemacrawler.shell.commands.ConnectCommands.DEFAULT_MAX_CONNECTIONS;
+
 import java.util.logging.Level;
 
+import javax.validation.constraints.Min;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.shell.Availability;
 import org.springframework.shell.standard.ShellCommandGroup;
@@ -41,7 +48,6 @@ import org.springframework.shell.standard.ShellOption;
 
 import schemacrawler.schemacrawler.RegularExpressionExclusionRule;
 import schemacrawler.schemacrawler.RegularExpressionInclusionRule;
-import schemacrawler.schemacrawler.SchemaCrawlerOptionsBuilder;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
 import sf.util.SchemaCrawlerLogger;
 import sf.util.StringFormat;
@@ -60,22 +66,34 @@ public class FilterCommands
   @ShellMethod(value = "Filter database object metadata", prefix = "-")
   public void filter(@ShellOption(defaultValue = "false", help = "Include only tables that have rows of data") final boolean noemptytables,
                      @ShellOption(defaultValue = "0", help = "Number of generations of ancestors for the tables selected by grep") final int parents,
-                     @ShellOption(defaultValue = "0", help = "Number of generations of descendents for the tables selected by grep") final int children)
+                     @ShellOption(defaultValue = "0", help = "Number of generations of descendents for the tables selected by grep") final int children,
+                     @ShellOption(defaultValue = "false", help = "Use approximate row counts from database statistics, where available") final boolean approximatecounts,
+                     @ShellOption(defaultValue = "" + DEFAULT_MAX_CONNECTIONS, help = "Number of tables to count rows for concurrently") @Min(1) final int countthreads,
+                     @ShellOption(defaultValue = "0", help = "Timeout in seconds for counting rows in a table, or 0 for no timeout") @Min(0) final int counttimeout)
   {
     try
     {
-      LOGGER.log(Level.INFO,
-                 new StringFormat("noemptytables=%b, parents=%d, children=%d",
-                                  noemptytables,
-                                  parents,
-                                  children));
-
-      final SchemaCrawlerOptionsBuilder schemaCrawlerOptionsBuilder = state
-        .getSchemaCrawlerOptionsBuilder();
-
-      schemaCrawlerOptionsBuilder.noEmptyTables(noemptytables);
-      schemaCrawlerOptionsBuilder.parentTableFilterDepth(parents);
-      schemaCrawlerOptionsBuilder.childTableFilterDepth(children);
+      LOGGER
+        .log(Level.INFO,
+             new StringFormat("noemptytables=%b, parents=%d, children=%d, approximatecounts=%b, countthreads=%d, counttimeout=%d",
+                              noemptytables,
+                              parents,
+                              children,
+                              approximatecounts,
+                              countthreads,
+                              counttimeout));
+
+      state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> {
+        schemaCrawlerOptionsBuilder.noEmptyTables(noemptytables);
+        schemaCrawlerOptionsBuilder.parentTableFilterDepth(parents);
+        schemaCrawlerOptionsBuilder.childTableFilterDepth(children);
+      });
+
+      state.updateAdditionalConfiguration(config -> {
+        config.put(APPROXIMATE_ROW_COUNTS, Boolean.toString(approximatecounts));
+        config.put(ROW_COUNT_THREADS, Integer.toString(countthreads));
+        config.put(ROW_COUNT_QUERY_TIMEOUT, Integer.toString(counttimeout));
+      });
     }
     catch (final Exception e)
     {
@@ -101,18 +119,17 @@ public class FilterCommands
                               invertMatch,
                               onlyMatching));
 
-      final SchemaCrawlerOptionsBuilder schemaCrawlerOptionsBuilder = state
-        .getSchemaCrawlerOptionsBuilder();
-
-      schemaCrawlerOptionsBuilder
-        .includeGreppedColumns(new RegularExpressionInclusionRule(grepcolumns));
-      schemaCrawlerOptionsBuilder
-        .includeGreppedRoutineColumns(new RegularExpressionInclusionRule(grepinout));
-      schemaCrawlerOptionsBuilder
-        .includeGreppedDefinitions(new RegularExpressionInclusionRule(grepdef));
-
-      schemaCrawlerOptionsBuilder.invertGrepMatch(invertMatch);
-      schemaCrawlerOptionsBuilder.grepOnlyMatching(onlyMatching);
+      state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> {
+        schemaCrawlerOptionsBuilder
+          .includeGreppedColumns(new RegularExpressionInclusionRule(grepcolumns));
+        schemaCrawlerOptionsBuilder
+          .includeGreppedRoutineColumns(new RegularExpressionInclusionRule(grepinout));
+        schemaCrawlerOptionsBuilder
+          .includeGreppedDefinitions(new RegularExpressionInclusionRule(grepdef));
+
+        schemaCrawlerOptionsBuilder.invertGrepMatch(invertMatch);
+        schemaCrawlerOptionsBuilder.grepOnlyMatching(onlyMatching);
+      });
     }
     catch (final Exception e)
     {
@@ -123,7 +140,7 @@ public class FilterCommands
   @ShellMethodAvailability
   public Availability isConnected()
   {
-    final boolean isConnected = state.isConnected();
+    final boolean isConnected = state.isOffline() || state.isConnected();
     LOGGER.log(Level.INFO, new StringFormat("isConnected=%b", isConnected));
 
     return isConnected? Availability.available(): Availability
@@ -156,25 +173,24 @@ public class FilterCommands
                               synonyms,
                               sequences));
 
-      final SchemaCrawlerOptionsBuilder schemaCrawlerOptionsBuilder = state
-        .getSchemaCrawlerOptionsBuilder();
-
-      schemaCrawlerOptionsBuilder
-        .includeSchemas(new RegularExpressionInclusionRule(schemas));
+      state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> {
+        schemaCrawlerOptionsBuilder
+          .includeSchemas(new RegularExpressionInclusionRule(schemas));
 
-      schemaCrawlerOptionsBuilder.tableTypes(tabletypes)
-        .includeTables(new RegularExpressionInclusionRule(tables))
-        .includeColumns(new RegularExpressionExclusionRule(excludecolumns));
+        schemaCrawlerOptionsBuilder.tableTypes(tabletypes)
+          .includeTables(new RegularExpressionInclusionRule(tables))
+          .includeColumns(new RegularExpressionExclusionRule(excludecolumns));
 
-      schemaCrawlerOptionsBuilder.routineTypes(routinetypes)
-        .includeRoutines(new RegularExpressionInclusionRule(routines))
-        .includeRoutineColumns(new RegularExpressionExclusionRule(excludeinout));
+        schemaCrawlerOptionsBuilder.routineTypes(routinetypes)
+          .includeRoutines(new RegularExpressionInclusionRule(routines))
+          .includeRoutineColumns(new RegularExpressionExclusionRule(excludeinout));
 
-      schemaCrawlerOptionsBuilder
-        .includeSynonyms(new RegularExpressionInclusionRule(synonyms));
+        schemaCrawlerOptionsBuilder
+          .includeSynonyms(new RegularExpressionInclusionRule(synonyms));
 
-      schemaCrawlerOptionsBuilder
-        .includeSequences(new RegularExpressionInclusionRule(sequences));
+        schemaCrawlerOptionsBuilder
+          .includeSequences(new RegularExpressionInclusionRule(sequences));
+      });
     }
     catch (final Exception e)
     {
@@ -29,13 +29,39 @@ http://www.gnu.org/licenses/
 package schemacrawler.shell.commands;
 
 
-import static java.util.Objects.requireNonNull;
+import static schemacrawler.filter.ReducerFactory.getTableReducer;
+import static schemacrawler.shell.catalog.RetrievalCosts.RETRIEVAL_COSTS_FILE;
+import static schemacrawler.shell.catalog.RetrievalCosts.RETRIEVAL_STEP_BUDGET;
+import static schemacrawler.shell.catalog.TableRowCounter.APPROXIMATE_ROW_COUNTS;
+import static schemacrawler.shell.catalog.TableRowCounter.ROW_COUNT_QUERY_TIMEOUT;
+import static schemacrawler.shell.catalog.TableRowCounter.ROW_COUNT_THREADS;
+import static schemacrawler.shell.catalog.TableRowCounter.hasRows;
+import static schemacrawler.shell.catalog.TableRowCounter.supportsApproximateRowCounts;
+import static schemacrawler.shell.commands.ConnectCommands.DEFAULT_MAX_CONNECTIONS;
+import static sf.util.Utility.isBlank;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
+import java.util.regex.Pattern;
 
+import javax.sql.DataSource;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
+import org.jline.terminal.Terminal;
 import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStyle;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,16 +72,40 @@ import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellMethodAvailability;
 import org.springframework.shell.standard.ShellOption;
 
+import schemacrawler.crawl.MetadataRetrievalStrategy;
 import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Reducible;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Table;
 import schemacrawler.schemacrawler.Config;
+import schemacrawler.schemacrawler.ExcludeAll;
+import schemacrawler.schemacrawler.InclusionRule;
 import schemacrawler.schemacrawler.InfoLevel;
+import schemacrawler.schemacrawler.SchemaCrawlerException;
 import schemacrawler.schemacrawler.SchemaCrawlerOptions;
+import schemacrawler.schemacrawler.SchemaCrawlerOptionsBuilder;
+import schemacrawler.schemacrawler.RegularExpressionInclusionRule;
 import schemacrawler.schemacrawler.SchemaInfoLevel;
 import schemacrawler.schemacrawler.SchemaInfoLevelBuilder;
 import schemacrawler.schemacrawler.SchemaRetrievalOptions;
+import schemacrawler.schemacrawler.SchemaRetrievalOptionsBuilder;
+import schemacrawler.shell.catalog.AnyInclusionRule;
+import schemacrawler.shell.catalog.CatalogCrawler;
+import schemacrawler.shell.catalog.CatalogPrefetch;
+import schemacrawler.shell.catalog.CatalogSubset;
+import schemacrawler.shell.catalog.MetadataType;
+import schemacrawler.shell.catalog.OfflineCatalog;
+import schemacrawler.shell.catalog.RetrievalCosts;
+import schemacrawler.shell.catalog.RetrievalFlag;
+import schemacrawler.shell.catalog.SpilledCatalog;
+import schemacrawler.shell.catalog.TableRowCounter;
+import schemacrawler.shell.state.MetadataRecorder;
+import schemacrawler.shell.state.MetadataRecording;
+import schemacrawler.shell.state.QueryCanceller;
+import schemacrawler.shell.state.RetrievalCostMeter;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
-import schemacrawler.tools.catalogloader.CatalogLoader;
-import schemacrawler.tools.catalogloader.CatalogLoaderRegistry;
+import schemacrawler.shell.state.ShellDataSource;
+import schemacrawler.tools.options.OutputOptions;
 import schemacrawler.tools.options.OutputOptionsBuilder;
 import sf.util.SchemaCrawlerLogger;
 import sf.util.StringFormat;
@@ -68,18 +118,136 @@ public class LoadCommands
   private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
     .getLogger(LoadCommands.class.getName());
 
+  /**
+   * Number of times the catalog is loaded with each retrieval strategy,
+   * when benchmarking strategies.
+   */
+  public static final String BENCHMARK_RUNS = "schemacrawler.shell.retrieval.benchmark_runs";
+  public static final int DEFAULT_BENCHMARK_RUNS = 3;
+
   @Autowired
   private final SchemaCrawlerShellState state;
+  @Autowired(required = false)
+  private Terminal terminal;
 
   public LoadCommands(final SchemaCrawlerShellState state)
   {
     this.state = state;
   }
 
+  @ShellMethod(value = "Add matching tables to the loaded catalog", prefix = "-")
+  public AttributedString addToCatalog(@ShellOption(help = "Regular expression to match fully qualified names of tables to add") final String tables,
+                                       @ShellOption(defaultValue = "0", help = "Timeout for each query, in seconds, or 0 for no timeout") @Min(0) final int querytimeout,
+                                       @ShellOption(defaultValue = "0", help = "Timeout for adding tables, in seconds, or 0 for no timeout") @Min(0) final int timeout)
+  {
+    if (state.isOffline())
+    {
+      throw new RuntimeException("Tables cannot be added to offline catalogs");
+    }
+    if (!state.isLoaded())
+    {
+      throw new RuntimeException("There is no catalog loaded to add tables to");
+    }
+
+    try
+    {
+      LOGGER.log(Level.INFO,
+                 new StringFormat("tables=%s, querytimeout=%d, timeout=%d",
+                                  tables,
+                                  querytimeout,
+                                  timeout));
+
+      // The table limit is widened, rather than replaced, and the catalog
+      // is built again, so that foreign keys between loaded and added
+      // tables are resolved. Metadata for tables that were loaded is
+      // served from the session's metadata cache, so only metadata for
+      // the added tables is read from the database.
+      final InclusionRule tableInclusionRule = new AnyInclusionRule(state
+        .getSchemaCrawlerOptions().getTableInclusionRule(),
+                                                                    new RegularExpressionInclusionRule(tables));
+      final SchemaRetrievalOptions schemaRetrievalOptions = state
+        .getSchemaRetrievalOptionsBuilder().toOptions();
+      final SchemaCrawlerOptions crawlOptions = SchemaCrawlerOptionsBuilder
+        .builder().fromOptions(state.getSchemaCrawlerOptions())
+        .includeTables(tableInclusionRule).noEmptyTables(false).toOptions();
+
+      final Catalog loadedCatalog = state.getCatalog();
+      final QueryCanceller queryCanceller = new QueryCanceller(querytimeout);
+      final DataSource dataSource = queryCanceller
+        .track(state.getDataSource());
+      Catalog catalog = crawlCatalog(dataSource,
+                                     schemaRetrievalOptions,
+                                     crawlOptions,
+                                     loadedCatalog.getSchemas(),
+                                     queryCanceller,
+                                     timeout,
+                                     heapBudget(loadedCatalog));
+      if (catalog == null || queryCanceller.isCancelled())
+      {
+        LOGGER.log(Level.INFO, "Cancelled adding tables");
+        return new AttributedString("Cancelled adding tables",
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.RED));
+      }
+
+      state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> schemaCrawlerOptionsBuilder
+        .includeTables(tableInclusionRule));
+      final SchemaCrawlerOptions schemaCrawlerOptions = state
+        .getSchemaCrawlerOptions();
+      if (schemaCrawlerOptions.isNoEmptyTables())
+      {
+        catalog = filterEmptyTables(catalog,
+                                    dataSource,
+                                    true,
+                                    schemaRetrievalOptions);
+      }
+      RetrievalCosts.defer(catalog, RetrievalCosts.deferred(loadedCatalog));
+
+      // Tables can also drop out of the catalog, if they have become
+      // empty
+      final Set<String> loadedTables = tableNames(loadedCatalog);
+      final Set<String> reloadedTables = tableNames(catalog);
+      int addedTables = 0;
+      for (final String table: reloadedTables)
+      {
+        if (!loadedTables.contains(table))
+        {
+          addedTables++;
+        }
+      }
+      loadedTables.removeAll(reloadedTables);
+      final int removedTables = loadedTables.size();
+      state.setCatalog(catalog);
+
+      final String message;
+      if (removedTables > 0)
+      {
+        message = String
+          .format("Added %d tables to the catalog, and removed %d tables that are now empty",
+                  addedTables,
+                  removedTables);
+      }
+      else
+      {
+        message = String.format("Added %d tables to the catalog",
+                                addedTables);
+      }
+      LOGGER.log(Level.INFO, message);
+
+      return new AttributedString(message,
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot add tables to catalog", e);
+    }
+  }
+
   @ShellMethodAvailability
   public Availability isConnected()
   {
-    final boolean isConnected = state.isConnected();
+    final boolean isConnected = state.isOffline() || state.isConnected();
     return isConnected? Availability.available(): Availability
       .unavailable("there is no database connection");
   }
@@ -91,41 +259,265 @@ public class LoadCommands
   }
 
   @ShellMethod(value = "Load a catalog", prefix = "-")
-  public AttributedString loadCatalog(@ShellOption(value = "-infolevel", help = "Determine the amount of database metadata retrieved") @NotNull final InfoLevel infoLevel)
+  public AttributedString loadCatalog(@ShellOption(value = "-infolevel", help = "Determine the amount of database metadata retrieved") @NotNull final InfoLevel infoLevel,
+                                      @ShellOption(defaultValue = "0", help = "Timeout for each query, in seconds, or 0 for no timeout") @Min(0) final int querytimeout,
+                                      @ShellOption(defaultValue = "0", help = "Timeout for loading the catalog, in seconds, or 0 for no timeout") @Min(0) final int timeout,
+                                      @ShellOption(defaultValue = "0", help = "Heap usage, in megabytes, above which loaded schemas are written to disk, or 0 for no budget") @Min(0) final int heapbudget,
+                                      @ShellOption(value = "-benchmark-strategies", defaultValue = "false", help = "Time each metadata retrieval strategy before loading, and recommend the fastest") final boolean benchmarkStrategies,
+                                      @ShellOption(defaultValue = "false", help = "Read metadata from the database again, rather than from metadata cached earlier in the session") final boolean refresh,
+                                      @ShellOption(defaultValue = "", help = "File to record database metadata calls to, for replay with a jdbc:schemacrawler:replay: connection URL") final String recordfile,
+                                      @ShellOption(defaultValue = "", help = "Comma-separated kinds of metadata to retrieve, in addition to the info level") final String retrieve,
+                                      @ShellOption(defaultValue = "", help = "Comma-separated kinds of metadata to skip, such as tableprivileges,triggers") final String skip)
   {
-    try (final Connection connection = state.getDataSource().getConnection();)
+    try
     {
-      LOGGER.log(Level.INFO, new StringFormat("infoLevel=%s", infoLevel));
+      LOGGER.log(Level.INFO,
+                 new StringFormat("infoLevel=%s, querytimeout=%d, timeout=%d, heapbudget=%d, benchmarkStrategies=%b, refresh=%b, recordfile=%s, retrieve=%s, skip=%s",
+                                  infoLevel,
+                                  querytimeout,
+                                  timeout,
+                                  heapbudget,
+                                  benchmarkStrategies,
+                                  refresh,
+                                  recordfile,
+                                  retrieve,
+                                  skip));
+
+      loadOutputOptions();
 
-      loadOutputOptionsBuilder();
+      // Offline catalogs are loaded again from the saved catalog file,
+      // with the current limit and grep options, but no more metadata
+      // than was saved can be retrieved
+      if (state.isOffline())
+      {
+        return loadOfflineCatalog(infoLevel,
+                                  benchmarkStrategies,
+                                  recordfile,
+                                  retrieve,
+                                  skip);
+      }
+
+      // Metadata can be retrieved or skipped individually, starting from
+      // the info level, so that only the queries needed are run
+      final Set<RetrievalFlag> retrieveFlags = RetrievalFlag.parse(retrieve);
+      final Set<RetrievalFlag> skipFlags = RetrievalFlag.parse(skip);
+      final Set<RetrievalFlag> conflictingFlags = EnumSet
+        .noneOf(RetrievalFlag.class);
+      conflictingFlags.addAll(retrieveFlags);
+      conflictingFlags.retainAll(skipFlags);
+      if (!conflictingFlags.isEmpty())
+      {
+        return new AttributedString(String
+          .format("Cannot both retrieve and skip %s", conflictingFlags),
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.RED));
+      }
 
-      final Config additionalConfiguration = state.getAdditionalConfiguration();
       final SchemaRetrievalOptions schemaRetrievalOptions = state
         .getSchemaRetrievalOptionsBuilder().toOptions();
-      final SchemaInfoLevel schemaInfoLevel = SchemaInfoLevelBuilder.builder()
-        .withInfoLevel(infoLevel).toOptions();
+      final SchemaInfoLevelBuilder schemaInfoLevelBuilder = SchemaInfoLevelBuilder
+        .builder().withInfoLevel(infoLevel).withTag(infoLevel.name());
+      for (final RetrievalFlag retrievalFlag: retrieveFlags)
+      {
+        retrievalFlag.setRetrieve(schemaInfoLevelBuilder, true);
+      }
+      for (final RetrievalFlag retrievalFlag: skipFlags)
+      {
+        retrievalFlag.setRetrieve(schemaInfoLevelBuilder, false);
+      }
+
+      // Kinds of metadata that took longer than the step budget on the
+      // last load from the same database are deferred, unless they are
+      // asked for
+      final long stepBudget = state.getAdditionalConfiguration()
+        .getIntegerValue(RETRIEVAL_STEP_BUDGET, 0);
+      final String connectionUrl = stepBudget > 0 && !state.isOffline()
+                                   ? connectionUrl(): null;
+      final Set<RetrievalFlag> deferred = EnumSet
+        .noneOf(RetrievalFlag.class);
+      if (connectionUrl != null)
+      {
+        loadRetrievalCosts();
+        final SchemaInfoLevel requestedSchemaInfoLevel = schemaInfoLevelBuilder
+          .toOptions();
+        for (final RetrievalFlag retrievalFlag: state.getRetrievalCosts()
+          .overBudget(connectionUrl, stepBudget * 1_000_000L))
+        {
+          if (retrievalFlag.isRetrieved(requestedSchemaInfoLevel)
+              && !retrieveFlags.contains(retrievalFlag))
+          {
+            retrievalFlag.setRetrieve(schemaInfoLevelBuilder, false);
+            deferred.add(retrievalFlag);
+          }
+        }
+      }
+      final SchemaInfoLevel schemaInfoLevel = schemaInfoLevelBuilder
+        .toOptions();
+      state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> schemaCrawlerOptionsBuilder
+        .withSchemaInfoLevel(schemaInfoLevel));
       final SchemaCrawlerOptions schemaCrawlerOptions = state
-        .getSchemaCrawlerOptionsBuilder().withSchemaInfoLevel(schemaInfoLevel)
+        .getSchemaCrawlerOptions();
+      // Rows are counted in parallel after the catalog is loaded, rather
+      // than one table at a time during the crawl
+      final SchemaCrawlerOptions crawlOptions = SchemaCrawlerOptionsBuilder
+        .builder().fromOptions(schemaCrawlerOptions).noEmptyTables(false)
         .toOptions();
 
-      final CatalogLoaderRegistry catalogLoaderRegistry = new CatalogLoaderRegistry();
-      final CatalogLoader catalogLoader = catalogLoaderRegistry
-        .lookupCatalogLoader(schemaRetrievalOptions.getDatabaseServerType()
-          .getDatabaseSystemIdentifier());
-      LOGGER
-        .log(Level.CONFIG,
-             new StringFormat("Catalog loader: %s", this.getClass().getName()));
+      // Metadata cached earlier in the session is used, unless it is
+      // refreshed, or every call has to reach the database to be
+      // recorded
+      if ((refresh || !recordfile.isEmpty())
+          && state.getDataSource() instanceof ShellDataSource)
+      {
+        ((ShellDataSource) state.getDataSource()).getMetadataCache().clear();
+      }
+
+      final String benchmarkReport;
+      if (benchmarkStrategies)
+      {
+        benchmarkReport = benchmarkStrategies(crawlOptions);
+      }
+      else
+      {
+        benchmarkReport = null;
+      }
 
-      catalogLoader.setAdditionalConfiguration(additionalConfiguration);
-      catalogLoader.setConnection(connection);
-      catalogLoader.setSchemaRetrievalOptions(schemaRetrievalOptions);
-      catalogLoader.setSchemaCrawlerOptions(schemaCrawlerOptions);
+      // Only calls that reach the database are timed, not calls served
+      // from the metadata cache
+      final RetrievalCostMeter retrievalCostMeter;
+      DataSource recordedDataSource = state.getDataSource();
+      if (connectionUrl == null)
+      {
+        retrievalCostMeter = null;
+      }
+      else
+      {
+        retrievalCostMeter = new RetrievalCostMeter(schemaRetrievalOptions
+          .getInformationSchemaViews());
+        if (recordedDataSource instanceof ShellDataSource)
+        {
+          recordedDataSource = ((ShellDataSource) recordedDataSource)
+            .decorate(retrievalCostMeter::track);
+        }
+        else
+        {
+          recordedDataSource = retrievalCostMeter.track(recordedDataSource);
+        }
+      }
 
-      final Catalog catalog = catalogLoader.loadCatalog();
-      requireNonNull(catalog, "Catalog could not be retrieved");
+      // Every call is made to the database when recording, rather than
+      // served from a prefetch
+      final MetadataRecorder metadataRecorder;
+      if (recordfile.isEmpty())
+      {
+        metadataRecorder = null;
+      }
+      else
+      {
+        metadataRecorder = new MetadataRecorder();
+        recordedDataSource = metadataRecorder.track(recordedDataSource);
+        // Calls made for the retrieval options on connecting are recorded
+        // too, so that a replay connection gets the same options
+        try (final Connection connection = recordedDataSource
+          .getConnection();)
+        {
+          SchemaRetrievalOptionsBuilder.builder().fromConnnection(connection);
+        }
+      }
+
+      // Use the catalog, or at least the schemas, prefetched after
+      // connecting, and stop any prefetch that is still running
+      final CatalogPrefetch catalogPrefetch = state.getCatalogPrefetch();
+      state.setCatalogPrefetch(null);
+      Catalog catalog = null;
+      Collection<Schema> prefetchedSchemas = null;
+      if (catalogPrefetch != null && metadataRecorder == null)
+      {
+        catalog = catalogPrefetch.getCatalog(crawlOptions).orElse(null);
+        prefetchedSchemas = catalogPrefetch.getSchemas(crawlOptions)
+          .orElse(null);
+        catalogPrefetch.cancel();
+      }
+
+      // Loads can be cancelled with Ctrl-C, or on a timeout, and if
+      // schemas are loaded one at a time for a heap budget, schemas that
+      // were loaded before the cancellation are kept
+      final QueryCanceller queryCanceller = new QueryCanceller(querytimeout);
+      final DataSource dataSource = queryCanceller.track(recordedDataSource);
+      if (catalog != null)
+      {
+        LOGGER.log(Level.INFO, "Using prefetched catalog");
+      }
+      else
+      {
+        catalog = crawlCatalog(dataSource,
+                               schemaRetrievalOptions,
+                               crawlOptions,
+                               prefetchedSchemas,
+                               queryCanceller,
+                               timeout,
+                               heapbudget * 1024L * 1024L);
+      }
+
+      if (catalog == null)
+      {
+        LOGGER.log(Level.INFO, "Cancelled loading catalog");
+        return new AttributedString("Cancelled loading catalog",
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.RED));
+      }
+
+      if (schemaCrawlerOptions.isNoEmptyTables()
+          && !queryCanceller.isCancelled())
+      {
+        // Rows are counted again when recording, so that the counts are
+        // in the recording
+        catalog = filterEmptyTables(catalog,
+                                    dataSource,
+                                    metadataRecorder == null,
+                                    schemaRetrievalOptions);
+      }
 
       state.setCatalog(catalog);
+      if (metadataRecorder != null)
+      {
+        final MetadataRecording recording = metadataRecorder.getRecording();
+        recording.save(Paths.get(recordfile));
+        LOGGER.log(Level.INFO,
+                   new StringFormat("Recorded %d metadata calls to <%s>",
+                                    recording.size(),
+                                    recordfile));
+      }
+      if (retrievalCostMeter != null)
+      {
+        saveRetrievalCosts(connectionUrl,
+                           retrievalCostMeter.getCosts(),
+                           stepBudget);
+        RetrievalCosts.defer(catalog, deferred);
+      }
+      if (queryCanceller.isCancelled())
+      {
+        LOGGER.log(Level.INFO, "Loaded partial catalog");
+        return new AttributedString("Loaded partial catalog",
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.RED));
+      }
       LOGGER.log(Level.INFO, "Loaded catalog");
+      if (!deferred.isEmpty() || benchmarkReport != null)
+      {
+        final StringBuilder message = new StringBuilder("Loaded catalog");
+        if (!deferred.isEmpty())
+        {
+          message.append(String.format(", deferring %s", deferred));
+        }
+        if (benchmarkReport != null)
+        {
+          message.append(System.lineSeparator()).append(benchmarkReport);
+        }
+        return new AttributedString(message,
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.CYAN));
+      }
 
       return success();
     }
@@ -135,13 +527,576 @@ public class LoadCommands
     }
   }
 
-  private void loadOutputOptionsBuilder()
+  @ShellMethod(value = "Choose how each type of metadata is retrieved", prefix = "-")
+  public void retrieval(@ShellOption(defaultValue = ShellOption.NULL, help = "Strategy to retrieve tables") final MetadataRetrievalStrategy tables,
+                        @ShellOption(defaultValue = ShellOption.NULL, help = "Strategy to retrieve table columns") final MetadataRetrievalStrategy columns,
+                        @ShellOption(defaultValue = ShellOption.NULL, help = "Strategy to retrieve foreign keys") final MetadataRetrievalStrategy foreignkeys,
+                        @ShellOption(defaultValue = ShellOption.NULL, help = "Strategy to retrieve indexes") final MetadataRetrievalStrategy indexes,
+                        @ShellOption(defaultValue = ShellOption.NULL, help = "Strategy to retrieve procedures") final MetadataRetrievalStrategy procedures)
+  {
+    try
+    {
+      LOGGER
+        .log(Level.INFO,
+             new StringFormat("tables=%s, columns=%s, foreignkeys=%s, indexes=%s, procedures=%s",
+                              tables,
+                              columns,
+                              foreignkeys,
+                              indexes,
+                              procedures));
+
+      final Map<MetadataType, MetadataRetrievalStrategy> retrievalStrategies = new EnumMap<>(MetadataType.class);
+      retrievalStrategies.put(MetadataType.tables, tables);
+      retrievalStrategies.put(MetadataType.columns, columns);
+      retrievalStrategies.put(MetadataType.foreignkeys, foreignkeys);
+      retrievalStrategies.put(MetadataType.indexes, indexes);
+      retrievalStrategies.put(MetadataType.procedures, procedures);
+
+      // Strategies that are not provided are left unchanged
+      final SchemaRetrievalOptionsBuilder schemaRetrievalOptionsBuilder = state
+        .getSchemaRetrievalOptionsBuilder();
+      for (final Map.Entry<MetadataType, MetadataRetrievalStrategy> retrievalStrategy: retrievalStrategies
+        .entrySet())
+      {
+        if (retrievalStrategy.getValue() != null)
+        {
+          retrievalStrategy.getKey()
+            .setRetrievalStrategy(schemaRetrievalOptionsBuilder,
+                                  retrievalStrategy.getValue());
+        }
+      }
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot set retrieval options", e);
+    }
+  }
+
+  @ShellMethod(value = "Load the catalog again up to an info level, keeping metadata already loaded, and reusing metadata cached from earlier loads", prefix = "-")
+  public AttributedString upgradeCatalog(@ShellOption(value = "-infolevel", help = "Determine the amount of database metadata retrieved") @NotNull final InfoLevel infoLevel,
+                                         @ShellOption(defaultValue = "0", help = "Timeout for each query, in seconds, or 0 for no timeout") @Min(0) final int querytimeout,
+                                         @ShellOption(defaultValue = "0", help = "Timeout for upgrading the catalog, in seconds, or 0 for no timeout") @Min(0) final int timeout)
+  {
+    if (state.isOffline())
+    {
+      throw new RuntimeException("Offline catalogs cannot be upgraded");
+    }
+    if (!state.isLoaded())
+    {
+      throw new RuntimeException("There is no catalog loaded to upgrade");
+    }
+
+    try
+    {
+      LOGGER.log(Level.INFO,
+                 new StringFormat("infoLevel=%s, querytimeout=%d, timeout=%d",
+                                  infoLevel,
+                                  querytimeout,
+                                  timeout));
+
+      // Metadata that is already loaded is kept, even if the info level
+      // would not retrieve it
+      final SchemaInfoLevel loadedSchemaInfoLevel = state
+        .getSchemaCrawlerOptions().getSchemaInfoLevel();
+      final SchemaInfoLevelBuilder schemaInfoLevelBuilder = SchemaInfoLevelBuilder
+        .builder().withInfoLevel(infoLevel).withTag(infoLevel.name());
+      for (final RetrievalFlag retrievalFlag: RetrievalFlag.values())
+      {
+        if (retrievalFlag.isRetrieved(loadedSchemaInfoLevel))
+        {
+          retrievalFlag.setRetrieve(schemaInfoLevelBuilder, true);
+        }
+      }
+      // Limit options can turn off some metadata, such as routines, so
+      // missing metadata is worked out from the options for the crawl
+      final SchemaCrawlerOptions crawlOptions = SchemaCrawlerOptionsBuilder
+        .builder().fromOptions(state.getSchemaCrawlerOptions())
+        .withSchemaInfoLevel(schemaInfoLevelBuilder.toOptions())
+        .noEmptyTables(false).toOptions();
+      final SchemaInfoLevel schemaInfoLevel = crawlOptions
+        .getSchemaInfoLevel();
+      final Set<RetrievalFlag> missing = EnumSet.noneOf(RetrievalFlag.class);
+      for (final RetrievalFlag retrievalFlag: RetrievalFlag.values())
+      {
+        if (retrievalFlag.isRetrieved(schemaInfoLevel)
+            && !retrievalFlag.isRetrieved(loadedSchemaInfoLevel))
+        {
+          missing.add(retrievalFlag);
+        }
+      }
+      if (missing.isEmpty())
+      {
+        return new AttributedString(String
+          .format("Catalog already has metadata for info level %s",
+                  infoLevel),
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.CYAN));
+      }
+      // The whole catalog is loaded again, in the same way as it is
+      // first loaded, since catalogs cannot be merged. Metadata calls
+      // that were made for the loaded catalog are served from the
+      // session's metadata cache, so mostly the missing metadata is
+      // read from the database.
+      LOGGER.log(Level.INFO,
+                 new StringFormat("Loading the catalog again, to add %s",
+                                  missing));
+
+      final SchemaRetrievalOptions schemaRetrievalOptions = state
+        .getSchemaRetrievalOptionsBuilder().toOptions();
+      final Catalog loadedCatalog = state.getCatalog();
+      final QueryCanceller queryCanceller = new QueryCanceller(querytimeout);
+      final DataSource dataSource = queryCanceller
+        .track(state.getDataSource());
+      Catalog catalog = crawlCatalog(dataSource,
+                                     schemaRetrievalOptions,
+                                     crawlOptions,
+                                     loadedCatalog.getSchemas(),
+                                     queryCanceller,
+                                     timeout,
+                                     heapBudget(loadedCatalog));
+      if (catalog == null || queryCanceller.isCancelled())
+      {
+        LOGGER.log(Level.INFO, "Cancelled upgrading catalog");
+        return new AttributedString("Cancelled upgrading catalog",
+                                    AttributedStyle.DEFAULT
+                                      .foreground(AttributedStyle.RED));
+      }
+
+      state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> schemaCrawlerOptionsBuilder
+        .withSchemaInfoLevel(schemaInfoLevel));
+      final SchemaCrawlerOptions schemaCrawlerOptions = state
+        .getSchemaCrawlerOptions();
+      if (schemaCrawlerOptions.isNoEmptyTables())
+      {
+        catalog = filterEmptyTables(catalog,
+                                    dataSource,
+                                    true,
+                                    schemaRetrievalOptions);
+      }
+
+      // Deferred metadata that has now been retrieved is no longer
+      // deferred
+      final Set<RetrievalFlag> deferred = RetrievalCosts
+        .deferred(loadedCatalog);
+      deferred.removeAll(missing);
+      RetrievalCosts.defer(catalog, deferred);
+
+      state.setCatalog(catalog);
+      LOGGER.log(Level.INFO, "Upgraded catalog");
+
+      return new AttributedString(String.format("Upgraded catalog, with %s",
+                                                missing),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.CYAN));
+    }
+    catch (final Exception e)
+    {
+      throw new RuntimeException("Cannot upgrade catalog", e);
+    }
+  }
+
+  /**
+   * Times loading the catalog with each retrieval strategy for each type
+   * of metadata that is retrieved, keeping the other strategies
+   * unchanged. Each strategy is timed over several loads, and the median
+   * time is reported, with a retrieval command for the fastest
+   * strategies.
+   */
+  private String benchmarkStrategies(final SchemaCrawlerOptions schemaCrawlerOptions)
+    throws Exception
+  {
+    final DataSource dataSource = state.getDataSource();
+    final SchemaRetrievalOptionsBuilder schemaRetrievalOptionsBuilder = state
+      .getSchemaRetrievalOptionsBuilder();
+    final SchemaInfoLevel schemaInfoLevel = schemaCrawlerOptions
+      .getSchemaInfoLevel();
+    final int benchmarkRuns = Math.max(1,
+                                       state.getAdditionalConfiguration()
+                                         .getIntegerValue(BENCHMARK_RUNS,
+                                                          DEFAULT_BENCHMARK_RUNS));
+
+    // Warm up the database and driver, so that the first strategy is
+    // not penalized
+    crawl(dataSource,
+          schemaRetrievalOptionsBuilder.toOptions(),
+          schemaCrawlerOptions);
+
+    final StringBuilder timings = new StringBuilder();
+    final StringBuilder recommendation = new StringBuilder("retrieval");
+    for (final MetadataType metadataType: MetadataType.values())
+    {
+      if (!metadataType.isRetrieved(schemaInfoLevel))
+      {
+        timings.append(String.format("%-12s %s%n",
+                                     metadataType,
+                                     "not retrieved at this info level"));
+        continue;
+      }
+
+      final MetadataRetrievalStrategy currentStrategy = metadataType
+        .getRetrievalStrategy(schemaRetrievalOptionsBuilder.toOptions());
+      MetadataRetrievalStrategy fastestStrategy = currentStrategy;
+      long fastestMillis = Long.MAX_VALUE;
+      try
+      {
+        for (final MetadataRetrievalStrategy retrievalStrategy: MetadataRetrievalStrategy
+          .values())
+        {
+          metadataType.setRetrievalStrategy(schemaRetrievalOptionsBuilder,
+                                            retrievalStrategy);
+          final long[] runMillis = new long[benchmarkRuns];
+          try
+          {
+            for (int run = 0; run < benchmarkRuns; run++)
+            {
+              // Time each strategy against the database, not the cache
+              if (dataSource instanceof ShellDataSource)
+              {
+                ((ShellDataSource) dataSource).getMetadataCache().clear();
+              }
+              final long start = System.nanoTime();
+              crawl(dataSource,
+                    schemaRetrievalOptionsBuilder.toOptions(),
+                    schemaCrawlerOptions);
+              runMillis[run] = (System.nanoTime() - start) / 1_000_000L;
+            }
+          }
+          catch (final Exception e)
+          {
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+            timings.append(String.format("%-12s %-22s %s%n",
+                                         metadataType,
+                                         retrievalStrategy,
+                                         "not supported"));
+            continue;
+          }
+          Arrays.sort(runMillis);
+          final long millis = runMillis[benchmarkRuns / 2];
+          timings.append(String.format("%-12s %-22s %8d ms%n",
+                                       metadataType,
+                                       retrievalStrategy,
+                                       millis));
+          if (millis < fastestMillis)
+          {
+            fastestMillis = millis;
+            fastestStrategy = retrievalStrategy;
+          }
+        }
+      }
+      finally
+      {
+        metadataType.setRetrievalStrategy(schemaRetrievalOptionsBuilder,
+                                          currentStrategy);
+      }
+      recommendation.append(" -").append(metadataType).append(" ")
+        .append(fastestStrategy);
+    }
+
+    return String.format("Median of %d loads for each strategy%n%sRecommended: %s",
+                         benchmarkRuns,
+                         timings,
+                         recommendation);
+  }
+
+  /**
+   * Identifies the database for retrieval costs by its connection URL,
+   * as reported by the driver.
+   */
+  private String connectionUrl()
+  {
+    try (final Connection connection = state.getDataSource().getConnection();)
+    {
+      return connection.getMetaData().getURL();
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.log(Level.WARNING, e.getMessage(), e);
+      return null;
+    }
+  }
+
+  private Catalog crawl(final DataSource dataSource,
+                        final SchemaRetrievalOptions schemaRetrievalOptions,
+                        final SchemaCrawlerOptions schemaCrawlerOptions)
+    throws Exception
+  {
+    return CatalogCrawler.crawl(dataSource,
+                                state.getAdditionalConfiguration(),
+                                schemaRetrievalOptions,
+                                schemaCrawlerOptions);
+  }
+
+  /**
+   * Crawls the catalog, so that the crawl can be cancelled. If there is
+   * a heap budget, in bytes, schemas are loaded one at a time, and
+   * written to disk if the budget is exceeded.
+   */
+  private Catalog crawlCatalog(final DataSource dataSource,
+                               final SchemaRetrievalOptions schemaRetrievalOptions,
+                               final SchemaCrawlerOptions schemaCrawlerOptions,
+                               final Collection<Schema> schemas,
+                               final QueryCanceller queryCanceller,
+                               final int timeout,
+                               final long heapBudget)
+    throws Exception
+  {
+    if (heapBudget > 0)
+    {
+      return queryCanceller.run(() -> crawlBySchema(dataSource,
+                                                    schemaRetrievalOptions,
+                                                    schemaCrawlerOptions,
+                                                    schemas,
+                                                    heapBudget,
+                                                    queryCanceller),
+                                timeout,
+                                terminal);
+    }
+    return queryCanceller.run(() -> crawl(dataSource,
+                                          schemaRetrievalOptions,
+                                          schemaCrawlerOptions),
+                              timeout,
+                              terminal);
+  }
+
+  /**
+   * Loads schemas one at a time, so that loaded schemas can be written
+   * to disk if the heap budget is exceeded, instead of running out of
+   * memory during the load. If the load is cancelled, the schemas that
+   * were loaded are kept.
+   */
+  private Catalog crawlBySchema(final DataSource dataSource,
+                                final SchemaRetrievalOptions schemaRetrievalOptions,
+                                final SchemaCrawlerOptions schemaCrawlerOptions,
+                                final Collection<Schema> prefetchedSchemas,
+                                final long heapBudget,
+                                final QueryCanceller queryCanceller)
+    throws Exception
+  {
+    final Collection<Schema> schemas;
+    if (prefetchedSchemas != null)
+    {
+      schemas = prefetchedSchemas;
+    }
+    else
+    {
+      final SchemaCrawlerOptions schemasOptions = SchemaCrawlerOptionsBuilder
+        .builder().fromOptions(schemaCrawlerOptions)
+        .withSchemaInfoLevel(SchemaInfoLevelBuilder.minimum())
+        .includeTables(new ExcludeAll()).includeRoutines(new ExcludeAll())
+        .toOptions();
+      schemas = crawl(dataSource, schemaRetrievalOptions, schemasOptions)
+        .getSchemas();
+    }
+    LOGGER.log(Level.INFO,
+               new StringFormat("Loading %d schemas, within a heap budget of %d bytes",
+                                schemas.size(),
+                                heapBudget));
+
+    final SpilledCatalog spilledCatalog = new SpilledCatalog(heapBudget);
+    for (final Schema schema: schemas)
+    {
+      final SchemaCrawlerOptions schemaOptions = SchemaCrawlerOptionsBuilder
+        .builder().fromOptions(schemaCrawlerOptions)
+        .includeSchemas(new RegularExpressionInclusionRule(Pattern
+          .quote(schema.getFullName())))
+        .toOptions();
+      final Catalog schemaCatalog;
+      try
+      {
+        schemaCatalog = crawl(dataSource,
+                              schemaRetrievalOptions,
+                              schemaOptions);
+      }
+      catch (final Exception e)
+      {
+        if (queryCanceller.isCancelled())
+        {
+          break;
+        }
+        throw e;
+      }
+      if (queryCanceller.isCancelled())
+      {
+        break;
+      }
+      spilledCatalog.add(schemaCatalog);
+    }
+    if (spilledCatalog.isSpilled())
+    {
+      LOGGER.log(Level.INFO, "Loaded catalog, with some schemas on disk");
+    }
+    if (spilledCatalog.isEmpty() && queryCanceller.isCancelled())
+    {
+      return null;
+    }
+    else if (spilledCatalog.isEmpty())
+    {
+      // There are no schemas to load
+      return crawl(dataSource, schemaRetrievalOptions, schemaCrawlerOptions);
+    }
+    return spilledCatalog.toCatalog();
+  }
+
+  private Catalog filterEmptyTables(final Catalog catalog,
+                                    final DataSource dataSource,
+                                    final boolean cachedRowCounts,
+                                    final SchemaRetrievalOptions schemaRetrievalOptions)
+    throws SchemaCrawlerException
+  {
+    final Config config = state.getAdditionalConfiguration();
+    final String databaseSystemIdentifier;
+    if (config.getBooleanValue(APPROXIMATE_ROW_COUNTS, false))
+    {
+      databaseSystemIdentifier = schemaRetrievalOptions.getDatabaseServerType()
+        .getDatabaseSystemIdentifier();
+      if (!supportsApproximateRowCounts(databaseSystemIdentifier))
+      {
+        LOGGER.log(Level.INFO,
+                   new StringFormat("Approximate row counts are not supported for <%s>",
+                                    databaseSystemIdentifier));
+      }
+    }
+    else
+    {
+      databaseSystemIdentifier = null;
+    }
+
+    final int threads = config.getIntegerValue(ROW_COUNT_THREADS,
+                                               DEFAULT_MAX_CONNECTIONS);
+    final int queryTimeout = config.getIntegerValue(ROW_COUNT_QUERY_TIMEOUT,
+                                                    0);
+    // Counts are made on several threads
+    final Map<String, Long> rowCountsCache = cachedRowCounts? state
+      .getTableRowCounts(): new ConcurrentHashMap<>();
+    final Map<String, Long> approximateRowCountsCache = cachedRowCounts? state
+      .getApproximateTableRowCounts(): new ConcurrentHashMap<>();
+    final TableRowCounter rowCounter = new TableRowCounter(dataSource,
+                                                           schemaRetrievalOptions.getIdentifiers(),
+                                                           rowCountsCache,
+                                                           approximateRowCountsCache,
+                                                           databaseSystemIdentifier,
+                                                           threads,
+                                                           queryTimeout);
+    final Map<Table, Long> rowCounts = rowCounter
+      .countRows(catalog.getTables());
+    for (final Map.Entry<Table, Long> rowCount: rowCounts.entrySet())
+    {
+      final Table table = rowCount.getKey();
+      TableRowCounter.setRowCount(table,
+                                  rowCount.getValue(),
+                                  rowCounter.isApproximate(table));
+    }
+
+    // Tables that could not be counted are kept
+    if (catalog instanceof Reducible)
+    {
+      ((Reducible) catalog).reduce(Table.class,
+                                   getTableReducer(table -> hasRows(table)));
+      return catalog;
+    }
+    else
+    {
+      final List<Table> tables = new ArrayList<>();
+      for (final Table table: catalog.getTables())
+      {
+        if (hasRows(table))
+        {
+          tables.add(table);
+        }
+      }
+      return CatalogSubset.restrict(catalog, tables);
+    }
+  }
+
+  /**
+   * Gets the heap budget, in bytes, that a catalog was loaded within, so
+   * that it is loaded again within the same budget, or 0 if there was
+   * no budget.
+   */
+  private long heapBudget(final Catalog catalog)
+  {
+    return SpilledCatalog.lookupSpilledCatalog(catalog)
+      .map(SpilledCatalog::getHeapBudget).orElse(0L);
+  }
+
+  private AttributedString loadOfflineCatalog(final InfoLevel infoLevel,
+                                              final boolean benchmarkStrategies,
+                                              final String recordfile,
+                                              final String retrieve,
+                                              final String skip)
+    throws IOException
+  {
+    if (benchmarkStrategies || !isBlank(recordfile) || !isBlank(retrieve)
+        || !isBlank(skip))
+    {
+      return new AttributedString("Cannot benchmark, record, retrieve or skip metadata for an offline catalog",
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.RED));
+    }
+
+    final Catalog catalog = OfflineCatalog
+      .load(state.getOfflineCatalogFile(), state.getSchemaCrawlerOptions());
+    final InfoLevel savedInfoLevel = OfflineCatalog.getInfoLevel(catalog);
+    if (infoLevel != savedInfoLevel)
+    {
+      return new AttributedString(String
+        .format("Offline catalog was saved with info level %s, and cannot be loaded with info level %s",
+                savedInfoLevel,
+                infoLevel),
+                                  AttributedStyle.DEFAULT
+                                    .foreground(AttributedStyle.RED));
+    }
+
+    state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> schemaCrawlerOptionsBuilder
+      .withSchemaInfoLevel(SchemaInfoLevelBuilder.builder()
+        .withInfoLevel(infoLevel).withTag(infoLevel.name()).toOptions()));
+    state.setCatalog(catalog);
+    LOGGER.log(Level.INFO, "Loaded offline catalog");
+    return success();
+  }
+
+  private void loadOutputOptions()
   {
     final Config config = state.getAdditionalConfiguration();
-    final OutputOptionsBuilder outputOptionsBuilder = OutputOptionsBuilder
-      .builder();
-    outputOptionsBuilder.fromConfig(config);
-    state.setOutputOptionsBuilder(outputOptionsBuilder);
+    final OutputOptions outputOptions = OutputOptionsBuilder.builder()
+      .fromConfig(config).toOptions();
+    state.setOutputOptions(outputOptions);
+  }
+
+  private void loadRetrievalCosts()
+    throws IOException
+  {
+    final String costsFile = state.getAdditionalConfiguration()
+      .getStringValue(RETRIEVAL_COSTS_FILE, "");
+    if (!isBlank(costsFile))
+    {
+      state.getRetrievalCosts().load(Paths.get(costsFile));
+    }
+  }
+
+  private void saveRetrievalCosts(final String connectionUrl,
+                                  final Map<RetrievalFlag, Long> costs,
+                                  final long stepBudget)
+    throws IOException
+  {
+    for (final Map.Entry<RetrievalFlag, Long> cost: costs.entrySet())
+    {
+      if (cost.getValue() > stepBudget * 1_000_000L)
+      {
+        LOGGER.log(Level.INFO,
+                   new StringFormat("Retrieving %s took %d ms, and will be deferred on the next load",
+                                    cost.getKey(),
+                                    cost.getValue() / 1_000_000L));
+      }
+    }
+
+    state.getRetrievalCosts().update(connectionUrl, costs);
+    final String costsFile = state.getAdditionalConfiguration()
+      .getStringValue(RETRIEVAL_COSTS_FILE, "");
+    if (!isBlank(costsFile))
+    {
+      state.getRetrievalCosts().save(Paths.get(costsFile));
+    }
   }
 
   private AttributedString success()
@@ -160,4 +1115,14 @@ public class LoadCommands
     }
   }
 
+  private Set<String> tableNames(final Catalog catalog)
+  {
+    final Set<String> tableNames = new HashSet<>();
+    for (final Table table: catalog.getTables())
+    {
+      tableNames.add(table.getFullName());
+    }
+    return tableNames;
+  }
+
 }
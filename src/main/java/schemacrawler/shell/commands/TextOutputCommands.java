@@ -39,8 +39,6 @@ import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellMethodAvailability;
 import org.springframework.shell.standard.ShellOption;
 
-import schemacrawler.schemacrawler.Config;
-import schemacrawler.schemacrawler.SchemaCrawlerOptionsBuilder;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
 import schemacrawler.tools.text.base.CommonTextOptionsBuilder;
 import schemacrawler.tools.text.schema.SchemaTextOptionsBuilder;
@@ -73,10 +71,8 @@ public class TextOutputCommands
     {
       LOGGER.log(Level.INFO, new StringFormat("title=%s", title));
 
-      final SchemaCrawlerOptionsBuilder schemaCrawlerOptionsBuilder = state
-        .getSchemaCrawlerOptionsBuilder();
-
-      schemaCrawlerOptionsBuilder.title(title);
+      state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> schemaCrawlerOptionsBuilder
+        .title(title));
     }
     catch (final Exception e)
     {
@@ -100,15 +96,13 @@ public class TextOutputCommands
                               weakassociations,
                               portablenames));
 
-      final Config config = state.getAdditionalConfiguration();
-
-      final SchemaTextOptionsBuilder textOptionsBuilder = SchemaTextOptionsBuilder
-        .builder().fromConfig(config);
-      textOptionsBuilder.noInfo(noinfo).noRemarks(noremarks)
-        .weakAssociations(weakassociations).portableNames(portablenames);
-      config.putAll(textOptionsBuilder.toConfig());
-
-      state.setAdditionalConfiguration(config);
+      state.updateAdditionalConfiguration(config -> {
+        final SchemaTextOptionsBuilder textOptionsBuilder = SchemaTextOptionsBuilder
+          .builder().fromConfig(config);
+        textOptionsBuilder.noInfo(noinfo).noRemarks(noremarks)
+          .weakAssociations(weakassociations).portableNames(portablenames);
+        config.putAll(textOptionsBuilder.toConfig());
+      });
     }
     catch (final Exception e)
     {
@@ -129,15 +123,13 @@ public class TextOutputCommands
                                   sortcolumns,
                                   sortinout));
 
-      final Config config = state.getAdditionalConfiguration();
-
-      final CommonTextOptionsBuilder textOptionsBuilder = CommonTextOptionsBuilder
-        .builder().fromConfig(config);
-      textOptionsBuilder.sortTables(sorttables).sortTableColumns(sortcolumns)
-        .sortInOut(sortinout);
-      config.putAll(textOptionsBuilder.toConfig());
-
-      state.setAdditionalConfiguration(config);
+      state.updateAdditionalConfiguration(config -> {
+        final CommonTextOptionsBuilder textOptionsBuilder = CommonTextOptionsBuilder
+          .builder().fromConfig(config);
+        textOptionsBuilder.sortTables(sorttables).sortTableColumns(sortcolumns)
+          .sortInOut(sortinout);
+        config.putAll(textOptionsBuilder.toConfig());
+      });
     }
     catch (final Exception e)
     {
@@ -0,0 +1,141 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.output;
+
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that passes output through, and also keeps a copy of it, up
+ * to a limit. Output over the limit is passed through, but not kept.
+ */
+public final class CapturingWriter
+  extends FilterWriter
+{
+
+  private final long limit;
+  private final boolean closeWriter;
+  private StringBuilder captured;
+  private boolean closed;
+
+  /**
+   * Creates a writer that keeps a copy of output.
+   *
+   * @param writer
+   *        Writer to pass output through to
+   * @param limit
+   *        Maximum number of characters to keep
+   * @param closeWriter
+   *        Whether to close the writer that output is passed through
+   *        to, or only to flush it, such as for console output
+   */
+  public CapturingWriter(final Writer writer,
+                         final long limit,
+                         final boolean closeWriter)
+  {
+    super(writer);
+    this.limit = limit;
+    this.closeWriter = closeWriter;
+    captured = new StringBuilder();
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    if (closeWriter)
+    {
+      out.close();
+    }
+    else
+    {
+      out.flush();
+    }
+  }
+
+  /**
+   * Gets the output that was kept.
+   *
+   * @return Output, or null if there was more output than the limit
+   */
+  public String getCaptured()
+  {
+    return captured == null? null: captured.toString();
+  }
+
+  @Override
+  public void write(final char[] cbuf, final int off, final int len)
+    throws IOException
+  {
+    out.write(cbuf, off, len);
+    if (capture(len))
+    {
+      captured.append(cbuf, off, len);
+    }
+  }
+
+  @Override
+  public void write(final int c)
+    throws IOException
+  {
+    out.write(c);
+    if (capture(1))
+    {
+      captured.append((char) c);
+    }
+  }
+
+  @Override
+  public void write(final String str, final int off, final int len)
+    throws IOException
+  {
+    out.write(str, off, len);
+    if (capture(len))
+    {
+      captured.append(str, off, off + len);
+    }
+  }
+
+  private boolean capture(final int len)
+  {
+    if (captured != null && captured.length() + (long) len > limit)
+    {
+      captured = null;
+    }
+    return captured != null;
+  }
+
+}
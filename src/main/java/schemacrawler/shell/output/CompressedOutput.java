@@ -0,0 +1,196 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.output;
+
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Compressed output file. Text written to the output writer is passed
+ * through a pipe to a separate thread, which compresses it and writes
+ * it to the file, so that formatting the catalog and compressing the
+ * output happen at the same time.
+ */
+public final class CompressedOutput
+  implements AutoCloseable
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(CompressedOutput.class.getName());
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private static OutputStream compressedStream(final Path outputFile,
+                                               final OutputCompression compression,
+                                               final String entryName)
+    throws IOException
+  {
+    final OutputStream fileStream = new BufferedOutputStream(Files
+      .newOutputStream(outputFile), BUFFER_SIZE);
+    switch (compression)
+    {
+      case gzip:
+        return new GZIPOutputStream(fileStream, BUFFER_SIZE);
+      case zip:
+        final ZipOutputStream zipStream = new ZipOutputStream(fileStream);
+        zipStream.putNextEntry(new ZipEntry(entryName));
+        return zipStream;
+      default:
+        return fileStream;
+    }
+  }
+
+  private final Path outputFile;
+  private final Writer writer;
+  private final ExecutorService executorService;
+  private final Future<Long> compressed;
+  private boolean closed;
+
+  /**
+   * Starts compressing output to a file.
+   *
+   * @param outputFile
+   *        Compressed output file
+   * @param compression
+   *        Compression, which must already be resolved
+   * @param entryName
+   *        Name of the entry in a ZIP archive
+   * @throws IOException
+   *         On an exception creating the output file
+   */
+  public CompressedOutput(final Path outputFile,
+                          final OutputCompression compression,
+                          final String entryName)
+    throws IOException
+  {
+    this.outputFile = requireNonNull(outputFile, "No output file provided");
+    requireNonNull(compression, "No compression provided");
+    requireNonNull(entryName, "No entry name provided");
+
+    final OutputStream compressedStream = compressedStream(outputFile,
+                                                           compression,
+                                                           entryName);
+    final PipedInputStream pipeIn = new PipedInputStream(BUFFER_SIZE);
+    final PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+    writer = new BufferedWriter(new OutputStreamWriter(pipeOut, UTF_8));
+
+    executorService = Executors.newSingleThreadExecutor();
+    compressed = executorService.submit(() -> compress(pipeIn,
+                                                       compressedStream));
+    executorService.shutdown();
+  }
+
+  /**
+   * Closes the output writer, and waits for compression to complete.
+   */
+  @Override
+  public synchronized void close()
+    throws IOException
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    try
+    {
+      writer.close();
+      final long bytes = compressed.get();
+      LOGGER.log(Level.INFO,
+                 new StringFormat("Compressed %d bytes of output to <%s>",
+                                  bytes,
+                                  outputFile));
+    }
+    catch (final InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while compressing output", e);
+    }
+    catch (final ExecutionException e)
+    {
+      throw new IOException("Could not compress output", e.getCause());
+    }
+    finally
+    {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Writer for uncompressed output text.
+   *
+   * @return Output writer
+   */
+  public Writer getWriter()
+  {
+    return writer;
+  }
+
+  private long compress(final InputStream in, final OutputStream out)
+    throws IOException
+  {
+    long bytes = 0;
+    try (final InputStream pipeIn = in; final OutputStream compressedOut = out;)
+    {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = pipeIn.read(buffer)) != -1)
+      {
+        compressedOut.write(buffer, 0, read);
+        bytes = bytes + read;
+      }
+    }
+    return bytes;
+  }
+
+}
@@ -0,0 +1,189 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.output;
+
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Cache for rendered output files. A content hash of what the output
+ * is rendered from (such as the fingerprint of a catalog), and of the
+ * options used to render it, is stored next to the output file. If the hash matches on the next run, the existing output file
+ * is reused, and not rendered again.
+ */
+public final class OutputCache
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(OutputCache.class.getName());
+
+  public static final String OUTPUT_CACHE = "schemacrawler.shell.output_cache";
+
+  private static final String HASH_FILE_EXTENSION = ".sha256";
+
+  private static String toHex(final byte[] bytes)
+  {
+    final StringBuilder buffer = new StringBuilder(bytes.length * 2);
+    for (final byte b: bytes)
+    {
+      buffer.append(String.format("%02x", b));
+    }
+    return buffer.toString();
+  }
+
+  private final Path outputFile;
+  private final Path hashFile;
+
+  public OutputCache(final Path outputFile)
+  {
+    this.outputFile = requireNonNull(outputFile, "No output file provided")
+      .toAbsolutePath();
+    hashFile = this.outputFile
+      .resolveSibling(this.outputFile.getFileName() + HASH_FILE_EXTENSION);
+  }
+
+  /**
+   * Computes a content hash for what the output is rendered from, and
+   * options.
+   *
+   * @param intermediate
+   *        Content that the output is rendered from
+   * @param options
+   *        Options that affect how the output is rendered
+   * @return Hex encoded hash
+   */
+  public String hash(final String intermediate,
+                     final Map<String, String> options)
+  {
+    final MessageDigest digest;
+    try
+    {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (final NoSuchAlgorithmException e)
+    {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException("Cannot compute hash", e);
+    }
+
+    digest.update(intermediate.getBytes(UTF_8));
+    // Sort options, so that the hash does not depend on map order
+    for (final Map.Entry<String, String> option: new TreeMap<>(options)
+      .entrySet())
+    {
+      digest.update((byte) 0);
+      digest.update(String.valueOf(option.getKey()).getBytes(UTF_8));
+      digest.update((byte) 0);
+      digest.update(String.valueOf(option.getValue()).getBytes(UTF_8));
+    }
+
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Removes the stored hash, so that a failed render is never mistaken
+   * for a current one.
+   */
+  public void invalidate()
+  {
+    try
+    {
+      Files.deleteIfExists(hashFile);
+    }
+    catch (final IOException e)
+    {
+      LOGGER.log(Level.WARNING,
+                 new StringFormat("Could not delete <%s>", hashFile),
+                 e);
+    }
+  }
+
+  /**
+   * Checks if the output file exists, and was rendered from content
+   * with the given hash.
+   *
+   * @param hash
+   *        Hash of the content and options
+   * @return True if the output file can be reused
+   */
+  public boolean isCurrent(final String hash)
+  {
+    if (!Files.isRegularFile(outputFile) || !Files.isRegularFile(hashFile))
+    {
+      return false;
+    }
+    try
+    {
+      final String storedHash = new String(Files.readAllBytes(hashFile),
+                                           UTF_8).trim();
+      return storedHash.equals(hash);
+    }
+    catch (final IOException e)
+    {
+      LOGGER.log(Level.WARNING,
+                 new StringFormat("Could not read <%s>", hashFile),
+                 e);
+      return false;
+    }
+  }
+
+  /**
+   * Stores the hash of the output that was just rendered.
+   *
+   * @param hash
+   *        Hash of the content and options
+   */
+  public void update(final String hash)
+  {
+    try
+    {
+      Files.write(hashFile, hash.getBytes(UTF_8));
+    }
+    catch (final IOException e)
+    {
+      LOGGER.log(Level.WARNING,
+                 new StringFormat("Could not write <%s>", hashFile),
+                 e);
+    }
+  }
+
+}
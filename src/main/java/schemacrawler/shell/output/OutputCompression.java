@@ -0,0 +1,91 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.output;
+
+
+import java.nio.file.Path;
+
+/**
+ * How output files are compressed.
+ */
+public enum OutputCompression
+{
+
+ /**
+  * Compression is chosen from the output file extension.
+  */
+ auto,
+ /**
+  * No compression.
+  */
+ none,
+ /**
+  * GZIP compression.
+  */
+ gzip,
+ /**
+  * A ZIP archive with a single entry.
+  */
+ zip;
+
+  /**
+   * Resolves automatic compression from the extension of the output
+   * file.
+   *
+   * @param outputFile
+   *        Output file, which may be null for console output
+   * @return Compression for the output file
+   */
+  public OutputCompression resolve(final Path outputFile)
+  {
+    if (this != auto)
+    {
+      return this;
+    }
+    if (outputFile == null)
+    {
+      return none;
+    }
+
+    final String fileName = outputFile.getFileName().toString().toLowerCase();
+    if (fileName.endsWith(".gz"))
+    {
+      return gzip;
+    }
+    else if (fileName.endsWith(".zip"))
+    {
+      return zip;
+    }
+    else
+    {
+      return none;
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.output;
+
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Cache of formatted SchemaCrawler output, so that running the same
+ * command again on an unchanged catalog with unchanged options does not
+ * traverse and format the catalog again. Results are evicted least
+ * recently used first, to keep the cache within a maximum size.
+ */
+public final class ResultCache
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(ResultCache.class.getName());
+
+  public static final String RESULT_CACHE_SIZE = "schemacrawler.shell.result_cache.size";
+  public static final int DEFAULT_RESULT_CACHE_SIZE = 32;
+
+  /**
+   * Creates a cache key from the values that determine the output.
+   *
+   * @param values
+   *        Values that determine the output
+   * @return Cache key
+   */
+  public static String key(final Object... values)
+  {
+    final MessageDigest digest;
+    try
+    {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (final NoSuchAlgorithmException e)
+    {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException("Cannot compute hash", e);
+    }
+    for (final Object value: values)
+    {
+      digest.update(String.valueOf(value).getBytes(UTF_8));
+      digest.update((byte) 0);
+    }
+
+    final StringBuilder buffer = new StringBuilder();
+    for (final byte b: digest.digest())
+    {
+      buffer.append(String.format("%02x", b));
+    }
+    return buffer.toString();
+  }
+
+  private static long sizeOf(final String result)
+  {
+    return result.length() * 2L;
+  }
+
+  private final Map<String, String> results;
+  private long size;
+
+  public ResultCache()
+  {
+    results = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  public synchronized void clear()
+  {
+    results.clear();
+    size = 0;
+  }
+
+  /**
+   * Looks up a cached result, and marks it as recently used.
+   *
+   * @param key
+   *        Cache key
+   * @return Cached result, or null if there is none
+   */
+  public synchronized String get(final String key)
+  {
+    return results.get(key);
+  }
+
+  /**
+   * Caches a result, evicting least recently used results to stay
+   * within the maximum size. Results larger than the maximum size are
+   * not cached.
+   *
+   * @param key
+   *        Cache key
+   * @param result
+   *        Formatted output
+   * @param maxSize
+   *        Maximum size of the cache, in bytes
+   */
+  public synchronized void put(final String key,
+                               final String result,
+                               final long maxSize)
+  {
+    final long resultSize = sizeOf(result);
+    if (resultSize > maxSize)
+    {
+      return;
+    }
+
+    final String previousResult = results.put(key, result);
+    if (previousResult != null)
+    {
+      size = size - sizeOf(previousResult);
+    }
+    size = size + resultSize;
+
+    final Iterator<Map.Entry<String, String>> iterator = results.entrySet()
+      .iterator();
+    while (size > maxSize && iterator.hasNext())
+    {
+      final Map.Entry<String, String> eldest = iterator.next();
+      size = size - sizeOf(eldest.getValue());
+      iterator.remove();
+      LOGGER.log(Level.FINE,
+                 new StringFormat("Evicted cached result <%s>",
+                                  eldest.getKey()));
+    }
+  }
+
+}
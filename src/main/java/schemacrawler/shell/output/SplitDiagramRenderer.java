@@ -0,0 +1,347 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.output;
+
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Table;
+import schemacrawler.schemacrawler.Config;
+import schemacrawler.schemacrawler.SchemaCrawlerException;
+import schemacrawler.schemacrawler.SchemaCrawlerOptions;
+import schemacrawler.shell.catalog.CatalogSubset;
+import schemacrawler.shell.catalog.ForeignKeyAdjacencyIndex;
+import schemacrawler.tools.analysis.associations.CatalogWithAssociations;
+import schemacrawler.tools.analysis.associations.WeakAssociationsUtility;
+import schemacrawler.tools.executable.CommandDaisyChain;
+import schemacrawler.tools.executable.SchemaCrawlerCommand;
+import schemacrawler.tools.integration.graph.GraphOptionsBuilder;
+import schemacrawler.tools.options.OutputOptions;
+import schemacrawler.tools.options.OutputOptionsBuilder;
+import schemacrawler.utility.Identifiers;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Renders a large catalog as a number of smaller diagrams, one for
+ * each schema, or for each group of tables connected by foreign keys.
+ * Diagrams are rendered concurrently, each with its own Graphviz
+ * process, and an HTML index page links to all of them. Weak
+ * associations are found once for the whole catalog, before diagrams
+ * are rendered.
+ */
+public final class SplitDiagramRenderer
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(SplitDiagramRenderer.class.getName());
+
+  public static final String DIAGRAM_THREADS = "schemacrawler.shell.diagrams.threads";
+
+  private static final String WEAK_ASSOCIATIONS = "schemacrawler.weak_associations";
+
+  private static String escapeHtml(final String text)
+  {
+    return text.replace("&", "&amp;").replace("<", "&lt;")
+      .replace(">", "&gt;").replace("\"", "&quot;");
+  }
+
+  private static String fileNamePart(final String name)
+  {
+    return name.replaceAll("[^A-Za-z0-9._-]", "_");
+  }
+
+  private final String command;
+  private final SchemaCrawlerOptions schemaCrawlerOptions;
+  private final OutputOptions outputOptions;
+  private final Config additionalConfiguration;
+  private final Identifiers identifiers;
+
+  public SplitDiagramRenderer(final String command,
+                              final SchemaCrawlerOptions schemaCrawlerOptions,
+                              final OutputOptions outputOptions,
+                              final Config additionalConfiguration,
+                              final Identifiers identifiers)
+  {
+    this.command = requireNonNull(command, "No command provided");
+    this.schemaCrawlerOptions = requireNonNull(schemaCrawlerOptions,
+                                               "No SchemaCrawler options provided");
+    this.outputOptions = requireNonNull(outputOptions,
+                                        "No output options provided");
+    this.additionalConfiguration = requireNonNull(additionalConfiguration,
+                                                  "No configuration provided");
+    this.identifiers = requireNonNull(identifiers, "No identifiers provided");
+  }
+
+  /**
+   * Renders diagrams for parts of the catalog, and writes an index
+   * page.
+   *
+   * @param catalog
+   *        Loaded catalog
+   * @param split
+   *        How to split the catalog
+   * @param outputFile
+   *        Output file, which determines the name of the index page and
+   *        the directory for diagrams
+   * @return Index page
+   * @throws SchemaCrawlerException
+   *         On an exception rendering diagrams
+   */
+  public Path render(final Catalog catalog,
+                     final DiagramSplit split,
+                     final Path outputFile)
+    throws SchemaCrawlerException
+  {
+    final Map<String, Collection<Table>> parts = partition(catalog, split);
+
+    if (GraphOptionsBuilder.builder().fromConfig(additionalConfiguration)
+      .toOptions().isShowWeakAssociations())
+    {
+      shareWeakAssociations(catalog);
+    }
+
+    final Path directory = outputFile.toAbsolutePath().getParent();
+    final String fileName = outputFile.getFileName().toString();
+    final String baseName = fileName.contains(".")? fileName
+      .substring(0, fileName.lastIndexOf('.')): fileName;
+    final String extension = outputOptions.getOutputFormatValue();
+
+    // Names of parts can differ only in characters that are replaced in
+    // file names, or in case, so diagram file names are made unique
+    final Set<String> fileNames = new HashSet<>();
+    final Map<String, Path> diagrams = new LinkedHashMap<>();
+    for (final String partName: parts.keySet())
+    {
+      final String fileNamePart = baseName + "-" + fileNamePart(partName);
+      String diagramName = fileNamePart;
+      for (int i = 2; !fileNames
+        .add(diagramName.toLowerCase(Locale.ENGLISH)); i++)
+      {
+        diagramName = fileNamePart + "_" + i;
+      }
+      diagrams.put(partName, directory.resolve(diagramName + "." + extension));
+    }
+
+    final int threads = additionalConfiguration
+      .getIntegerValue(DIAGRAM_THREADS,
+                       Runtime.getRuntime().availableProcessors());
+    LOGGER.log(Level.INFO,
+               new StringFormat("Rendering %d diagrams, %d at a time",
+                                parts.size(),
+                                threads));
+
+    final ExecutorService executorService = Executors
+      .newFixedThreadPool(Math.max(1, threads));
+    try
+    {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (final Map.Entry<String, Collection<Table>> part: parts.entrySet())
+      {
+        final Catalog partCatalog = CatalogSubset.restrict(catalog,
+                                                           part.getValue());
+        final Path diagram = diagrams.get(part.getKey());
+        futures.add(executorService.submit(() -> {
+          renderDiagram(partCatalog, diagram);
+          return null;
+        }));
+      }
+      for (final Future<?> future: futures)
+      {
+        future.get();
+      }
+    }
+    catch (final Exception e)
+    {
+      throw new SchemaCrawlerException("Could not render diagrams", e);
+    }
+    finally
+    {
+      executorService.shutdownNow();
+    }
+
+    final Path indexFile = directory.resolve(baseName + ".html");
+    try
+    {
+      writeIndex(indexFile, parts, diagrams);
+    }
+    catch (final IOException e)
+    {
+      throw new SchemaCrawlerException("Could not write diagrams index", e);
+    }
+    return indexFile;
+  }
+
+  private Map<String, Collection<Table>> partition(final Catalog catalog,
+                                                  final DiagramSplit split)
+  {
+    final Map<String, Collection<Table>> parts = new LinkedHashMap<>();
+    switch (split)
+    {
+      case schema:
+        for (final Schema schema: catalog.getSchemas())
+        {
+          final Collection<Table> tables = catalog.getTables(schema);
+          if (!tables.isEmpty())
+          {
+            parts.put(schema.getFullName(), tables);
+          }
+        }
+        break;
+      case component:
+        final ForeignKeyAdjacencyIndex adjacencyIndex = ForeignKeyAdjacencyIndex
+          .adjacencyIndex(catalog);
+        final List<BitSet> components = adjacencyIndex.connectedComponents();
+        components.sort((one, other) -> Integer
+          .compare(other.cardinality(), one.cardinality()));
+        // Tables without relationships are shown together, rather than
+        // in a diagram each
+        final BitSet unrelated = new BitSet();
+        int componentNumber = 0;
+        for (final BitSet component: components)
+        {
+          if (component.cardinality() == 1)
+          {
+            unrelated.or(component);
+          }
+          else
+          {
+            componentNumber++;
+            parts.put("component-" + componentNumber,
+                      adjacencyIndex.tables(component));
+          }
+        }
+        if (!unrelated.isEmpty())
+        {
+          parts.put("unrelated", adjacencyIndex.tables(unrelated));
+        }
+        break;
+      default:
+        parts.put("catalog", catalog.getTables());
+        break;
+    }
+    return parts;
+  }
+
+  private void renderDiagram(final Catalog catalog, final Path diagram)
+    throws Exception
+  {
+    LOGGER.log(Level.FINE,
+               new StringFormat("Rendering diagram <%s>", diagram));
+
+    final OutputOptions diagramOutputOptions = OutputOptionsBuilder.builder()
+      .fromOptions(outputOptions).withOutputFile(diagram).toOptions();
+
+    final SchemaCrawlerCommand scCommand = new CommandDaisyChain(command);
+    scCommand.setSchemaCrawlerOptions(schemaCrawlerOptions);
+    scCommand.setOutputOptions(diagramOutputOptions);
+    scCommand.setAdditionalConfiguration(additionalConfiguration);
+    scCommand.setIdentifiers(identifiers);
+    scCommand.setCatalog(catalog);
+
+    scCommand.execute();
+  }
+
+  /**
+   * Finds weak associations for the whole catalog. Each diagram looks
+   * for weak associations again, among the tables that it shows, and
+   * adds them to tables that are shared between diagrams rendered
+   * concurrently. So every table is given a set of weak associations
+   * that is safe to add to concurrently, and that already has the weak
+   * associations that are found. Tables in a diagram show only weak
+   * associations to other tables in the diagram.
+   */
+  private void shareWeakAssociations(final Catalog catalog)
+  {
+    new CatalogWithAssociations(catalog);
+    for (final Table table: catalog.getTables())
+    {
+      table.setAttribute(WEAK_ASSOCIATIONS,
+                         new ConcurrentSkipListSet<>(WeakAssociationsUtility
+                           .getWeakAssociations(table)));
+    }
+  }
+
+  private void writeIndex(final Path indexFile,
+                          final Map<String, Collection<Table>> parts,
+                          final Map<String, Path> diagrams)
+    throws IOException
+  {
+    try (
+        final PrintWriter writer = new PrintWriter(Files
+          .newBufferedWriter(indexFile, UTF_8));)
+    {
+      writer.println("<!DOCTYPE html>");
+      writer.println("<html>");
+      writer.println("<head>");
+      writer.println("<meta charset=\"utf-8\">");
+      writer.println("<title>Schema Diagrams</title>");
+      writer.println("</head>");
+      writer.println("<body>");
+      writer.println("<h1>Schema Diagrams</h1>");
+      writer.println("<ul>");
+      for (final Map.Entry<String, Path> diagram: diagrams.entrySet())
+      {
+        final String partName = diagram.getKey();
+        writer
+          .println(String.format("<li><a href=\"%s\">%s</a> (%d tables)</li>",
+                                 escapeHtml(diagram.getValue().getFileName()
+                                   .toString()),
+                                 escapeHtml(partName),
+                                 parts.get(partName).size()));
+      }
+      writer.println("</ul>");
+      writer.println("</body>");
+      writer.println("</html>");
+    }
+  }
+
+}
@@ -0,0 +1,376 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.output;
+
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+import javax.sql.DataSource;
+
+import schemacrawler.schema.Column;
+import schemacrawler.schema.Table;
+import schemacrawler.schemacrawler.SchemaCrawlerException;
+import schemacrawler.utility.Identifiers;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Dumps the data in tables to CSV files, one file for each table.
+ * Several tables are dumped at a time, with each worker using its own
+ * pooled connection, and its own file channel for each table. Tables
+ * with the most rows are dumped first, if row counts are known, so that
+ * workers finish at about the same time.
+ * <p>
+ * The memory budget is shared between workers. Half of each share is
+ * the output buffer for the encoded file data, and the other half limits
+ * the fetch size, using the column sizes in the catalog to estimate the
+ * size of a row. The budget is an estimate, not a hard limit. Values
+ * can be larger than their column size, and drivers that ignore the
+ * fetch size, or read whole results into memory, are not bounded by it.
+ */
+public final class TableDataDump
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(TableDataDump.class.getName());
+
+  private static final int MIN_BUFFER_SIZE = 8 * 1024;
+  private static final int MAX_COLUMN_SIZE = 64 * 1024;
+
+  private static String csvValue(final String value)
+  {
+    if (value == null)
+    {
+      return "";
+    }
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+        && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+    {
+      return value;
+    }
+    return "\"" + value.replace("\"", "\"\"") + "\"";
+  }
+
+  private static String fileNamePart(final String name)
+  {
+    return name.replaceAll("[^A-Za-z0-9._-]", "_");
+  }
+
+  /**
+   * Table names that differ only in characters that cannot be used in
+   * file names, or in case, get a numbered suffix, so that no two tables
+   * are dumped to the same file.
+   */
+  private static Map<Table, Path> dataFiles(final Collection<Table> tables,
+                                            final Path directory)
+  {
+    final List<Table> sortedTables = new ArrayList<>(tables);
+    sortedTables.sort((one, other) -> one.getFullName()
+      .compareTo(other.getFullName()));
+
+    final Set<String> fileNames = new HashSet<>();
+    final Map<Table, Path> dataFiles = new HashMap<>();
+    for (final Table table: sortedTables)
+    {
+      final String fileNamePart = fileNamePart(table.getFullName());
+      String fileName = fileNamePart;
+      for (int i = 2; !fileNames.add(fileName.toLowerCase(Locale.ENGLISH)); i++)
+      {
+        fileName = fileNamePart + "_" + i;
+      }
+      dataFiles.put(table, directory.resolve(fileName + ".csv"));
+    }
+    return dataFiles;
+  }
+
+  private static long rowSize(final Table table)
+  {
+    long rowSize = 0;
+    for (final Column column: table.getColumns())
+    {
+      // Column sizes are in characters, which take two bytes each, and
+      // large objects are counted at the maximum column size
+      rowSize += 2L * Math.max(1, Math.min(column.getSize(), MAX_COLUMN_SIZE));
+    }
+    return Math.max(1, rowSize);
+  }
+
+  private final DataSource dataSource;
+  private final Identifiers identifiers;
+  private final int threads;
+  private final int fetchSize;
+  private final long memoryBudget;
+
+  /**
+   * Data dump for tables.
+   *
+   * @param dataSource
+   *        Pool of connections to read data with
+   * @param identifiers
+   *        Identifiers for quoting table names
+   * @param threads
+   *        Number of tables to dump concurrently
+   * @param fetchSize
+   *        Largest number of rows fetched in each round trip, or 0 to
+   *        fetch as many rows as fit in the memory budget
+   * @param memoryBudget
+   *        Memory for output buffers and fetched rows across all
+   *        workers, in bytes
+   */
+  public TableDataDump(final DataSource dataSource,
+                       final Identifiers identifiers,
+                       final int threads,
+                       final int fetchSize,
+                       final long memoryBudget)
+  {
+    this.dataSource = requireNonNull(dataSource, "No data source provided");
+    this.identifiers = requireNonNull(identifiers, "No identifiers provided");
+    this.threads = Math.max(1, threads);
+    this.fetchSize = Math.max(0, fetchSize);
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Dumps data for the provided tables. Tables that could not be dumped
+   * are not present in the returned map.
+   *
+   * @param tables
+   *        Tables to dump
+   * @param rowCounts
+   *        Known row counts, keyed by full table name, used to dump the
+   *        largest tables first
+   * @param directory
+   *        Directory for data files
+   * @return Number of rows dumped for each table
+   * @throws SchemaCrawlerException
+   *         On an exception dumping data
+   */
+  public Map<Table, Long> dump(final Collection<Table> tables,
+                               final Map<String, Long> rowCounts,
+                               final Path directory)
+    throws SchemaCrawlerException
+  {
+    final List<Table> sortedTables = new ArrayList<>(tables);
+    sortedTables.sort((one, other) -> Long
+      .compare(rowCounts.getOrDefault(other.getFullName(), 0L),
+               rowCounts.getOrDefault(one.getFullName(), 0L)));
+    final Queue<Table> pending = new ConcurrentLinkedQueue<>(sortedTables);
+    final Map<Table, Long> dumpedRows = new ConcurrentHashMap<>();
+    if (pending.isEmpty())
+    {
+      return dumpedRows;
+    }
+
+    final Map<Table, Path> dataFiles = dataFiles(sortedTables, directory);
+
+    final int workers = Math.min(threads, pending.size());
+    final long workerBudget = memoryBudget / workers / 2;
+    final int bufferSize = (int) Math
+      .max(MIN_BUFFER_SIZE, Math.min(Integer.MAX_VALUE, workerBudget));
+    LOGGER.log(Level.INFO,
+               new StringFormat("Dumping data for %d tables, %d at a time, with %d byte buffers, and %d bytes for fetched rows",
+                                pending.size(),
+                                workers,
+                                bufferSize,
+                                workerBudget));
+
+    final ExecutorService executorService = Executors
+      .newFixedThreadPool(workers);
+    try
+    {
+      final Future<?>[] futures = new Future<?>[workers];
+      for (int i = 0; i < workers; i++)
+      {
+        futures[i] = executorService.submit(() -> {
+          dump(pending, dataFiles, bufferSize, workerBudget, dumpedRows);
+          return null;
+        });
+      }
+      for (final Future<?> future: futures)
+      {
+        future.get();
+      }
+    }
+    catch (final Exception e)
+    {
+      throw new SchemaCrawlerException("Could not dump table data", e);
+    }
+    finally
+    {
+      executorService.shutdownNow();
+    }
+
+    return dumpedRows;
+  }
+
+  private void dump(final Queue<Table> pending,
+                    final Map<Table, Path> dataFiles,
+                    final int bufferSize,
+                    final long fetchBudget,
+                    final Map<Table, Long> dumpedRows)
+    throws SQLException
+  {
+    try (final Connection connection = dataSource.getConnection();)
+    {
+      Table table;
+      while ((table = pending.poll()) != null)
+      {
+        if (Thread.currentThread().isInterrupted())
+        {
+          return;
+        }
+
+        final Path dataFile = dataFiles.get(table);
+        try
+        {
+          final long rows = dump(connection,
+                                 table,
+                                 dataFile,
+                                 bufferSize,
+                                 fetchSize(table, fetchBudget));
+          dumpedRows.put(table, rows);
+        }
+        catch (final SQLException | IOException e)
+        {
+          // A table that cannot be read does not stop the dump
+          LOGGER.log(Level.WARNING,
+                     new StringFormat("Could not dump data for table <%s>",
+                                      table),
+                     e);
+        }
+      }
+    }
+  }
+
+  private long dump(final Connection connection,
+                    final Table table,
+                    final Path dataFile,
+                    final int bufferSize,
+                    final int tableFetchSize)
+    throws SQLException, IOException
+  {
+    final String sql = "SELECT * FROM " + identifiers.quoteFullName(table);
+    long rows = 0;
+    try (
+        final Statement statement = connection.createStatement();
+        final FileChannel channel = FileChannel
+          .open(dataFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        final Writer writer = Channels
+          .newWriter(channel, UTF_8.newEncoder(), bufferSize);)
+    {
+      statement.setFetchSize(tableFetchSize);
+      try (final ResultSet results = statement.executeQuery(sql);)
+      {
+        final ResultSetMetaData metaData = results.getMetaData();
+        final int columnCount = metaData.getColumnCount();
+        // Each line is written to the encoder at once, since it is
+        // not buffered for characters
+        final StringBuilder line = new StringBuilder();
+        for (int i = 1; i <= columnCount; i++)
+        {
+          if (i > 1)
+          {
+            line.append(',');
+          }
+          line.append(csvValue(metaData.getColumnLabel(i)));
+        }
+        writer.write(line.append('\n').toString());
+
+        while (results.next())
+        {
+          line.setLength(0);
+          for (int i = 1; i <= columnCount; i++)
+          {
+            if (i > 1)
+            {
+              line.append(',');
+            }
+            line.append(csvValue(results.getString(i)));
+          }
+          writer.write(line.append('\n').toString());
+          rows++;
+        }
+      }
+    }
+
+    LOGGER.log(Level.FINE,
+               new StringFormat("Dumped %d rows from table <%s>",
+                                rows,
+                                table));
+    return rows;
+  }
+
+  /**
+   * Gets the fetch size for a table, so that the estimated size of the
+   * fetched rows is within the budget. A larger fetch size is never
+   * used than the one requested.
+   */
+  private int fetchSize(final Table table, final long fetchBudget)
+  {
+    final long rowsInBudget = Math
+      .max(1, Math.min(Integer.MAX_VALUE, fetchBudget / rowSize(table)));
+    if (fetchSize > 0)
+    {
+      return (int) Math.min(fetchSize, rowsInBudget);
+    }
+    return (int) rowsInBudget;
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Level;
+
+import javax.sql.DataSource;
+
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Connection that is only borrowed from a data source when it is first
+ * used, so that commands that work from the loaded catalog alone do not
+ * make any round trips to the database. Checking whether the
+ * connection is closed, and closing it, do not borrow a connection.
+ */
+public final class LazyConnection
+  implements InvocationHandler, AutoCloseable
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(LazyConnection.class.getName());
+
+  private final DataSource dataSource;
+  private final Connection proxy;
+  private Connection connection;
+  private boolean closed;
+  private boolean used;
+
+  public LazyConnection(final DataSource dataSource)
+  {
+    this.dataSource = requireNonNull(dataSource, "No data source provided");
+    proxy = (Connection) Proxy
+      .newProxyInstance(LazyConnection.class.getClassLoader(),
+                        new Class<?>[] { Connection.class },
+                        this);
+  }
+
+  /**
+   * Returns the connection to the database, if one was borrowed.
+   */
+  @Override
+  public synchronized void close()
+    throws SQLException
+  {
+    closed = true;
+    if (connection != null)
+    {
+      connection.close();
+      connection = null;
+    }
+  }
+
+  public Connection getConnection()
+  {
+    return proxy;
+  }
+
+  @Override
+  public Object invoke(final Object proxy,
+                       final Method method,
+                       final Object[] args)
+    throws Throwable
+  {
+    switch (method.getName())
+    {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return "Lazy connection";
+      case "close":
+        close();
+        return null;
+      case "isClosed":
+        return isClosed();
+      default:
+        break;
+    }
+
+    try
+    {
+      return method.invoke(borrow(method), args);
+    }
+    catch (final InvocationTargetException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Whether a connection was borrowed from the data source.
+   *
+   * @return True if a connection was used
+   */
+  public synchronized boolean isUsed()
+  {
+    return used;
+  }
+
+  private synchronized Connection borrow(final Method method)
+    throws SQLException
+  {
+    if (closed)
+    {
+      throw new SQLException("Connection is closed");
+    }
+    if (connection == null)
+    {
+      LOGGER.log(Level.FINE,
+                 new StringFormat("Borrowing a connection for <%s>",
+                                  method.getName()));
+      connection = dataSource.getConnection();
+      used = true;
+    }
+    return connection;
+  }
+
+  private synchronized boolean isClosed()
+    throws SQLException
+  {
+    return closed || connection != null && connection.isClosed();
+  }
+
+}
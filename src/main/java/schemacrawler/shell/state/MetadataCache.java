@@ -0,0 +1,254 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Cache of raw metadata result sets, keyed by the database metadata
+ * call and its arguments, kept for the whole shell session. Only the
+ * first load of a catalog goes to the database server, and later loads
+ * with different limit or grep options are served from the cache.
+ * Results are copied into the cache as they are read, and results that
+ * are larger than the whole cache are streamed from the database
+ * server as usual. Result sets are evicted least recently used first,
+ * to keep the cache within a maximum size. The cache is cleared when
+ * the session is disconnected, or when a load asks for metadata to be
+ * refreshed, so that changes made to the database are seen.
+ */
+public final class MetadataCache
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(MetadataCache.class.getName());
+
+  public static final String METADATA_CACHE_SIZE = "schemacrawler.shell.metadata_cache.size";
+  public static final int DEFAULT_METADATA_CACHE_SIZE = 32;
+
+  private static boolean isCacheable(final Method method,
+                                     final Object[] args)
+  {
+    if (!ResultSet.class.equals(method.getReturnType()))
+    {
+      return false;
+    }
+    // Only calls with simple arguments, that can be compared by value
+    if (args != null)
+    {
+      for (final Object arg: args)
+      {
+        if (arg != null && !(arg instanceof String || arg instanceof Number
+                             || arg instanceof Boolean
+                             || arg instanceof String[]
+                             || arg instanceof int[]))
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static String key(final Method method, final Object[] args)
+  {
+    return method.getName() + Arrays.deepToString(args);
+  }
+
+  private final Map<String, ResultSetCopy> results;
+  private final long maxSize;
+  private long size;
+
+  /**
+   * Creates a metadata cache.
+   *
+   * @param maxSize
+   *        Maximum size of the cache, in bytes, or 0 to not cache
+   *        metadata
+   */
+  public MetadataCache(final long maxSize)
+  {
+    this.maxSize = maxSize;
+    results = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  public synchronized void clear()
+  {
+    results.clear();
+    size = 0;
+  }
+
+  /**
+   * Decorates database metadata, so that result sets from metadata
+   * calls are served from the cache.
+   *
+   * @param databaseMetaData
+   *        Database metadata from the driver
+   * @return Caching database metadata
+   */
+  public DatabaseMetaData decorate(final DatabaseMetaData databaseMetaData)
+  {
+    if (maxSize <= 0)
+    {
+      return databaseMetaData;
+    }
+    return (DatabaseMetaData) Proxy
+      .newProxyInstance(MetadataCache.class.getClassLoader(),
+                        new Class<?>[] { DatabaseMetaData.class },
+                        (proxy, method, args) -> {
+                          if (!isCacheable(method, args))
+                          {
+                            return invoke(databaseMetaData, method, args);
+                          }
+                          return lookup(databaseMetaData, method, args);
+                        });
+  }
+
+  private synchronized ResultSet get(final String key)
+  {
+    final ResultSetCopy result = results.get(key);
+    if (result == null)
+    {
+      return null;
+    }
+    // Each caller gets its own cursor
+    return result.toResultSet();
+  }
+
+  private Object invoke(final Object target,
+                        final Method method,
+                        final Object[] args)
+    throws Throwable
+  {
+    try
+    {
+      return method.invoke(target, args);
+    }
+    catch (final InvocationTargetException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+  private ResultSet lookup(final DatabaseMetaData databaseMetaData,
+                           final Method method,
+                           final Object[] args)
+    throws Throwable
+  {
+    final String key = key(method, args);
+    final ResultSet cachedResults = get(key);
+    if (cachedResults != null)
+    {
+      LOGGER.log(Level.FINE,
+                 new StringFormat("Using cached metadata for <%s>", key));
+      return cachedResults;
+    }
+
+    final ResultSet results = (ResultSet) invoke(databaseMetaData,
+                                                 method,
+                                                 args);
+    if (results == null)
+    {
+      return null;
+    }
+    // Results that are too large to cache are not read into memory,
+    // past the rows read so far
+    final ResultSetCopy copy;
+    try
+    {
+      copy = ResultSetCopy.copy(results, maxResultSize());
+    }
+    catch (final SQLException e)
+    {
+      results.close();
+      throw e;
+    }
+    if (!copy.isComplete())
+    {
+      LOGGER.log(Level.FINE,
+                 new StringFormat("Metadata for <%s> is too large to cache",
+                                  key));
+      return copy.toResultSet(results);
+    }
+
+    results.close();
+    put(key, copy);
+    return copy.toResultSet();
+  }
+
+  /**
+   * Each result can take up the whole cache, so that large results,
+   * such as the columns of all tables, are cached too, evicting other
+   * results if needed.
+   */
+  private long maxResultSize()
+  {
+    return maxSize;
+  }
+
+  private synchronized void put(final String key, final ResultSetCopy copy)
+  {
+    final ResultSetCopy previousResult = results.put(key, copy);
+    if (previousResult != null)
+    {
+      size = size - previousResult.getSize();
+    }
+    size = size + copy.getSize();
+
+    final Iterator<Map.Entry<String, ResultSetCopy>> iterator = results
+      .entrySet().iterator();
+    while (size > maxSize && iterator.hasNext())
+    {
+      final Map.Entry<String, ResultSetCopy> eldest = iterator.next();
+      if (eldest.getKey().equals(key))
+      {
+        continue;
+      }
+      size = size - eldest.getValue().getSize();
+      iterator.remove();
+      LOGGER.log(Level.FINE,
+                 new StringFormat("Evicted cached metadata <%s>",
+                                  eldest.getKey()));
+    }
+  }
+
+}
@@ -0,0 +1,245 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+/**
+ * Records database metadata calls, and queries run on plain
+ * statements, made on connections from a data source. Results are
+ * recorded as result set copies, along with how long each call took,
+ * including fetching all rows of results.
+ */
+public final class MetadataRecorder
+{
+
+  private static Object invoke(final Object target,
+                               final Method method,
+                               final Object[] args)
+    throws Throwable
+  {
+    try
+    {
+      return method.invoke(target, args);
+    }
+    catch (final InvocationTargetException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+  private final MetadataRecording recording = new MetadataRecording();
+
+  public MetadataRecording getRecording()
+  {
+    return recording;
+  }
+
+  /**
+   * Wraps a data source, so that calls on connections from it are
+   * recorded.
+   *
+   * @param dataSource
+   *        Data source to wrap
+   * @return Recording data source
+   */
+  public DataSource track(final DataSource dataSource)
+  {
+    requireNonNull(dataSource, "No data source provided");
+
+    return (DataSource) Proxy
+      .newProxyInstance(MetadataRecorder.class.getClassLoader(),
+                        new Class<?>[] { DataSource.class },
+                        (proxy, method, args) -> {
+                          final Object result = invoke(dataSource,
+                                                       method,
+                                                       args);
+                          if (result instanceof Connection)
+                          {
+                            return track((Connection) result);
+                          }
+                          return result;
+                        });
+  }
+
+  /**
+   * Makes a call, and records its result, or the exception that it
+   * threw. Result sets are copied, and callers read from the copy.
+   */
+  private Object record(final String key,
+                        final Object target,
+                        final Method method,
+                        final Object[] args)
+    throws Throwable
+  {
+    final long start = System.nanoTime();
+    final Object result;
+    try
+    {
+      result = invoke(target, method, args);
+    }
+    catch (final SQLException e)
+    {
+      recording.recordException(key, e, System.nanoTime() - start);
+      throw e;
+    }
+
+    if (result instanceof ResultSet)
+    {
+      final ResultSetCopy copy = ResultSetCopy.copy((ResultSet) result);
+      recording.record(key, copy, System.nanoTime() - start);
+      return copy.toResultSet();
+    }
+    if (MetadataRecording.isRecordable(result))
+    {
+      recording.record(key, result, System.nanoTime() - start);
+    }
+    return result;
+  }
+
+  private Connection track(final Connection connection)
+  {
+    return (Connection) Proxy
+      .newProxyInstance(MetadataRecorder.class.getClassLoader(),
+                        new Class<?>[] { Connection.class },
+                        (proxy, method, args) -> {
+                          final String methodName = method.getName();
+                          if ("getCatalog".equals(methodName)
+                              || "getSchema".equals(methodName))
+                          {
+                            return record(MetadataRecording
+                              .key(Connection.class, method, args),
+                                          connection,
+                                          method,
+                                          args);
+                          }
+
+                          final Object result = invoke(connection,
+                                                       method,
+                                                       args);
+                          if (result instanceof DatabaseMetaData)
+                          {
+                            return track((DatabaseMetaData) result,
+                                         (Connection) proxy);
+                          }
+                          if (result instanceof Statement
+                              && Statement.class
+                                .equals(method.getReturnType()))
+                          {
+                            return track((Statement) result);
+                          }
+                          return result;
+                        });
+  }
+
+  private DatabaseMetaData track(final DatabaseMetaData databaseMetaData,
+                                 final Connection connection)
+  {
+    final InvocationHandler handler = (proxy, method, args) -> {
+      if ("getConnection".equals(method.getName()))
+      {
+        return connection;
+      }
+      return record(MetadataRecording.key(DatabaseMetaData.class,
+                                          method,
+                                          args),
+                    databaseMetaData,
+                    method,
+                    args);
+    };
+    return (DatabaseMetaData) Proxy
+      .newProxyInstance(MetadataRecorder.class.getClassLoader(),
+                        new Class<?>[] { DatabaseMetaData.class },
+                        handler);
+  }
+
+  private Statement track(final Statement statement)
+  {
+    // Results of a query run with execute are read straight away, so
+    // that they can be recorded, and returned from getResultSet
+    final ResultSet[] currentResults = new ResultSet[1];
+    final InvocationHandler handler = (proxy, method, args) -> {
+      final String methodName = method.getName();
+      final int argCount = args == null? 0: args.length;
+      final String key = MetadataRecording.key(Statement.class, method, args);
+      if ("executeQuery".equals(methodName) && argCount == 1)
+      {
+        return record(key, statement, method, args);
+      }
+      if ("execute".equals(methodName) && argCount == 1)
+      {
+        final long start = System.nanoTime();
+        final boolean hasResults;
+        try
+        {
+          hasResults = statement.execute((String) args[0]);
+        }
+        catch (final SQLException e)
+        {
+          recording.recordException(key, e, System.nanoTime() - start);
+          throw e;
+        }
+        if (!hasResults)
+        {
+          currentResults[0] = null;
+          recording.record(key, null, System.nanoTime() - start);
+          return false;
+        }
+        final ResultSetCopy copy = ResultSetCopy
+          .copy(statement.getResultSet());
+        recording.record(key, copy, System.nanoTime() - start);
+        currentResults[0] = copy.toResultSet();
+        return true;
+      }
+      if ("getResultSet".equals(methodName) && currentResults[0] != null)
+      {
+        return currentResults[0];
+      }
+      return invoke(statement, method, args);
+    };
+    return (Statement) Proxy
+      .newProxyInstance(MetadataRecorder.class.getClassLoader(),
+                        new Class<?>[] { Statement.class },
+                        handler);
+  }
+
+}
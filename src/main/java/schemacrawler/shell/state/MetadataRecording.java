@@ -0,0 +1,344 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Database metadata calls and queries made while loading a catalog,
+ * with their results and how long each call took. Recordings are saved
+ * as compressed files, and replayed by the replay driver.
+ */
+public final class MetadataRecording
+  implements Serializable
+{
+
+  private static final long serialVersionUID = -2410963617394120847L;
+
+  /**
+   * Result of a recorded call, which is a result set copy, a simple
+   * value, or an exception, with the time that the call took.
+   */
+  public static final class RecordedCall
+    implements Serializable
+  {
+
+    private static final long serialVersionUID = 4193867409137256211L;
+
+    private final Object result;
+    private final String exceptionMessage;
+    private final String sqlState;
+    private final int errorCode;
+    private final long nanos;
+
+    private RecordedCall(final Object result,
+                         final SQLException exception,
+                         final long nanos)
+    {
+      this.result = result;
+      if (exception == null)
+      {
+        exceptionMessage = null;
+        sqlState = null;
+        errorCode = 0;
+      }
+      else
+      {
+        exceptionMessage = String.valueOf(exception.getMessage());
+        sqlState = exception.getSQLState();
+        errorCode = exception.getErrorCode();
+      }
+      this.nanos = nanos;
+    }
+
+    /**
+     * Gets a new exception, like the one the call threw.
+     *
+     * @return Exception, or null if the call did not throw one
+     */
+    public SQLException getException()
+    {
+      if (exceptionMessage == null)
+      {
+        return null;
+      }
+      return new SQLException(exceptionMessage, sqlState, errorCode);
+    }
+
+    public long getNanos()
+    {
+      return nanos;
+    }
+
+    public Object getResult()
+    {
+      return result;
+    }
+
+  }
+
+  /**
+   * Recordings hold only these types, and no other types are read from
+   * a recording file. Arrays of these types, and of primitives, are
+   * allowed too.
+   */
+  private static final Set<String> ALLOWED_CLASSES = new HashSet<>(Arrays
+    .asList(MetadataRecording.class.getName(),
+            RecordedCall.class.getName(),
+            ResultSetCopy.class.getName(),
+            ArrayList.class.getName(),
+            HashMap.class.getName(),
+            LinkedHashMap.class.getName(),
+            Object.class.getName(),
+            String.class.getName(),
+            Boolean.class.getName(),
+            Character.class.getName(),
+            Number.class.getName(),
+            Byte.class.getName(),
+            Short.class.getName(),
+            Integer.class.getName(),
+            Long.class.getName(),
+            Float.class.getName(),
+            Double.class.getName(),
+            BigDecimal.class.getName(),
+            BigInteger.class.getName(),
+            java.util.Date.class.getName(),
+            Date.class.getName(),
+            Time.class.getName(),
+            Timestamp.class.getName()));
+
+  /**
+   * Reads only allowed classes, so that a recording file cannot be used
+   * to create objects of any other class.
+   */
+  private static final class RecordingInputStream
+    extends ObjectInputStream
+  {
+
+    private RecordingInputStream(final InputStream in)
+      throws IOException
+    {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass objectStreamClass)
+      throws IOException, ClassNotFoundException
+    {
+      String className = objectStreamClass.getName();
+      while (className.startsWith("["))
+      {
+        className = className.substring(1);
+      }
+      if (className.startsWith("L") && className.endsWith(";"))
+      {
+        className = className.substring(1, className.length() - 1);
+      }
+      else if (className.length() == 1)
+      {
+        // Array of primitives
+        return super.resolveClass(objectStreamClass);
+      }
+      if (!ALLOWED_CLASSES.contains(className))
+      {
+        throw new InvalidClassException(objectStreamClass.getName(),
+                                        "Not allowed in a metadata recording");
+      }
+      return super.resolveClass(objectStreamClass);
+    }
+
+  }
+
+  /**
+   * Checks whether a value can be recorded.
+   *
+   * @param value
+   *        Value returned by a call
+   * @return True if the value can be saved in a recording
+   */
+  public static boolean isRecordable(final Object value)
+  {
+    return value == null || value instanceof ResultSetCopy
+           || ALLOWED_CLASSES.contains(value.getClass().getName());
+  }
+
+  /**
+   * Creates a key for a call, from the type of object it was made on,
+   * the method name and the arguments.
+   *
+   * @param type
+   *        Type of object, such as DatabaseMetaData
+   * @param method
+   *        Method that was called
+   * @param args
+   *        Arguments to the call
+   * @return Call key
+   */
+  public static String key(final Class<?> type,
+                           final Method method,
+                           final Object[] args)
+  {
+    return type.getSimpleName() + "." + method.getName()
+           + Arrays.deepToString(args);
+  }
+
+  /**
+   * Loads a recording from a file.
+   *
+   * @param recordingFile
+   *        Recording file
+   * @return Recording
+   * @throws IOException
+   *         On an exception reading the file
+   */
+  public static MetadataRecording load(final Path recordingFile)
+    throws IOException
+  {
+    try (
+        final ObjectInputStream in = new RecordingInputStream(new GZIPInputStream(Files
+          .newInputStream(recordingFile)));)
+    {
+      return (MetadataRecording) in.readObject();
+    }
+    catch (final ClassNotFoundException e)
+    {
+      throw new IOException("Cannot read recording " + recordingFile, e);
+    }
+  }
+
+  private final Map<String, RecordedCall> calls = new LinkedHashMap<>();
+
+  /**
+   * Looks up a recorded call.
+   *
+   * @param key
+   *        Call key
+   * @return Recorded call, or null if the call was not recorded
+   */
+  public synchronized RecordedCall lookup(final String key)
+  {
+    return calls.get(key);
+  }
+
+  /**
+   * Records a call. Only the first of repeated calls is recorded, since
+   * later calls may be served from caches.
+   *
+   * @param key
+   *        Call key
+   * @param result
+   *        Result set copy, or a simple value that is recordable
+   * @param nanos
+   *        Time the call took, in nanoseconds
+   */
+  public synchronized void record(final String key,
+                                  final Object result,
+                                  final long nanos)
+  {
+    requireNonNull(key, "No key provided");
+    if (!isRecordable(result))
+    {
+      throw new IllegalArgumentException("Cannot record "
+                                         + result.getClass().getName());
+    }
+    calls.putIfAbsent(key, new RecordedCall(result, null, nanos));
+  }
+
+  /**
+   * Records a call that threw an exception. Only the message, SQL state
+   * and error code of the exception are recorded.
+   *
+   * @param key
+   *        Call key
+   * @param exception
+   *        Exception thrown by the call
+   * @param nanos
+   *        Time the call took, in nanoseconds
+   */
+  public synchronized void recordException(final String key,
+                                           final SQLException exception,
+                                           final long nanos)
+  {
+    requireNonNull(key, "No key provided");
+    requireNonNull(exception, "No exception provided");
+    calls.putIfAbsent(key, new RecordedCall(null, exception, nanos));
+  }
+
+  /**
+   * Saves the recording to a compressed file.
+   *
+   * @param recordingFile
+   *        Recording file
+   * @throws IOException
+   *         On an exception writing the file
+   */
+  public synchronized void save(final Path recordingFile)
+    throws IOException
+  {
+    try (
+        final ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(Files
+          .newOutputStream(recordingFile)));)
+    {
+      out.writeObject(this);
+    }
+  }
+
+  public synchronized int size()
+  {
+    return calls.size();
+  }
+
+}
@@ -0,0 +1,360 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+import javax.sql.DataSource;
+
+import org.jline.terminal.Terminal;
+import org.jline.terminal.Terminal.Signal;
+import org.jline.terminal.Terminal.SignalHandler;
+
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * Runs a long database operation so that it can be cancelled, either
+ * with Ctrl-C, or when an overall timeout expires. Connections are
+ * tracked, so that statements can be given a query timeout, and
+ * statements that are running can be cancelled. Once cancelled,
+ * further metadata calls and statements fail, so that the operation
+ * stops promptly. Connections that are still open when the operation
+ * is given up on are closed.
+ */
+public final class QueryCanceller
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(QueryCanceller.class.getName());
+
+  private static final long POLL_MILLIS = 200;
+  private static final long GRACE_MILLIS = 10_000;
+
+  private static Object invoke(final Object target,
+                               final Method method,
+                               final Object[] args)
+    throws Throwable
+  {
+    try
+    {
+      return method.invoke(target, args);
+    }
+    catch (final InvocationTargetException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+  private final int queryTimeout;
+  private final Set<Connection> connections;
+  private final Set<Statement> statements;
+  private volatile boolean cancelled;
+
+  /**
+   * Creates a canceller.
+   *
+   * @param queryTimeout
+   *        Timeout for each statement, in seconds, or 0 for no timeout
+   */
+  public QueryCanceller(final int queryTimeout)
+  {
+    this.queryTimeout = queryTimeout;
+    connections = ConcurrentHashMap.newKeySet();
+    statements = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Cancels all running statements, and fails any further database
+   * calls.
+   */
+  public void cancel()
+  {
+    cancelled = true;
+    LOGGER.log(Level.INFO,
+               new StringFormat("Cancelling %d running statements",
+                                statements.size()));
+    for (final Statement statement: statements)
+    {
+      try
+      {
+        statement.cancel();
+      }
+      catch (final SQLException e)
+      {
+        LOGGER.log(Level.FINE, e.getMessage(), e);
+      }
+    }
+  }
+
+  public boolean isCancelled()
+  {
+    return cancelled;
+  }
+
+  /**
+   * Runs an operation on another thread, and waits for it to complete.
+   * The operation is cancelled when the timeout expires, or on Ctrl-C.
+   * After cancellation, the operation is given some time to stop, and
+   * return any partial results.
+   *
+   * @param operation
+   *        Operation to run, which should use tracked data sources
+   * @param timeout
+   *        Overall timeout, in seconds, or 0 for no timeout
+   * @param terminal
+   *        Terminal to handle Ctrl-C on, or null
+   * @return Result of the operation, or null if it was cancelled before
+   *         it could return a result
+   * @throws Exception
+   *         On an exception from an operation that was not cancelled
+   */
+  public <T> T run(final Callable<T> operation,
+                   final int timeout,
+                   final Terminal terminal)
+    throws Exception
+  {
+    requireNonNull(operation, "No operation provided");
+
+    final ExecutorService executorService = Executors
+      .newSingleThreadExecutor();
+    SignalHandler previousHandler = null;
+    if (terminal != null)
+    {
+      previousHandler = terminal.handle(Signal.INT, signal -> cancel());
+    }
+    try
+    {
+      final Future<T> future = executorService.submit(operation);
+      final long start = System.currentTimeMillis();
+      long cancelledAt = 0;
+      while (true)
+      {
+        try
+        {
+          return future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (final TimeoutException e)
+        {
+          final long now = System.currentTimeMillis();
+          if (!cancelled && timeout > 0 && now - start > timeout * 1000L)
+          {
+            LOGGER.log(Level.INFO,
+                       new StringFormat("Timed out after %d seconds",
+                                        timeout));
+            cancel();
+          }
+          if (cancelled && cancelledAt == 0)
+          {
+            cancelledAt = now;
+          }
+          // Give up on operations that are stuck in calls that cannot
+          // be cancelled
+          if (cancelled && now - cancelledAt > GRACE_MILLIS)
+          {
+            future.cancel(true);
+            closeConnections();
+            return null;
+          }
+        }
+        catch (final ExecutionException e)
+        {
+          if (cancelled)
+          {
+            LOGGER.log(Level.FINE, e.getMessage(), e.getCause());
+            return null;
+          }
+          final Throwable cause = e.getCause();
+          if (cause instanceof Exception)
+          {
+            throw (Exception) cause;
+          }
+          throw e;
+        }
+      }
+    }
+    finally
+    {
+      if (terminal != null && previousHandler != null)
+      {
+        terminal.handle(Signal.INT, previousHandler);
+      }
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Wraps a data source, so that connections from it are tracked.
+   *
+   * @param dataSource
+   *        Data source to wrap
+   * @return Tracked data source
+   */
+  public DataSource track(final DataSource dataSource)
+  {
+    requireNonNull(dataSource, "No data source provided");
+
+    return (DataSource) Proxy
+      .newProxyInstance(QueryCanceller.class.getClassLoader(),
+                        new Class<?>[] { DataSource.class },
+                        (proxy, method, args) -> {
+                          final Object result = invoke(dataSource,
+                                                       method,
+                                                       args);
+                          if (result instanceof Connection)
+                          {
+                            checkCancelled();
+                            return track((Connection) result);
+                          }
+                          return result;
+                        });
+  }
+
+  private void closeConnections()
+  {
+    LOGGER.log(Level.INFO,
+               new StringFormat("Closing %d connections",
+                                connections.size()));
+    for (final Connection connection: connections)
+    {
+      try
+      {
+        connection.close();
+      }
+      catch (final SQLException e)
+      {
+        LOGGER.log(Level.FINE, e.getMessage(), e);
+      }
+    }
+    connections.clear();
+  }
+
+  private void checkCancelled()
+    throws SQLException
+  {
+    if (cancelled)
+    {
+      throw new SQLException("Cancelled");
+    }
+  }
+
+  private Connection track(final Connection connection)
+  {
+    connections.add(connection);
+    return (Connection) Proxy
+      .newProxyInstance(QueryCanceller.class.getClassLoader(),
+                        new Class<?>[] { Connection.class },
+                        (proxy, method, args) -> {
+                          if ("close".equals(method.getName()))
+                          {
+                            connections.remove(connection);
+                          }
+                          final Object result = invoke(connection,
+                                                       method,
+                                                       args);
+                          if (result instanceof Statement)
+                          {
+                            checkCancelled();
+                            return track((Statement) result,
+                                         method.getReturnType());
+                          }
+                          if (result instanceof DatabaseMetaData)
+                          {
+                            return track((DatabaseMetaData) result,
+                                         (Connection) proxy);
+                          }
+                          return result;
+                        });
+  }
+
+  private DatabaseMetaData track(final DatabaseMetaData databaseMetaData,
+                                 final Connection connection)
+  {
+    final InvocationHandler handler = (proxy, method, args) -> {
+      if ("getConnection".equals(method.getName()))
+      {
+        return connection;
+      }
+      checkCancelled();
+      return invoke(databaseMetaData, method, args);
+    };
+    return (DatabaseMetaData) Proxy
+      .newProxyInstance(QueryCanceller.class.getClassLoader(),
+                        new Class<?>[] { DatabaseMetaData.class },
+                        handler);
+  }
+
+  private Statement track(final Statement statement,
+                          final Class<?> statementType)
+    throws SQLException
+  {
+    if (queryTimeout > 0)
+    {
+      statement.setQueryTimeout(queryTimeout);
+    }
+    statements.add(statement);
+
+    final InvocationHandler handler = (proxy, method, args) -> {
+      if ("close".equals(method.getName()))
+      {
+        statements.remove(statement);
+      }
+      else if (method.getName().startsWith("execute"))
+      {
+        checkCancelled();
+      }
+      return invoke(statement, method, args);
+    };
+    return (Statement) Proxy
+      .newProxyInstance(QueryCanceller.class.getClassLoader(),
+                        new Class<?>[] { statementType },
+                        handler);
+  }
+
+}
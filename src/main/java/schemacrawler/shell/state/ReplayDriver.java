@@ -0,0 +1,392 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import schemacrawler.shell.state.MetadataRecording.RecordedCall;
+import sf.util.SchemaCrawlerLogger;
+import sf.util.StringFormat;
+
+/**
+ * JDBC driver that replays a metadata recording, so that a catalog can
+ * be loaded without access to the database it was recorded from. The
+ * connection URL is the recording file, prefixed with
+ * "jdbc:schemacrawler:replay:", and recorded call latencies are
+ * simulated if the URL ends with "?latency=true". Calls that were not
+ * recorded return empty values, except for calls that return results,
+ * which fail. The driver is not registered with the driver manager, and
+ * is only used by connections that are made to a replay URL.
+ */
+public final class ReplayDriver
+  implements Driver
+{
+
+  private static final SchemaCrawlerLogger LOGGER = SchemaCrawlerLogger
+    .getLogger(ReplayDriver.class.getName());
+
+  public static final String URL_PREFIX = "jdbc:schemacrawler:replay:";
+  private static final String LATENCY = "latency";
+
+  // The last recording that was loaded is shared by all connections in
+  // a pool, and is reloaded only if the recording file changes
+  private static final Map<String, MetadataRecording> recordings = new HashMap<>();
+
+  /**
+   * Replays a recording for a single connection.
+   */
+  private static final class Replay
+  {
+
+    private final MetadataRecording recording;
+    private final boolean simulateLatency;
+    private boolean closed;
+    private Connection connection;
+
+    private Replay(final MetadataRecording recording,
+                   final boolean simulateLatency)
+    {
+      this.recording = recording;
+      this.simulateLatency = simulateLatency;
+    }
+
+    private Connection connection()
+    {
+      final InvocationHandler handler = (proxy, method, args) -> {
+        if (Object.class.equals(method.getDeclaringClass()))
+        {
+          return objectMethod(proxy, method, args, "Replay connection");
+        }
+        switch (method.getName())
+        {
+          case "close":
+            closed = true;
+            return null;
+          case "isClosed":
+            return closed;
+          case "isValid":
+            return !closed;
+          case "getMetaData":
+            return databaseMetaData();
+          case "createStatement":
+            return statement();
+          case "prepareStatement":
+          case "prepareCall":
+            throw new SQLFeatureNotSupportedException("Prepared statements are not replayed");
+          case "getCatalog":
+          case "getSchema":
+            return replay(MetadataRecording.key(Connection.class,
+                                                method,
+                                                args),
+                          method.getReturnType());
+          case "isWrapperFor":
+            return false;
+          case "unwrap":
+            throw new SQLException("Not a wrapper");
+          default:
+            return defaultValue(method.getReturnType());
+        }
+      };
+      connection = (Connection) Proxy
+        .newProxyInstance(ReplayDriver.class.getClassLoader(),
+                          new Class<?>[] { Connection.class },
+                          handler);
+      return connection;
+    }
+
+    private DatabaseMetaData databaseMetaData()
+    {
+      final InvocationHandler handler = (proxy, method, args) -> {
+        if (Object.class.equals(method.getDeclaringClass()))
+        {
+          return objectMethod(proxy, method, args, "Replay metadata");
+        }
+        switch (method.getName())
+        {
+          case "getConnection":
+            return connection;
+          case "isWrapperFor":
+            return false;
+          case "unwrap":
+            throw new SQLException("Not a wrapper");
+          default:
+            return replay(MetadataRecording.key(DatabaseMetaData.class,
+                                                method,
+                                                args),
+                          method.getReturnType());
+        }
+      };
+      return (DatabaseMetaData) Proxy
+        .newProxyInstance(ReplayDriver.class.getClassLoader(),
+                          new Class<?>[] { DatabaseMetaData.class },
+                          handler);
+    }
+
+    private Object replay(final String key, final Class<?> returnType)
+      throws SQLException
+    {
+      final RecordedCall recordedCall = recording.lookup(key);
+      if (recordedCall == null)
+      {
+        if (ResultSet.class.equals(returnType))
+        {
+          throw new SQLException("No recorded results for " + key);
+        }
+        return defaultValue(returnType);
+      }
+
+      if (simulateLatency)
+      {
+        try
+        {
+          final long nanos = recordedCall.getNanos();
+          Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+        }
+        catch (final InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted", e);
+        }
+      }
+
+      final SQLException exception = recordedCall.getException();
+      if (exception != null)
+      {
+        throw exception;
+      }
+      final Object result = recordedCall.getResult();
+      if (result instanceof ResultSetCopy)
+      {
+        return ((ResultSetCopy) result).toResultSet();
+      }
+      return result;
+    }
+
+    private Statement statement()
+    {
+      final ResultSet[] currentResults = new ResultSet[1];
+      final InvocationHandler handler = (proxy, method, args) -> {
+        if (Object.class.equals(method.getDeclaringClass()))
+        {
+          return objectMethod(proxy, method, args, "Replay statement");
+        }
+        final String key = MetadataRecording.key(Statement.class,
+                                                 method,
+                                                 args);
+        switch (method.getName())
+        {
+          case "executeQuery":
+            currentResults[0] = (ResultSet) replay(key, ResultSet.class);
+            return currentResults[0];
+          case "execute":
+            currentResults[0] = (ResultSet) replay(key, ResultSet.class);
+            return currentResults[0] != null;
+          case "getResultSet":
+            return currentResults[0];
+          case "getUpdateCount":
+            return -1;
+          case "getConnection":
+            return connection;
+          case "isWrapperFor":
+            return false;
+          case "unwrap":
+            throw new SQLException("Not a wrapper");
+          default:
+            return defaultValue(method.getReturnType());
+        }
+      };
+      return (Statement) Proxy
+        .newProxyInstance(ReplayDriver.class.getClassLoader(),
+                          new Class<?>[] { Statement.class },
+                          handler);
+    }
+
+  }
+
+  /**
+   * Drops the loaded recording, when the shell disconnects.
+   */
+  public static void clearRecordings()
+  {
+    synchronized (recordings)
+    {
+      recordings.clear();
+    }
+  }
+
+  private static Object defaultValue(final Class<?> type)
+  {
+    if (!type.isPrimitive() || void.class.equals(type))
+    {
+      return null;
+    }
+    return Array.get(Array.newInstance(type, 1), 0);
+  }
+
+  private static MetadataRecording loadRecording(final Path recordingFile)
+    throws SQLException
+  {
+    try
+    {
+      final String recordingKey = recordingFile.toAbsolutePath() + "@"
+                                  + Files.getLastModifiedTime(recordingFile)
+                                    .toMillis();
+      synchronized (recordings)
+      {
+        MetadataRecording recording = recordings.get(recordingKey);
+        if (recording == null)
+        {
+          LOGGER.log(Level.INFO,
+                     new StringFormat("Loading metadata recording <%s>",
+                                      recordingFile));
+          recording = MetadataRecording.load(recordingFile);
+          // Only one recording is kept
+          recordings.clear();
+          recordings.put(recordingKey, recording);
+        }
+        return recording;
+      }
+    }
+    catch (final IOException e)
+    {
+      throw new SQLException("Cannot load metadata recording "
+                             + recordingFile, e);
+    }
+  }
+
+  /**
+   * Handles methods declared on Object, which proxies need to answer
+   * themselves, so that connections can be pooled.
+   */
+  private static Object objectMethod(final Object proxy,
+                                     final Method method,
+                                     final Object[] args,
+                                     final String description)
+  {
+    switch (method.getName())
+    {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      default:
+        return description;
+    }
+  }
+
+  @Override
+  public boolean acceptsURL(final String url)
+  {
+    return url != null && url.startsWith(URL_PREFIX);
+  }
+
+  @Override
+  public Connection connect(final String url, final Properties info)
+    throws SQLException
+  {
+    if (!acceptsURL(url))
+    {
+      return null;
+    }
+
+    String recordingFile = url.substring(URL_PREFIX.length());
+    boolean simulateLatency = info != null
+                              && Boolean.parseBoolean(info
+                                .getProperty(LATENCY));
+    final int queryStart = recordingFile.indexOf('?');
+    if (queryStart >= 0)
+    {
+      simulateLatency = simulateLatency || recordingFile
+        .substring(queryStart + 1).equalsIgnoreCase(LATENCY + "=true");
+      recordingFile = recordingFile.substring(0, queryStart);
+    }
+
+    final MetadataRecording recording = loadRecording(Paths
+      .get(recordingFile));
+    return new Replay(recording, simulateLatency).connection();
+  }
+
+  @Override
+  public int getMajorVersion()
+  {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion()
+  {
+    return 0;
+  }
+
+  @Override
+  public Logger getParentLogger()
+    throws SQLFeatureNotSupportedException
+  {
+    throw new SQLFeatureNotSupportedException("No parent logger");
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(final String url,
+                                              final Properties info)
+  {
+    final DriverPropertyInfo latency = new DriverPropertyInfo(LATENCY,
+                                                              "false");
+    latency.description = "Whether to simulate recorded call latencies";
+    latency.choices = new String[] { "true", "false" };
+    return new DriverPropertyInfo[] { latency };
+  }
+
+  @Override
+  public boolean jdbcCompliant()
+  {
+    return false;
+  }
+
+}
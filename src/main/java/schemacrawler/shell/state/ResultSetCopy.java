@@ -0,0 +1,574 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Copy of the rows of a result set, held in memory. Copies are read
+ * into plain Java values, which can be serialized, and can be read any
+ * number of times as new result sets, each with its own cursor. A copy
+ * can be limited in size, in which case rows past the limit are not
+ * copied, and are instead read from the original result set.
+ */
+public final class ResultSetCopy
+  implements Serializable
+{
+
+  private static final long serialVersionUID = 6820334906167359187L;
+
+  private static final Set<Class<?>> SIMPLE_VALUE_TYPES = new HashSet<>(Arrays
+    .asList(String.class,
+            Boolean.class,
+            Byte.class,
+            Short.class,
+            Integer.class,
+            Long.class,
+            Float.class,
+            Double.class,
+            BigDecimal.class,
+            BigInteger.class,
+            Date.class,
+            Time.class,
+            Timestamp.class,
+            byte[].class));
+
+  /**
+   * Reads a result set, as a result set over a copy of its rows, or
+   * over the copied rows followed by the rest of the original result
+   * set.
+   */
+  private final class RowsHandler
+    implements InvocationHandler
+  {
+
+    private final ResultSet remainingResults;
+    private int row = -1;
+    private boolean readingRemainingResults;
+    private boolean wasNull;
+    private boolean closed;
+
+    private RowsHandler(final ResultSet remainingResults)
+    {
+      this.remainingResults = remainingResults;
+    }
+
+    @Override
+    public Object invoke(final Object proxy,
+                         final Method method,
+                         final Object[] args)
+      throws Throwable
+    {
+      final String methodName = method.getName();
+      final int argCount = args == null? 0: args.length;
+
+      if (Object.class.equals(method.getDeclaringClass()))
+      {
+        switch (methodName)
+        {
+          case "equals":
+            return proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          default:
+            return "Result set copy";
+        }
+      }
+
+      switch (methodName)
+      {
+        case "close":
+          closed = true;
+          if (remainingResults != null)
+          {
+            remainingResults.close();
+          }
+          return null;
+        case "isClosed":
+          return closed;
+        case "next":
+          return next();
+        case "getMetaData":
+          return metaData();
+        case "findColumn":
+          return findColumn((String) args[0]);
+        case "getType":
+          return ResultSet.TYPE_FORWARD_ONLY;
+        case "getConcurrency":
+          return ResultSet.CONCUR_READ_ONLY;
+        case "getFetchDirection":
+          return ResultSet.FETCH_FORWARD;
+        case "getFetchSize":
+        case "getRow":
+          return 0;
+        case "setFetchSize":
+        case "setFetchDirection":
+        case "clearWarnings":
+          return null;
+        case "getWarnings":
+        case "getStatement":
+          return null;
+        case "isWrapperFor":
+          return false;
+        case "unwrap":
+          throw new SQLException("Not a wrapper");
+        default:
+          break;
+      }
+
+      if (methodName.startsWith("get") && argCount >= 1)
+      {
+        if (readingRemainingResults)
+        {
+          return invokeRemaining(method, args);
+        }
+        final int column;
+        if (args[0] instanceof String)
+        {
+          column = findColumn((String) args[0]);
+        }
+        else
+        {
+          column = (Integer) args[0];
+        }
+        return get(method, column, argCount > 1? args[1]: null);
+      }
+      if ("wasNull".equals(methodName))
+      {
+        if (readingRemainingResults)
+        {
+          return remainingResults.wasNull();
+        }
+        return wasNull;
+      }
+
+      throw new SQLFeatureNotSupportedException("Result set copies do not support "
+                                                + methodName);
+    }
+
+    private Object get(final Method method,
+                       final int column,
+                       final Object type)
+      throws SQLException
+    {
+      final String methodName = method.getName();
+      if (closed)
+      {
+        throw new SQLException("Result set is closed");
+      }
+      if (row < 0 || row >= rows.size())
+      {
+        throw new SQLException("No current row");
+      }
+      if (column < 1 || column > columnLabels.length)
+      {
+        throw new SQLException("Invalid column index " + column);
+      }
+
+      final Object value = rows.get(row)[column - 1];
+      wasNull = value == null;
+      switch (methodName)
+      {
+        case "getObject":
+          if (type instanceof Class)
+          {
+            final Class<?> valueType = (Class<?>) type;
+            if (value == null || valueType.isInstance(value))
+            {
+              return value;
+            }
+            if (String.class.equals(valueType))
+            {
+              return String.valueOf(value);
+            }
+            throw new SQLException("Cannot convert " + value + " to "
+                                   + valueType.getName());
+          }
+          return value;
+        case "getString":
+        case "getNString":
+          return value == null? null: String.valueOf(value);
+        case "getBoolean":
+          return toBoolean(value);
+        case "getByte":
+          return toNumber(value).byteValue();
+        case "getShort":
+          return toNumber(value).shortValue();
+        case "getInt":
+          return toNumber(value).intValue();
+        case "getLong":
+          return toNumber(value).longValue();
+        case "getFloat":
+          return toNumber(value).floatValue();
+        case "getDouble":
+          return toNumber(value).doubleValue();
+        case "getBigDecimal":
+          if (value == null || value instanceof BigDecimal)
+          {
+            return value;
+          }
+          return new BigDecimal(String.valueOf(value).trim());
+        default:
+          if (value == null || method.getReturnType().isInstance(value))
+          {
+            return value;
+          }
+          throw new SQLFeatureNotSupportedException("Result set copies do not support "
+                                                    + methodName);
+      }
+    }
+
+    private Object invokeRemaining(final Method method, final Object[] args)
+      throws Throwable
+    {
+      try
+      {
+        return method.invoke(remainingResults, args);
+      }
+      catch (final InvocationTargetException e)
+      {
+        throw e.getCause();
+      }
+    }
+
+    private ResultSetMetaData metaData()
+      throws SQLException
+    {
+      if (remainingResults != null)
+      {
+        return remainingResults.getMetaData();
+      }
+      final InvocationHandler handler = (proxy, method, args) -> {
+        final String methodName = method.getName();
+        if (Object.class.equals(method.getDeclaringClass()))
+        {
+          switch (methodName)
+          {
+            case "equals":
+              return proxy == args[0];
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            default:
+              return "Result set copy metadata";
+          }
+        }
+        if ("getColumnCount".equals(methodName))
+        {
+          return columnLabels.length;
+        }
+        if (args == null || !(args[0] instanceof Integer))
+        {
+          throw new SQLFeatureNotSupportedException("Result set copies do not support "
+                                                    + methodName);
+        }
+        final int column = (Integer) args[0] - 1;
+        switch (methodName)
+        {
+          case "getColumnLabel":
+            return columnLabels[column];
+          case "getColumnName":
+            return columnNames[column];
+          case "getColumnType":
+            return columnTypes[column];
+          case "getColumnTypeName":
+            return columnTypeNames[column];
+          case "isNullable":
+            return ResultSetMetaData.columnNullableUnknown;
+          default:
+            throw new SQLFeatureNotSupportedException("Result set copies do not support "
+                                                      + methodName);
+        }
+      };
+      return (ResultSetMetaData) Proxy
+        .newProxyInstance(ResultSetCopy.class.getClassLoader(),
+                          new Class<?>[] { ResultSetMetaData.class },
+                          handler);
+    }
+
+    private boolean next()
+      throws SQLException
+    {
+      if (closed)
+      {
+        throw new SQLException("Result set is closed");
+      }
+      if (readingRemainingResults)
+      {
+        return remainingResults.next();
+      }
+      if (row + 1 < rows.size())
+      {
+        row++;
+        return true;
+      }
+      row = rows.size();
+      if (remainingResults != null)
+      {
+        readingRemainingResults = true;
+        return remainingResults.next();
+      }
+      return false;
+    }
+
+  }
+
+  /**
+   * Copies all rows of a result set, and closes it.
+   *
+   * @param results
+   *        Result set to copy
+   * @return Copy of the result set
+   * @throws SQLException
+   *         On an exception reading the result set
+   */
+  public static ResultSetCopy copy(final ResultSet results)
+    throws SQLException
+  {
+    try (final ResultSet resultSet = results;)
+    {
+      return new ResultSetCopy(resultSet, Long.MAX_VALUE);
+    }
+  }
+
+  /**
+   * Copies rows of a result set, up to an approximate size. The result
+   * set is left open, so that rows that were not copied can still be
+   * read from it.
+   *
+   * @param results
+   *        Result set to copy
+   * @param maxSize
+   *        Approximate maximum size of the copy, in bytes
+   * @return Copy of the result set, which may be incomplete
+   * @throws SQLException
+   *         On an exception reading the result set
+   */
+  public static ResultSetCopy copy(final ResultSet results,
+                                   final long maxSize)
+    throws SQLException
+  {
+    return new ResultSetCopy(results, maxSize);
+  }
+
+  private static boolean toBoolean(final Object value)
+    throws SQLException
+  {
+    if (value == null)
+    {
+      return false;
+    }
+    if (value instanceof Boolean)
+    {
+      return (Boolean) value;
+    }
+    if (value instanceof Number)
+    {
+      return ((Number) value).intValue() != 0;
+    }
+    final String stringValue = String.valueOf(value).trim();
+    return "true".equalsIgnoreCase(stringValue) || "1".equals(stringValue)
+           || "y".equalsIgnoreCase(stringValue)
+           || "yes".equalsIgnoreCase(stringValue);
+  }
+
+  private static Number toNumber(final Object value)
+    throws SQLException
+  {
+    if (value == null)
+    {
+      return 0;
+    }
+    if (value instanceof Number)
+    {
+      return (Number) value;
+    }
+    if (value instanceof Boolean)
+    {
+      return (Boolean) value? 1: 0;
+    }
+    try
+    {
+      return new BigDecimal(String.valueOf(value).trim());
+    }
+    catch (final NumberFormatException e)
+    {
+      throw new SQLException("Not a number, " + value, e);
+    }
+  }
+
+  private final String[] columnLabels;
+  private final String[] columnNames;
+  private final int[] columnTypes;
+  private final String[] columnTypeNames;
+  private final List<Object[]> rows;
+  private final boolean complete;
+  private final long size;
+
+  private ResultSetCopy(final ResultSet results, final long maxSize)
+    throws SQLException
+  {
+    final ResultSetMetaData metaData = results.getMetaData();
+    final int columnCount = metaData.getColumnCount();
+    columnLabels = new String[columnCount];
+    columnNames = new String[columnCount];
+    columnTypes = new int[columnCount];
+    columnTypeNames = new String[columnCount];
+    for (int i = 0; i < columnCount; i++)
+    {
+      columnLabels[i] = metaData.getColumnLabel(i + 1);
+      columnNames[i] = metaData.getColumnName(i + 1);
+      columnTypes[i] = metaData.getColumnType(i + 1);
+      columnTypeNames[i] = metaData.getColumnTypeName(i + 1);
+    }
+
+    rows = new ArrayList<>();
+    long rowsSize = 0;
+    boolean allRows = true;
+    while (rowsSize <= maxSize)
+    {
+      if (!results.next())
+      {
+        allRows = true;
+        break;
+      }
+      final Object[] row = new Object[columnCount];
+      for (int i = 0; i < columnCount; i++)
+      {
+        Object value = results.getObject(i + 1);
+        // Values of driver specific types are kept as strings, so that
+        // copies can be serialized, and read back without the driver
+        if (value != null
+            && !SIMPLE_VALUE_TYPES.contains(value.getClass()))
+        {
+          value = results.getString(i + 1);
+        }
+        row[i] = value;
+        rowsSize = rowsSize + 16;
+        if (value instanceof String)
+        {
+          rowsSize = rowsSize + ((String) value).length() * 2L;
+        }
+      }
+      rows.add(row);
+      allRows = false;
+    }
+    complete = allRows;
+    size = rowsSize;
+  }
+
+  /**
+   * Finds a column by label, or by name, ignoring case, as drivers do.
+   */
+  private int findColumn(final String columnLabel)
+    throws SQLException
+  {
+    for (int i = 0; i < columnLabels.length; i++)
+    {
+      if (columnLabels[i].equalsIgnoreCase(columnLabel))
+      {
+        return i + 1;
+      }
+    }
+    for (int i = 0; i < columnNames.length; i++)
+    {
+      if (columnNames[i] != null
+          && columnNames[i].equalsIgnoreCase(columnLabel))
+      {
+        return i + 1;
+      }
+    }
+    throw new SQLException("Invalid column label " + columnLabel);
+  }
+
+  public long getSize()
+  {
+    return size;
+  }
+
+  /**
+   * Whether all rows of the original result set were copied.
+   *
+   * @return True if the copy is complete
+   */
+  public boolean isComplete()
+  {
+    return complete;
+  }
+
+  public int size()
+  {
+    return rows.size();
+  }
+
+  /**
+   * Creates a new result set over the copied rows.
+   *
+   * @return Result set
+   */
+  public ResultSet toResultSet()
+  {
+    return toResultSet(null);
+  }
+
+  /**
+   * Creates a new result set over the copied rows, followed by rows
+   * that were not copied, which are read from the original result set.
+   *
+   * @param remainingResults
+   *        Original result set, or null if the copy is complete
+   * @return Result set
+   */
+  public ResultSet toResultSet(final ResultSet remainingResults)
+  {
+    return (ResultSet) Proxy
+      .newProxyInstance(ResultSetCopy.class.getClassLoader(),
+                        new Class<?>[] { ResultSet.class },
+                        new RowsHandler(remainingResults));
+  }
+
+}
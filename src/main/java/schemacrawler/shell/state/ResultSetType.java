@@ -0,0 +1,66 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import java.sql.ResultSet;
+
+/**
+ * Type of result sets for queries issued while loading a catalog.
+ */
+public enum ResultSetType
+{
+
+ /**
+  * Forward only result sets, which drivers can stream from the server.
+  */
+ forward_only(ResultSet.TYPE_FORWARD_ONLY),
+ /**
+  * Scrollable result sets, which some drivers read entirely into memory.
+  */
+ scroll_insensitive(ResultSet.TYPE_SCROLL_INSENSITIVE);
+
+  private final int type;
+
+  private ResultSetType(final int type)
+  {
+    this.type = type;
+  }
+
+  /**
+   * JDBC result set type.
+   *
+   * @return Result set type constant
+   */
+  public int getType()
+  {
+    return type;
+  }
+
+}
@@ -0,0 +1,333 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import schemacrawler.schemacrawler.InformationSchemaKey;
+import schemacrawler.schemacrawler.InformationSchemaViews;
+import schemacrawler.shell.catalog.RetrievalFlag;
+
+/**
+ * Measures how long each kind of metadata takes to retrieve, on
+ * connections from a data source. Database metadata calls are
+ * attributed by method name, and queries by matching them against the
+ * information schema views for the database. Time spent reading rows
+ * of results is included. The meter should be below any cache, so that
+ * only calls that reach the database are timed.
+ */
+public final class RetrievalCostMeter
+{
+
+  private static final Pattern TEMPLATE_PARAMETER = Pattern
+    .compile("\\$\\{[^}]*\\}");
+
+  private static Object invoke(final Object target,
+                               final Method method,
+                               final Object[] args)
+    throws Throwable
+  {
+    try
+    {
+      return method.invoke(target, args);
+    }
+    catch (final InvocationTargetException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+  private static int literalLength(final String template)
+  {
+    return TEMPLATE_PARAMETER.matcher(template).replaceAll("").length();
+  }
+
+  /**
+   * Queries are matched as a whole, with any text in place of their
+   * template parameters, since parameters are expanded before a query
+   * is run.
+   */
+  private static Pattern queryPattern(final String query)
+  {
+    final StringBuilder pattern = new StringBuilder();
+    final Matcher matcher = TEMPLATE_PARAMETER.matcher(query);
+    int start = 0;
+    while (matcher.find())
+    {
+      pattern.append(Pattern.quote(query.substring(start, matcher.start())))
+        .append(".*?");
+      start = matcher.end();
+    }
+    pattern.append(Pattern.quote(query.substring(start)));
+    return Pattern.compile(pattern.toString(), Pattern.DOTALL);
+  }
+
+  private final Map<Pattern, RetrievalFlag> queries = new LinkedHashMap<>();
+  private final Map<RetrievalFlag, Long> costs = new ConcurrentHashMap<>();
+
+  public RetrievalCostMeter(final InformationSchemaViews informationSchemaViews)
+  {
+    requireNonNull(informationSchemaViews,
+                   "No information schema views provided");
+    final List<String> templates = new ArrayList<>();
+    final Map<String, RetrievalFlag> templateRetrievalFlags = new LinkedHashMap<>();
+    for (final InformationSchemaKey key: InformationSchemaKey.values())
+    {
+      if (informationSchemaViews.hasQuery(key))
+      {
+        final String query = informationSchemaViews.getQuery(key).getQuery()
+          .trim();
+        if (!query.isEmpty())
+        {
+          RetrievalFlag.retrievedBy(key.name()).ifPresent(retrievalFlag -> {
+            templates.add(query);
+            templateRetrievalFlags.put(query, retrievalFlag);
+          });
+        }
+      }
+    }
+    // If a query matches more than one template, the template with the
+    // most text that is not parameters is the closest match
+    templates.sort((template1, template2) -> Integer
+      .compare(literalLength(template2), literalLength(template1)));
+    for (final String template: templates)
+    {
+      queries.put(queryPattern(template),
+                  templateRetrievalFlags.get(template));
+    }
+  }
+
+  /**
+   * Time taken to retrieve each kind of metadata, in nanoseconds.
+   * Metadata that was not retrieved is not present.
+   *
+   * @return Retrieval costs
+   */
+  public Map<RetrievalFlag, Long> getCosts()
+  {
+    final Map<RetrievalFlag, Long> retrievalCosts = new EnumMap<>(RetrievalFlag.class);
+    retrievalCosts.putAll(costs);
+    return retrievalCosts;
+  }
+
+  /**
+   * Wraps a data source, so that metadata retrieval on connections from
+   * it is timed.
+   *
+   * @param dataSource
+   *        Data source to wrap
+   * @return Metered data source
+   */
+  public DataSource track(final DataSource dataSource)
+  {
+    requireNonNull(dataSource, "No data source provided");
+
+    return (DataSource) Proxy
+      .newProxyInstance(RetrievalCostMeter.class.getClassLoader(),
+                        new Class<?>[] { DataSource.class },
+                        (proxy, method, args) -> {
+                          final Object result = invoke(dataSource,
+                                                       method,
+                                                       args);
+                          if (result instanceof Connection)
+                          {
+                            return track((Connection) result);
+                          }
+                          return result;
+                        });
+  }
+
+  private RetrievalFlag lookupQuery(final Object sql)
+  {
+    if (!(sql instanceof String))
+    {
+      return null;
+    }
+    final String query = ((String) sql).trim();
+    for (final Map.Entry<Pattern, RetrievalFlag> entry: queries.entrySet())
+    {
+      if (entry.getKey().matcher(query).matches())
+      {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Makes a call, and adds the time it took to the cost of a kind of
+   * metadata. Results are wrapped, so that reading rows is also timed.
+   */
+  private Object measure(final RetrievalFlag retrievalFlag,
+                         final Object target,
+                         final Method method,
+                         final Object[] args)
+    throws Throwable
+  {
+    final long start = System.nanoTime();
+    try
+    {
+      final Object result = invoke(target, method, args);
+      if (result instanceof ResultSet)
+      {
+        return track((ResultSet) result, retrievalFlag);
+      }
+      return result;
+    }
+    finally
+    {
+      costs.merge(retrievalFlag, System.nanoTime() - start, Long::sum);
+    }
+  }
+
+  private Connection track(final Connection connection)
+  {
+    return (Connection) Proxy
+      .newProxyInstance(RetrievalCostMeter.class.getClassLoader(),
+                        new Class<?>[] { Connection.class },
+                        (proxy, method, args) -> {
+                          final Object result = invoke(connection,
+                                                       method,
+                                                       args);
+                          if (result instanceof DatabaseMetaData)
+                          {
+                            return track((DatabaseMetaData) result,
+                                         (Connection) proxy);
+                          }
+                          if (result instanceof PreparedStatement
+                              && PreparedStatement.class
+                                .equals(method.getReturnType()))
+                          {
+                            // Prepared statements are attributed by the
+                            // query they were prepared with
+                            return track((Statement) result,
+                                         PreparedStatement.class,
+                                         lookupQuery(args[0]));
+                          }
+                          if (result instanceof Statement
+                              && Statement.class
+                                .equals(method.getReturnType()))
+                          {
+                            return track((Statement) result,
+                                         Statement.class,
+                                         null);
+                          }
+                          return result;
+                        });
+  }
+
+  private DatabaseMetaData track(final DatabaseMetaData databaseMetaData,
+                                 final Connection connection)
+  {
+    final InvocationHandler handler = (proxy, method, args) -> {
+      if ("getConnection".equals(method.getName()))
+      {
+        return connection;
+      }
+      final RetrievalFlag retrievalFlag = RetrievalFlag
+        .retrievedBy(method.getName()).orElse(null);
+      if (retrievalFlag == null)
+      {
+        return invoke(databaseMetaData, method, args);
+      }
+      return measure(retrievalFlag, databaseMetaData, method, args);
+    };
+    return (DatabaseMetaData) Proxy
+      .newProxyInstance(RetrievalCostMeter.class.getClassLoader(),
+                        new Class<?>[] { DatabaseMetaData.class },
+                        handler);
+  }
+
+  private ResultSet track(final ResultSet results,
+                          final RetrievalFlag retrievalFlag)
+  {
+    final InvocationHandler handler = (proxy, method, args) -> {
+      if ("next".equals(method.getName()))
+      {
+        return measure(retrievalFlag, results, method, args);
+      }
+      return invoke(results, method, args);
+    };
+    return (ResultSet) Proxy
+      .newProxyInstance(RetrievalCostMeter.class.getClassLoader(),
+                        new Class<?>[] { ResultSet.class },
+                        handler);
+  }
+
+  private Statement track(final Statement statement,
+                          final Class<? extends Statement> statementType,
+                          final RetrievalFlag preparedRetrievalFlag)
+  {
+    final RetrievalFlag[] currentRetrievalFlag = new RetrievalFlag[] {
+                                                                       preparedRetrievalFlag };
+    final InvocationHandler handler = (proxy, method, args) -> {
+      final String methodName = method.getName();
+      final int argCount = args == null? 0: args.length;
+      if (("executeQuery".equals(methodName) || "execute".equals(methodName))
+          && argCount == 1)
+      {
+        currentRetrievalFlag[0] = lookupQuery(args[0]);
+      }
+      final RetrievalFlag retrievalFlag = currentRetrievalFlag[0];
+      if (retrievalFlag != null && ("executeQuery".equals(methodName)
+                                    || "execute".equals(methodName)
+                                    || "getResultSet".equals(methodName)))
+      {
+        return measure(retrievalFlag, statement, method, args);
+      }
+      return invoke(statement, method, args);
+    };
+    return (Statement) Proxy
+      .newProxyInstance(RetrievalCostMeter.class.getClassLoader(),
+                        new Class<?>[] { statementType },
+                        handler);
+  }
+
+}
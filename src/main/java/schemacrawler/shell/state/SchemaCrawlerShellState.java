@@ -29,8 +29,14 @@ http://www.gnu.org/licenses/
 package schemacrawler.shell.state;
 
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 import javax.sql.DataSource;
@@ -39,9 +45,15 @@ import org.springframework.stereotype.Component;
 
 import schemacrawler.schema.Catalog;
 import schemacrawler.schemacrawler.Config;
+import schemacrawler.schemacrawler.SchemaCrawlerOptions;
 import schemacrawler.schemacrawler.SchemaCrawlerOptionsBuilder;
 import schemacrawler.schemacrawler.SchemaRetrievalOptionsBuilder;
-import schemacrawler.tools.options.OutputOptionsBuilder;
+import schemacrawler.shell.catalog.CatalogFingerprint;
+import schemacrawler.shell.catalog.CatalogPrefetch;
+import schemacrawler.shell.catalog.RetrievalCosts;
+import schemacrawler.shell.catalog.SpilledCatalog;
+import schemacrawler.shell.output.ResultCache;
+import schemacrawler.tools.options.OutputOptions;
 import sf.util.SchemaCrawlerLogger;
 
 @Component("state")
@@ -52,14 +64,29 @@ public class SchemaCrawlerShellState
     .getLogger(SchemaCrawlerShellState.class.getName());
 
   private Catalog catalog;
+  private CatalogPrefetch catalogPrefetch;
   private DataSource dataSource;
-  private Config additionalConfiguration;
-  private SchemaCrawlerOptionsBuilder schemaCrawlerOptionsBuilder;
+  private Path offlineCatalogFile;
+  // Options are immutable values, which are replaced rather than
+  // changed, so commands that read them never see a partial update
+  private volatile Config additionalConfiguration;
+  private volatile SchemaCrawlerOptions schemaCrawlerOptions;
   private SchemaRetrievalOptionsBuilder schemaRetrievalOptionsBuilder;
-  private OutputOptionsBuilder outputOptionsBuilder;
+  private volatile OutputOptions outputOptions;
+  private final Map<String, Long> tableRowCounts = new ConcurrentHashMap<>();
+  private final Map<String, Long> approximateTableRowCounts = new ConcurrentHashMap<>();
+  private final Map<String, CatalogFingerprint> catalogSnapshots = new LinkedHashMap<>();
+  private final ResultCache resultCache = new ResultCache();
+  private final RetrievalCosts retrievalCosts = new RetrievalCosts();
+  private long catalogVersion;
 
   public void disconnect()
   {
+    if (catalogPrefetch != null)
+    {
+      catalogPrefetch.cancel();
+      catalogPrefetch = null;
+    }
     if (dataSource instanceof AutoCloseable)
     {
       try
@@ -72,8 +99,40 @@ public class SchemaCrawlerShellState
       }
     }
     dataSource = null;
+    offlineCatalogFile = null;
+    ReplayDriver.clearRecordings();
+  }
+
+  /**
+   * Approximate table row counts, from database statistics, keyed by
+   * full table name, retained between catalog loads on the same
+   * connection. These are kept apart from exact counts, so that they
+   * are not used when exact counts are needed.
+   *
+   * @return Cached approximate table row counts
+   */
+  public Map<String, Long> getApproximateTableRowCounts()
+  {
+    return approximateTableRowCounts;
+  }
+
+  /**
+   * Named catalog fingerprints, retained for the whole session, so that
+   * catalogs from different connections can be compared.
+   *
+   * @return Catalog snapshots
+   */
+  public Map<String, CatalogFingerprint> getCatalogSnapshots()
+  {
+    return catalogSnapshots;
   }
 
+  /**
+   * Additional configuration, which is shared, and must not be changed.
+   * Use {@link #updateAdditionalConfiguration(Consumer)} to change it.
+   *
+   * @return Additional configuration
+   */
   public Config getAdditionalConfiguration()
   {
     return additionalConfiguration;
@@ -84,19 +143,51 @@ public class SchemaCrawlerShellState
     return catalog;
   }
 
+  public CatalogPrefetch getCatalogPrefetch()
+  {
+    return catalogPrefetch;
+  }
+
+  /**
+   * Version stamp for the loaded catalog, which changes every time a
+   * catalog is loaded.
+   *
+   * @return Catalog version
+   */
+  public long getCatalogVersion()
+  {
+    return catalogVersion;
+  }
+
   public DataSource getDataSource()
   {
     return dataSource;
   }
 
-  public OutputOptionsBuilder getOutputOptionsBuilder()
+  /**
+   * Saved catalog file for an offline session, which works without a
+   * database connection.
+   *
+   * @return Offline catalog file, or null if the session is not offline
+   */
+  public Path getOfflineCatalogFile()
   {
-    return outputOptionsBuilder;
+    return offlineCatalogFile;
   }
 
-  public SchemaCrawlerOptionsBuilder getSchemaCrawlerOptionsBuilder()
+  public OutputOptions getOutputOptions()
   {
-    return schemaCrawlerOptionsBuilder;
+    return outputOptions;
+  }
+
+  /**
+   * SchemaCrawler options, which are built only when they change.
+   *
+   * @return SchemaCrawler options
+   */
+  public SchemaCrawlerOptions getSchemaCrawlerOptions()
+  {
+    return schemaCrawlerOptions;
   }
 
   public SchemaRetrievalOptionsBuilder getSchemaRetrievalOptionsBuilder()
@@ -104,6 +195,33 @@ public class SchemaCrawlerShellState
     return schemaRetrievalOptionsBuilder;
   }
 
+  public ResultCache getResultCache()
+  {
+    return resultCache;
+  }
+
+  /**
+   * How long each kind of metadata took to retrieve, for each database,
+   * retained for the whole session.
+   *
+   * @return Retrieval costs
+   */
+  public RetrievalCosts getRetrievalCosts()
+  {
+    return retrievalCosts;
+  }
+
+  /**
+   * Exact table row counts, keyed by full table name, retained between
+   * catalog loads on the same connection.
+   *
+   * @return Cached table row counts
+   */
+  public Map<String, Long> getTableRowCounts()
+  {
+    return tableRowCounts;
+  }
+
   public boolean isConnected()
   {
     try (final Connection connection = dataSource.getConnection();)
@@ -122,6 +240,11 @@ public class SchemaCrawlerShellState
     return true;
   }
 
+  public boolean isOffline()
+  {
+    return offlineCatalogFile != null;
+  }
+
   public boolean isLoaded()
   {
     return catalog != null;
@@ -134,7 +257,18 @@ public class SchemaCrawlerShellState
 
   public void setCatalog(final Catalog catalog)
   {
+    final Catalog previousCatalog = this.catalog;
     this.catalog = catalog;
+    catalogVersion++;
+    if (previousCatalog != catalog)
+    {
+      deleteSpilledCatalog(previousCatalog);
+    }
+  }
+
+  public void setCatalogPrefetch(final CatalogPrefetch catalogPrefetch)
+  {
+    this.catalogPrefetch = catalogPrefetch;
   }
 
   public void setDataSource(final DataSource dataSource)
@@ -142,14 +276,19 @@ public class SchemaCrawlerShellState
     this.dataSource = dataSource;
   }
 
-  public void setOutputOptionsBuilder(final OutputOptionsBuilder outputOptionsBuilder)
+  public void setOfflineCatalogFile(final Path offlineCatalogFile)
   {
-    this.outputOptionsBuilder = outputOptionsBuilder;
+    this.offlineCatalogFile = offlineCatalogFile;
   }
 
-  public void setSchemaCrawlerOptionsBuilder(final SchemaCrawlerOptionsBuilder schemaCrawlerOptionsBuilder)
+  public void setOutputOptions(final OutputOptions outputOptions)
   {
-    this.schemaCrawlerOptionsBuilder = schemaCrawlerOptionsBuilder;
+    this.outputOptions = outputOptions;
+  }
+
+  public void setSchemaCrawlerOptions(final SchemaCrawlerOptions schemaCrawlerOptions)
+  {
+    this.schemaCrawlerOptions = schemaCrawlerOptions;
   }
 
   public void setSchemaRetrievalOptionsBuilder(final SchemaRetrievalOptionsBuilder schemaRetrievalOptionsBuilder)
@@ -157,15 +296,73 @@ public class SchemaCrawlerShellState
     this.schemaRetrievalOptionsBuilder = schemaRetrievalOptionsBuilder;
   }
 
+  /**
+   * Changes a copy of the additional configuration, and replaces the
+   * configuration with the copy. Values are shared with the previous
+   * configuration, so only the map itself is copied.
+   *
+   * @param update
+   *        Changes to make
+   */
+  public synchronized void updateAdditionalConfiguration(final Consumer<Config> update)
+  {
+    final Config config = new Config();
+    config.putAll(additionalConfiguration);
+    update.accept(config);
+    additionalConfiguration = config;
+  }
+
+  /**
+   * Changes the SchemaCrawler options, by building new options from a
+   * builder initialized with the current options. Inclusion rules and
+   * other option values are shared with the previous options.
+   *
+   * @param update
+   *        Changes to make
+   */
+  public synchronized void updateSchemaCrawlerOptions(final Consumer<SchemaCrawlerOptionsBuilder> update)
+  {
+    final SchemaCrawlerOptionsBuilder schemaCrawlerOptionsBuilder = SchemaCrawlerOptionsBuilder
+      .builder().fromOptions(schemaCrawlerOptions);
+    update.accept(schemaCrawlerOptionsBuilder);
+    schemaCrawlerOptions = schemaCrawlerOptionsBuilder.toOptions();
+  }
+
   public void sweep()
   {
+    deleteSpilledCatalog(catalog);
     catalog = null;
     additionalConfiguration = null;
-    schemaCrawlerOptionsBuilder = null;
+    schemaCrawlerOptions = null;
     schemaRetrievalOptionsBuilder = null;
-    outputOptionsBuilder = null;
+    outputOptions = null;
+    tableRowCounts.clear();
+    approximateTableRowCounts.clear();
+    resultCache.clear();
+    if (dataSource instanceof ShellDataSource)
+    {
+      ((ShellDataSource) dataSource).getMetadataCache().clear();
+    }
 
     disconnect();
   }
 
+  /**
+   * Deletes the files that a catalog that is no longer used was written
+   * to, rather than leaving them until the shell exits.
+   */
+  private void deleteSpilledCatalog(final Catalog catalog)
+  {
+    SpilledCatalog.lookupSpilledCatalog(catalog).ifPresent(spilledCatalog -> {
+      try
+      {
+        spilledCatalog.delete();
+      }
+      catch (final IOException e)
+      {
+        LOGGER.log(Level.WARNING, e.getMessage(), e);
+      }
+    });
+  }
+
 }
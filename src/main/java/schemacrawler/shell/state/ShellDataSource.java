@@ -0,0 +1,311 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.state;
+
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Data source for a shell session, backed by a connection pool.
+ * Statements created on connections from this data source get the
+ * session's fetch size and result set type, so that large metadata
+ * result sets are streamed from the server in as few round trips as
+ * possible. Database metadata from connections is served from the
+ * session's metadata cache.
+ */
+public final class ShellDataSource
+  implements DataSource, AutoCloseable
+{
+
+  private static Object invoke(final Object target,
+                               final Method method,
+                               final Object[] args)
+    throws Throwable
+  {
+    try
+    {
+      return method.invoke(target, args);
+    }
+    catch (final InvocationTargetException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+  private final DataSource dataSource;
+  private final int fetchSize;
+  private final ResultSetType resultSetType;
+  private final MetadataCache metadataCache;
+
+  /**
+   * Creates a data source.
+   *
+   * @param dataSource
+   *        Connection pool
+   * @param fetchSize
+   *        Fetch size for statements, or 0 for the driver default
+   * @param resultSetType
+   *        Result set type for statements
+   * @param metadataCache
+   *        Cache for database metadata result sets
+   */
+  public ShellDataSource(final DataSource dataSource,
+                         final int fetchSize,
+                         final ResultSetType resultSetType,
+                         final MetadataCache metadataCache)
+  {
+    this.dataSource = requireNonNull(dataSource, "No data source provided");
+    this.fetchSize = fetchSize;
+    this.resultSetType = requireNonNull(resultSetType,
+                                        "No result set type provided");
+    this.metadataCache = requireNonNull(metadataCache,
+                                        "No metadata cache provided");
+  }
+
+  @Override
+  public void close()
+    throws Exception
+  {
+    metadataCache.clear();
+    if (dataSource instanceof AutoCloseable)
+    {
+      ((AutoCloseable) dataSource).close();
+    }
+  }
+
+  /**
+   * Creates a data source with the same settings and metadata cache,
+   * that gets connections from a wrapped connection pool. Calls served
+   * from the metadata cache do not reach the wrapper.
+   *
+   * @param wrapper
+   *        Wraps the connection pool
+   * @return Data source
+   */
+  public ShellDataSource decorate(final UnaryOperator<DataSource> wrapper)
+  {
+    requireNonNull(wrapper, "No wrapper provided");
+    return new ShellDataSource(wrapper.apply(dataSource),
+                               fetchSize,
+                               resultSetType,
+                               metadataCache);
+  }
+
+  @Override
+  public Connection getConnection()
+    throws SQLException
+  {
+    return decorate(dataSource.getConnection());
+  }
+
+  @Override
+  public Connection getConnection(final String username,
+                                  final String password)
+    throws SQLException
+  {
+    return decorate(dataSource.getConnection(username, password));
+  }
+
+  public int getFetchSize()
+  {
+    return fetchSize;
+  }
+
+  @Override
+  public int getLoginTimeout()
+    throws SQLException
+  {
+    return dataSource.getLoginTimeout();
+  }
+
+  public MetadataCache getMetadataCache()
+  {
+    return metadataCache;
+  }
+
+  @Override
+  public PrintWriter getLogWriter()
+    throws SQLException
+  {
+    return dataSource.getLogWriter();
+  }
+
+  @Override
+  public Logger getParentLogger()
+    throws SQLFeatureNotSupportedException
+  {
+    return dataSource.getParentLogger();
+  }
+
+  public ResultSetType getResultSetType()
+  {
+    return resultSetType;
+  }
+
+  @Override
+  public boolean isWrapperFor(final Class<?> iface)
+    throws SQLException
+  {
+    return iface.isInstance(dataSource) || dataSource.isWrapperFor(iface);
+  }
+
+  @Override
+  public void setLoginTimeout(final int seconds)
+    throws SQLException
+  {
+    dataSource.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public void setLogWriter(final PrintWriter out)
+    throws SQLException
+  {
+    dataSource.setLogWriter(out);
+  }
+
+  @Override
+  public <T> T unwrap(final Class<T> iface)
+    throws SQLException
+  {
+    if (iface.isInstance(dataSource))
+    {
+      return iface.cast(dataSource);
+    }
+    return dataSource.unwrap(iface);
+  }
+
+  /**
+   * Creates a data source with the same connection pool, result set
+   * type and metadata cache, and a different fetch size.
+   *
+   * @param fetchSize
+   *        Fetch size for statements, or 0 for the driver default
+   * @return Data source
+   */
+  public ShellDataSource withFetchSize(final int fetchSize)
+  {
+    return new ShellDataSource(dataSource,
+                               fetchSize,
+                               resultSetType,
+                               metadataCache);
+  }
+
+  /**
+   * Statements created without a result set type are created with the
+   * session's result set type instead, and all statements get the
+   * session's fetch size. The connection can be unwrapped to the pooled
+   * connection, or to any class that it wraps, such as the driver's
+   * connection.
+   */
+  private Connection decorate(final Connection connection)
+  {
+    final int type = resultSetType.getType();
+    final int concurrency = ResultSet.CONCUR_READ_ONLY;
+    return (Connection) Proxy
+      .newProxyInstance(ShellDataSource.class.getClassLoader(),
+                        new Class<?>[] { Connection.class },
+                        (proxy, method, args) -> {
+                          final String methodName = method.getName();
+                          final int argCount = args == null? 0: args.length;
+                          final Object result;
+                          if ("createStatement".equals(methodName)
+                              && argCount == 0)
+                          {
+                            result = connection.createStatement(type,
+                                                                concurrency);
+                          }
+                          else if ("prepareStatement".equals(methodName)
+                                   && argCount == 1)
+                          {
+                            result = connection
+                              .prepareStatement((String) args[0],
+                                                type,
+                                                concurrency);
+                          }
+                          else if ("prepareCall".equals(methodName)
+                                   && argCount == 1)
+                          {
+                            result = connection.prepareCall((String) args[0],
+                                                            type,
+                                                            concurrency);
+                          }
+                          else if ("getMetaData".equals(methodName)
+                                   && argCount == 0)
+                          {
+                            result = metadataCache
+                              .decorate(connection.getMetaData());
+                          }
+                          else if ("unwrap".equals(methodName)
+                                   && argCount == 1)
+                          {
+                            final Class<?> iface = (Class<?>) args[0];
+                            if (iface.isInstance(connection))
+                            {
+                              result = connection;
+                            }
+                            else
+                            {
+                              result = connection.unwrap(iface);
+                            }
+                          }
+                          else if ("isWrapperFor".equals(methodName)
+                                   && argCount == 1)
+                          {
+                            final Class<?> iface = (Class<?>) args[0];
+                            result = iface.isInstance(connection)
+                                     || connection.isWrapperFor(iface);
+                          }
+                          else
+                          {
+                            result = invoke(connection, method, args);
+                          }
+
+                          if (result instanceof Statement && fetchSize > 0)
+                          {
+                            ((Statement) result).setFetchSize(fetchSize);
+                          }
+                          return result;
+                        });
+  }
+
+}
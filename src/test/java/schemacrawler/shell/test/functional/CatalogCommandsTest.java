@@ -0,0 +1,595 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.test.functional;
+
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.springframework.util.ReflectionUtils.findMethod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jline.utils.AttributedString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.shell.CompletionContext;
+import org.springframework.shell.CompletionProposal;
+import org.springframework.shell.ConfigurableCommandRegistry;
+import org.springframework.shell.MethodTarget;
+import org.springframework.shell.standard.StandardMethodTargetRegistrar;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import schemacrawler.schema.View;
+import schemacrawler.schemacrawler.InfoLevel;
+import schemacrawler.schemacrawler.InformationSchemaKey;
+import schemacrawler.schemacrawler.RegularExpressionInclusionRule;
+import schemacrawler.schemacrawler.SchemaCrawlerException;
+import schemacrawler.shell.CatalogNameValueProvider;
+import schemacrawler.shell.catalog.CatalogFingerprint;
+import schemacrawler.shell.catalog.DefinitionIndex;
+import schemacrawler.shell.catalog.DefinitionIndex.DefinitionKind;
+import schemacrawler.shell.catalog.WeakAssociation;
+import schemacrawler.shell.catalog.WeakAssociationsIndex;
+import schemacrawler.shell.commands.CatalogCommands;
+import schemacrawler.shell.commands.ConnectCommands;
+import schemacrawler.shell.commands.LoadCommands;
+import schemacrawler.shell.state.ResultSetType;
+import schemacrawler.shell.state.SchemaCrawlerShellState;
+import schemacrawler.shell.test.BaseSchemaCrawlerShellTest;
+import schemacrawler.shell.test.TestSchemaCrawlerShellState;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {
+                                  TestSchemaCrawlerShellState.class,
+                                  CatalogCommands.class,
+                                  CatalogNameValueProvider.class })
+public class CatalogCommandsTest
+  extends BaseSchemaCrawlerShellTest
+{
+
+  private static final Class<?> COMMANDS_CLASS_UNDER_TEST = CatalogCommands.class;
+
+  private final ConfigurableCommandRegistry registry = new ConfigurableCommandRegistry();
+  @Autowired
+  private SchemaCrawlerShellState state;
+  @Autowired
+  private ApplicationContext context;
+  @Autowired
+  private CatalogNameValueProvider valueProvider;
+
+  @Before
+  public void setup()
+    throws SchemaCrawlerException, SQLException
+  {
+    final StandardMethodTargetRegistrar registrar = new StandardMethodTargetRegistrar();
+    registrar.setApplicationContext(context);
+    registrar.register(registry);
+
+    // Create a connection
+    final ConnectCommands connectCommands = new ConnectCommands(state);
+    connectCommands
+      .connectUrl("jdbc:hsqldb:hsql://localhost:9001/schemacrawler",
+                  "sa",
+                  "",
+                  0,
+                  ResultSetType.forward_only);
+
+    // Load schema
+    final LoadCommands loadCommands = new LoadCommands(state);
+    loadCommands.loadCatalog(InfoLevel.standard,
+                             0,
+                             0,
+                             0,
+                             false,
+                             false,
+                             "",
+                             "",
+                             "");
+  }
+
+  @After
+  public void sweep()
+  {
+    state.sweep();
+  }
+
+  @Test
+  public void completeNames()
+  {
+    assertThat(complete("public.books.authors.c"),
+               is(Arrays.asList("PUBLIC.BOOKS.AUTHORS.CITY",
+                                "PUBLIC.BOOKS.AUTHORS.COUNTRY")));
+    assertThat(complete("public.\"publisher sales\".sales.p"),
+               is(Arrays.asList("PUBLIC.\"PUBLISHER SALES\".SALES.PERIODENDDATE",
+                                "PUBLIC.\"PUBLISHER SALES\".SALES.POSTALCODE")));
+    assertThat(complete("public.publisher sales.sales.p"),
+               is(Arrays.asList("PUBLIC.PUBLISHER SALES.SALES.PERIODENDDATE",
+                                "PUBLIC.PUBLISHER SALES.SALES.POSTALCODE")));
+  }
+
+  @Test
+  public void describe()
+  {
+    final String command = "describe";
+    final String commandMethod = "describe";
+
+    final MethodTarget commandTarget = lookupCommand(registry, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Describe database objects with a name, or fully qualified name"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Object returnValue = invoke(commandTarget, "public.books.authors");
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(),
+               is("Found 1 objects named public.books.authors"));
+  }
+
+  @Test
+  public void describeUnquotedName()
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "describe");
+
+    final Object returnValue = invoke(commandTarget,
+                                      "public.publisher sales.sales");
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(),
+               is("Found 1 objects named public.publisher sales.sales"));
+  }
+
+  @Test
+  public void diffCatalog()
+  {
+    final String command = "diff-catalog";
+    final String commandMethod = "diffCatalog";
+
+    final MethodTarget commandTarget = lookupCommand(registry, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Compare catalog snapshots, or a snapshot with the loaded catalog"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class,
+                             String.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    invoke(lookupCommand(registry, "snapshot-catalog"), "before", "");
+    final Object returnValue = invoke(commandTarget, "before", "");
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), is("Found 0 differences"));
+  }
+
+  @Test
+  public void diffCatalogWithSnapshotFile()
+    throws Exception
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "diff-catalog");
+
+    final Path snapshotFile = Files.createTempFile("schemacrawler", ".ser");
+    try
+    {
+      invoke(lookupCommand(registry, "snapshot-catalog"),
+             "before",
+             snapshotFile.toString());
+      assertThat(CatalogFingerprint.load(snapshotFile).getHash(),
+                 is(state.getCatalogSnapshots().get("before").getHash()));
+      assertThat(invoke(commandTarget, snapshotFile.toString(), "")
+        .toString(), is("Found 0 differences"));
+
+      // Snapshot files are read only if they hold a fingerprint
+      try (
+          final ObjectOutputStream out = new ObjectOutputStream(Files
+            .newOutputStream(snapshotFile));)
+      {
+        out.writeObject(new File("schemacrawler"));
+      }
+      try
+      {
+        CatalogFingerprint.load(snapshotFile);
+        fail("Snapshot file with other classes was read");
+      }
+      catch (final InvalidClassException e)
+      {
+        assertThat(e.getMessage(), containsString(File.class.getName()));
+      }
+    }
+    finally
+    {
+      Files.deleteIfExists(snapshotFile);
+    }
+  }
+
+  @Test
+  public void diffCatalogWithoutCatalog()
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "diff-catalog");
+
+    invoke(lookupCommand(registry, "snapshot-catalog"), "before", "");
+    invoke(lookupCommand(registry, "snapshot-catalog"), "after", "");
+    state.sweep();
+
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+    assertThat(invoke(commandTarget, "before", "after").toString(),
+               is("Found 0 differences"));
+    assertThat(invoke(commandTarget, "before", "").toString(),
+               is("Cannot compare with the loaded catalog, since there is no schema metadata loaded"));
+  }
+
+  @Test
+  public void find()
+  {
+    final String command = "find";
+    final String commandMethod = "find";
+
+    final MethodTarget commandTarget = lookupCommand(registry, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Find database objects with names that start with a prefix"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class,
+                             int.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Object returnValue = invoke(commandTarget, "AUTH", 100);
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), startsWith("Found "));
+    assertThat(returnValue.toString(), not(is("Found 0 objects")));
+  }
+
+  @Test
+  public void relatedTables()
+  {
+    final String command = "related-tables";
+    final String commandMethod = "relatedTables";
+
+    final MethodTarget commandTarget = lookupCommand(registry, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("List tables related by foreign keys to matching tables"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class,
+                             int.class,
+                             int.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    // BOOKS references itself, so a search with no depth limit has to
+    // stop at tables it has already found
+    assertThat(relatedTables(commandTarget, "PUBLIC\\.BOOKS\\.BOOKS", 0, 0),
+               is(tableNames("PUBLIC.BOOKS.BOOKS")));
+    assertThat(relatedTables(commandTarget, "PUBLIC\\.BOOKS\\.BOOKS", 0, 1),
+               is(tableNames("PUBLIC.BOOKS.BOOKS",
+                             "PUBLIC.BOOKS.BOOKAUTHORS",
+                             "PUBLIC.\"PUBLISHER SALES\".SALES")));
+    assertThat(relatedTables(commandTarget, "PUBLIC\\.BOOKS\\.BOOKS", 0, -1),
+               is(tableNames("PUBLIC.BOOKS.BOOKS",
+                             "PUBLIC.BOOKS.BOOKAUTHORS",
+                             "PUBLIC.\"PUBLISHER SALES\".SALES")));
+    assertThat(relatedTables(commandTarget,
+                             "PUBLIC\\.BOOKS\\.BOOKAUTHORS",
+                             1,
+                             0),
+               is(tableNames("PUBLIC.BOOKS.AUTHORS",
+                             "PUBLIC.BOOKS.BOOKS",
+                             "PUBLIC.BOOKS.BOOKAUTHORS")));
+    assertThat(relatedTables(commandTarget, ".*\\.SALES", -1, 0),
+               is(tableNames("PUBLIC.BOOKS.BOOKS",
+                             "PUBLIC.\"PUBLISHER SALES\".REGIONS",
+                             "PUBLIC.\"PUBLISHER SALES\".SALES",
+                             "PUBLIC.\"PUBLISHER SALES\".SALESDATA")));
+  }
+
+  @Test
+  public void saveCatalog()
+    throws Exception
+  {
+    final String command = "save-catalog";
+    final String commandMethod = "saveCatalog";
+
+    final MethodTarget commandTarget = lookupCommand(registry, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Save the loaded catalog, to work with offline"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final int tableCount = state.getCatalog().getTables().size();
+    final Path catalogFile = Files.createTempFile("schemacrawler", ".ser");
+    try
+    {
+      final Object returnValue = invoke(commandTarget, catalogFile.toString());
+
+      assertThat(returnValue, notNullValue());
+      assertThat(returnValue, is(instanceOf(AttributedString.class)));
+      assertThat(returnValue.toString(), startsWith("Saved catalog to "));
+
+      // Work with the saved catalog, without a database connection
+      final ConnectCommands connectCommands = new ConnectCommands(state);
+      connectCommands.connectOffline(catalogFile.toString());
+
+      assertThat(state.isOffline(), is(true));
+      assertThat(state.getDataSource(), nullValue());
+      assertThat(state.getCatalog().getTables().size(), is(tableCount));
+      assertThat(state.getSchemaCrawlerOptions().getSchemaInfoLevel()
+        .getTag(), is(InfoLevel.standard.name()));
+
+      // More metadata than was saved cannot be loaded
+      final LoadCommands loadCommands = new LoadCommands(state);
+      assertThat(loadCommands
+        .loadCatalog(InfoLevel.maximum, 0, 0, 0, false, false, "", "", "")
+        .toString(),
+                 is("Offline catalog was saved with info level standard, and cannot be loaded with info level maximum"));
+      assertThat(loadCommands
+        .loadCatalog(InfoLevel.standard, 0, 0, 0, false, false, "", "triggers", "")
+        .toString(),
+                 is("Cannot benchmark, record, retrieve or skip metadata for an offline catalog"));
+      assertThat(state.getCatalog().getTables().size(), is(tableCount));
+
+      // Limit options apply when the offline catalog is loaded again
+      state.updateSchemaCrawlerOptions(schemaCrawlerOptionsBuilder -> schemaCrawlerOptionsBuilder
+        .includeTables(new RegularExpressionInclusionRule(".*\\.AUTHORS")));
+      assertThat(loadCommands
+        .loadCatalog(InfoLevel.standard, 0, 0, 0, false, false, "", "", "")
+        .toString(),
+                 is("Loaded catalog"));
+
+      assertThat(state.getCatalog().getTables().size(), is(1));
+    }
+    finally
+    {
+      Files.deleteIfExists(catalogFile);
+    }
+  }
+
+  @Test
+  public void searchDefinitions()
+  {
+    final String command = "search-definitions";
+    final String commandMethod = "searchDefinitions";
+
+    final MethodTarget commandTarget = lookupCommand(registry, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Search remarks, view definitions, trigger bodies and routine definitions in the loaded catalog"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class,
+                             int.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    // Reload with view, trigger and routine definitions, retrieving
+    // view definitions from the information schema
+    state.getSchemaRetrievalOptionsBuilder()
+      .withInformationSchemaViewsBuilder()
+      .withSql(InformationSchemaKey.VIEWS,
+               "SELECT TABLE_CATALOG, TABLE_SCHEMA, TABLE_NAME, VIEW_DEFINITION, CHECK_OPTION, IS_UPDATABLE FROM INFORMATION_SCHEMA.VIEWS");
+    final LoadCommands loadCommands = new LoadCommands(state);
+    loadCommands.loadCatalog(InfoLevel.maximum,
+                             0,
+                             0,
+                             0,
+                             false,
+                             false,
+                             "",
+                             "",
+                             "");
+
+    final Object returnValue = invoke(commandTarget, "authors", 100);
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), startsWith("Found "));
+    assertThat(returnValue.toString(), not(is("Found 0 definitions")));
+
+    assertThat(invoke(commandTarget, "nosuchword authors", 100).toString(),
+               is("Found 0 definitions"));
+
+    // Only views are labelled with view definitions
+    final List<String> viewNames = new ArrayList<>();
+    for (final DefinitionIndex.Match match: DefinitionIndex
+      .definitionIndex(state.getCatalog()).search("authors", 100))
+    {
+      final boolean isView = match.getNamedObject() instanceof View;
+      if (match.getKind() == DefinitionKind.view)
+      {
+        assertThat(match.toString(), isView, is(true));
+        viewNames.add(match.getNamedObject().getFullName());
+      }
+      if (match.getKind() == DefinitionKind.table)
+      {
+        assertThat(match.toString(), isView, is(false));
+      }
+    }
+    assertThat(viewNames, is(Arrays.asList("PUBLIC.BOOKS.AUTHORSLIST")));
+  }
+
+  @Test
+  public void snapshotCatalog()
+  {
+    final String command = "snapshot-catalog";
+    final String commandMethod = "snapshotCatalog";
+
+    final MethodTarget commandTarget = lookupCommand(registry, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Save a fingerprint of the loaded catalog, to compare with later"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class,
+                             String.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Object returnValue = invoke(commandTarget, "snapshot", "");
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), startsWith("Saved snapshot snapshot"));
+    assertThat(state.getCatalogSnapshots().containsKey("snapshot"), is(true));
+  }
+
+  @Test
+  public void weakAssociations()
+    throws SQLException
+  {
+    final String command = "weak-associations";
+    final String commandMethod = "weakAssociations";
+
+    final MethodTarget commandTarget = lookupCommand(registry, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("List weak associations inferred from column names"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST, commandMethod)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Object returnValue = invoke(commandTarget);
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), is("Found 4 weak associations"));
+
+    // Columns are matched to primary keys named for their tables, and
+    // columns in foreign keys that were retrieved, such as
+    // BOOKAUTHORS.BOOKID, are not weak associations
+    final List<String> weakAssociations = new ArrayList<>();
+    for (final WeakAssociation weakAssociation: WeakAssociationsIndex
+      .weakAssociations(state.getCatalog()))
+    {
+      weakAssociations.add(weakAssociation.toString());
+    }
+    assertThat(weakAssociations,
+               is(Arrays
+                 .asList("PUBLIC.FOR_LINT.EXTRA_PK.WRITERID --> PUBLIC.FOR_LINT.WRITERS.ID",
+                         "PUBLIC.FOR_LINT.EXTRA_PK.PUBLICATIONID --> PUBLIC.FOR_LINT.PUBLICATIONS.ID",
+                         "PUBLIC.BOOKS.BOOKS.PUBLISHERID --> PUBLIC.BOOKS.PUBLISHERS.ID",
+                         "PUBLIC.FOR_LINT.WRITERS.PUBLICATION_ID --> PUBLIC.FOR_LINT.PUBLICATIONS.ID")));
+  }
+
+  private List<String> complete(final String word)
+  {
+    final CompletionContext completionContext = new CompletionContext(Arrays
+      .asList(word), 0, word.length());
+    final List<String> names = new ArrayList<>();
+    for (final CompletionProposal proposal: valueProvider
+      .complete(null, completionContext, new String[0]))
+    {
+      names.add(proposal.value());
+    }
+    return names;
+  }
+
+  private Set<String> relatedTables(final MethodTarget commandTarget,
+                                    final String tables,
+                                    final int parents,
+                                    final int children)
+  {
+    final PrintStream systemOut = System.out;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(out, true));
+    try
+    {
+      final Object returnValue = invoke(commandTarget,
+                                        tables,
+                                        parents,
+                                        children);
+
+      final Set<String> relatedTables = new HashSet<>(Arrays
+        .asList(new String(out.toByteArray(), UTF_8).split("\\R")));
+      assertThat(returnValue, is(instanceOf(AttributedString.class)));
+      assertThat(returnValue.toString(),
+                 is(String.format("Found %d related tables",
+                                  relatedTables.size())));
+      return relatedTables;
+    }
+    finally
+    {
+      System.setOut(systemOut);
+    }
+  }
+
+  private Set<String> tableNames(final String... tableNames)
+  {
+    return new HashSet<>(Arrays.asList(tableNames));
+  }
+
+}
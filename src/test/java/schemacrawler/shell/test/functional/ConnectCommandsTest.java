@@ -44,9 +44,13 @@ import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
+import org.hsqldb.jdbc.JDBCConnection;
 import org.jline.utils.AttributedString;
 import org.junit.After;
 import org.junit.Before;
@@ -62,7 +66,9 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import schemacrawler.shell.commands.ConnectCommands;
+import schemacrawler.shell.state.ResultSetType;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
+import schemacrawler.shell.state.ShellDataSource;
 import schemacrawler.shell.test.BaseSchemaCrawlerShellTest;
 import schemacrawler.shell.test.TestSchemaCrawlerShellState;
 import schemacrawler.test.utility.TestName;
@@ -118,7 +124,9 @@ public class ConnectCommandsTest
                              String.class,
                              String.class,
                              String.class,
-                             String.class)));
+                             String.class,
+                             int.class,
+                             ResultSetType.class)));
     assertThat(commandTarget.getAvailability().isAvailable(), is(true));
     final Object returnValue = invoke(commandTarget,
                                       "hsqldb",
@@ -127,7 +135,9 @@ public class ConnectCommandsTest
                                       "schemacrawler",
                                       "",
                                       "sa",
-                                      "");
+                                      "",
+                                      0,
+                                      ResultSetType.forward_only);
 
     assertThat(returnValue, notNullValue());
     assertThat(returnValue, is(instanceOf(AttributedString.class)));
@@ -152,12 +162,16 @@ public class ConnectCommandsTest
                              commandMethod,
                              String.class,
                              String.class,
-                             String.class)));
+                             String.class,
+                             int.class,
+                             ResultSetType.class)));
     assertThat(commandTarget.getAvailability().isAvailable(), is(true));
     final Object returnValue = invoke(commandTarget,
                                       "jdbc:hsqldb:hsql://localhost:9001/schemacrawler",
                                       "sa",
-                                      "");
+                                      "",
+                                      0,
+                                      ResultSetType.forward_only);
 
     assertThat(returnValue, notNullValue());
     assertThat(returnValue, is(instanceOf(AttributedString.class)));
@@ -165,6 +179,68 @@ public class ConnectCommandsTest
     assertConnection();
   }
 
+  @Test
+  public void connectUrlWithFetchSize()
+    throws SQLException
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "connect-url");
+    final Object returnValue = invoke(commandTarget,
+                                      "jdbc:hsqldb:hsql://localhost:9001/schemacrawler",
+                                      "sa",
+                                      "",
+                                      500,
+                                      ResultSetType.scroll_insensitive);
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue.toString(), startsWith("Connected"));
+    assertConnection();
+
+    final ShellDataSource dataSource = (ShellDataSource) state
+      .getDataSource();
+    assertThat(dataSource.getFetchSize(), is(500));
+    assertThat(dataSource.getResultSetType(),
+               is(ResultSetType.scroll_insensitive));
+
+    try (final Connection connection = dataSource.getConnection();
+        final Statement statement = connection.createStatement();)
+    {
+      assertThat(statement.getFetchSize(), is(500));
+      assertThat(connection.isWrapperFor(JDBCConnection.class), is(true));
+      assertThat(connection.unwrap(JDBCConnection.class),
+                 is(instanceOf(JDBCConnection.class)));
+    }
+  }
+
+  @Test
+  public void connectUrlWithMetadataCache()
+    throws SQLException
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "connect-url");
+    invoke(commandTarget,
+           "jdbc:hsqldb:hsql://localhost:9001/schemacrawler",
+           "sa",
+           "",
+           0,
+           ResultSetType.forward_only);
+    assertConnection();
+
+    final int firstCount;
+    try (final Connection connection = state.getDataSource().getConnection();
+        final ResultSet results = connection.getMetaData()
+          .getTables(null, null, "%", null);)
+    {
+      firstCount = countRows(results);
+    }
+    // Second call is served from the cache, on a different connection
+    try (final Connection connection = state.getDataSource().getConnection();
+        final ResultSet results = connection.getMetaData()
+          .getTables(null, null, "%", null);)
+    {
+      assertThat(Proxy.isProxyClass(results.getClass()), is(true));
+      assertThat(countRows(results), is(firstCount));
+    }
+  }
+
   @Test
   public void servers()
     throws Exception
@@ -220,4 +296,15 @@ public class ConnectCommandsTest
     }
   }
 
+  private int countRows(final ResultSet results)
+    throws SQLException
+  {
+    int count = 0;
+    while (results.next())
+    {
+      count++;
+    }
+    return count;
+  }
+
 }
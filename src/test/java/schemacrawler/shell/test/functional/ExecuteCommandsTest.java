@@ -29,9 +29,11 @@ http://www.gnu.org/licenses/
 package schemacrawler.shell.test.functional;
 
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.hamcrest.core.StringStartsWith.startsWith;
 import static org.junit.Assert.assertThat;
 import static org.springframework.util.ReflectionUtils.findMethod;
@@ -40,11 +42,27 @@ import static schemacrawler.test.utility.FileHasContent.hasNoContent;
 import static schemacrawler.test.utility.FileHasContent.hasSameContentAs;
 import static schemacrawler.test.utility.FileHasContent.outputOf;
 
+import java.io.BufferedReader;
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.sql.DataSource;
 
 import org.jline.utils.AttributedString;
 import org.junit.After;
@@ -60,11 +78,20 @@ import org.springframework.shell.standard.StandardMethodTargetRegistrar;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import schemacrawler.schema.Catalog;
+import schemacrawler.schema.ForeignKey;
+import schemacrawler.schema.Schema;
+import schemacrawler.schema.Table;
 import schemacrawler.schemacrawler.InfoLevel;
 import schemacrawler.schemacrawler.SchemaCrawlerException;
+import schemacrawler.shell.catalog.CatalogSubset;
 import schemacrawler.shell.commands.ConnectCommands;
 import schemacrawler.shell.commands.ExecuteCommands;
 import schemacrawler.shell.commands.LoadCommands;
+import schemacrawler.shell.output.DiagramSplit;
+import schemacrawler.shell.output.OutputCompression;
+import schemacrawler.shell.state.LazyConnection;
+import schemacrawler.shell.state.ResultSetType;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
 import schemacrawler.shell.test.BaseSchemaCrawlerShellTest;
 import schemacrawler.shell.test.TestSchemaCrawlerShellState;
@@ -126,6 +153,115 @@ public class ExecuteCommandsTest
 
   }
 
+  @Test
+  public void dumpData()
+    throws Exception
+  {
+    final String command = "dump-data";
+    final String commandMethod = "dumpData";
+
+    final MethodTarget commandTarget = lookupCommand(registry, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("5. SchemaCrawler Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Dump table data to files, several tables at a time"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class,
+                             String.class,
+                             int.class,
+                             int.class,
+                             int.class,
+                             int.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Path outputDirectory = Files.createTempDirectory("schemacrawler");
+    try
+    {
+      final Object returnValue = invoke(commandTarget,
+                                        outputDirectory.toString(),
+                                        ".*\\.AUTHORS",
+                                        2,
+                                        10,
+                                        1,
+                                        0);
+
+      assertThat(returnValue, notNullValue());
+      assertThat(returnValue, is(instanceOf(AttributedString.class)));
+      assertThat(returnValue.toString(), startsWith("Dumped "));
+
+      final Path dataFile = outputDirectory
+        .resolve("PUBLIC.BOOKS.AUTHORS.csv");
+      assertThat(Files.isRegularFile(dataFile), is(true));
+      try (final BufferedReader reader = Files.newBufferedReader(dataFile,
+                                                                 UTF_8);)
+      {
+        assertThat(reader.readLine(), startsWith("ID,"));
+        assertThat(reader.readLine(), notNullValue());
+      }
+    }
+    finally
+    {
+      deleteDirectory(outputDirectory);
+    }
+    assertThat(outputOf(err), hasNoContent());
+  }
+
+  @Test
+  public void dumpDataWithSimilarNames()
+    throws Exception
+  {
+    // Both table names have characters that are replaced in file names
+    try (final Connection connection = state.getDataSource().getConnection();
+        final Statement statement = connection.createStatement();)
+    {
+      statement.execute("CREATE TABLE BOOKS.\"A B\" (ID INTEGER)");
+      statement.execute("CREATE TABLE BOOKS.\"A#B\" (ID INTEGER)");
+    }
+    final Path outputDirectory = Files.createTempDirectory("schemacrawler");
+    try
+    {
+      // The catalog is refreshed, to see the new tables
+      final LoadCommands loadCommands = new LoadCommands(state);
+      loadCommands.loadCatalog(InfoLevel.standard,
+                               0,
+                               0,
+                               0,
+                               false,
+                               true,
+                               "",
+                               "",
+                               "");
+
+      final MethodTarget commandTarget = lookupCommand(registry, "dump-data");
+      final Object returnValue = invoke(commandTarget,
+                                        outputDirectory.toString(),
+                                        ".*\\.\"A.B\"",
+                                        2,
+                                        0,
+                                        1,
+                                        0);
+
+      assertThat(returnValue.toString(),
+                 is("Dumped 0 rows from 2 tables to " + outputDirectory));
+      assertThat(Files.isRegularFile(outputDirectory
+        .resolve("PUBLIC.BOOKS._A_B_.csv")), is(true));
+      assertThat(Files.isRegularFile(outputDirectory
+        .resolve("PUBLIC.BOOKS._A_B__2.csv")), is(true));
+    }
+    finally
+    {
+      deleteDirectory(outputDirectory);
+      try (final Connection connection = state.getDataSource().getConnection();
+          final Statement statement = connection.createStatement();)
+      {
+        statement.execute("DROP TABLE BOOKS.\"A B\"");
+        statement.execute("DROP TABLE BOOKS.\"A#B\"");
+      }
+    }
+  }
+
   @Test
   public void execute()
     throws Exception
@@ -142,19 +278,28 @@ public class ExecuteCommandsTest
                              commandMethod,
                              String.class,
                              String.class,
-                             String.class)));
+                             String.class,
+                             DiagramSplit.class,
+                             OutputCompression.class,
+                             int.class,
+                             int.class)));
     assertThat(commandTarget.getAvailability().isAvailable(), is(true));
 
     // Check state before invoking command
-    final OutputOptions preOutputOptions = state.getOutputOptionsBuilder()
-      .toOptions();
+    final OutputOptions preOutputOptions = state.getOutputOptions();
     assertThat(preOutputOptions.getOutputFormatValue(), is("text"));
 
-    final Object returnValue = invoke(commandTarget, "schema", "", "text");
+    final Object returnValue = invoke(commandTarget,
+                                      "schema",
+                                      "",
+                                      "text",
+                                      DiagramSplit.none,
+                                      OutputCompression.auto,
+                                      0,
+                                      0);
 
     // Check state after invoking command
-    final OutputOptions postOutputOptions = state.getOutputOptionsBuilder()
-      .toOptions();
+    final OutputOptions postOutputOptions = state.getOutputOptions();
     assertThat(postOutputOptions.getOutputFormatValue(), is("text"));
 
     assertThat(returnValue, notNullValue());
@@ -167,6 +312,289 @@ public class ExecuteCommandsTest
     assertThat(outputOf(err), hasNoContent());
   }
 
+  @Test
+  public void executeCached()
+    throws Exception
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "execute");
+    final OutputOptions outputOptions = state.getOutputOptions();
+
+    final Path outputFile = Files.createTempFile("schemacrawler", ".txt");
+    invoke(commandTarget,
+           "schema",
+           outputFile.toString(),
+           "text",
+           DiagramSplit.none,
+           OutputCompression.auto,
+           0,
+           0);
+    final byte[] output = Files.readAllBytes(outputFile);
+    Files.delete(outputFile);
+
+    // The second run is served from the result cache
+    final Object returnValue = invoke(commandTarget,
+                                      "schema",
+                                      outputFile.toString(),
+                                      "text",
+                                      DiagramSplit.none,
+                                      OutputCompression.auto,
+                                      0,
+                                      0);
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), startsWith("Output sent to "));
+    assertThat(output.length > 0, is(true));
+    assertThat(Files.readAllBytes(outputFile), is(output));
+    assertThat(outputOf(err), hasNoContent());
+    // Session output options are not changed by the output file
+    assertThat(state.getOutputOptions(), is(sameInstance(outputOptions)));
+  }
+
+  @Test
+  public void executeSplit()
+    throws Exception
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "execute");
+
+    final Path outputDirectory = Files.createTempDirectory("schemacrawler");
+    try
+    {
+      final Path outputFile = outputDirectory.resolve("diagram.scdot");
+      final Object returnValue = invoke(commandTarget,
+                                        "schema",
+                                        outputFile.toString(),
+                                        "scdot",
+                                        DiagramSplit.schema,
+                                        OutputCompression.auto,
+                                        0,
+                                        0);
+
+      final Path indexFile = outputDirectory.resolve("diagram.html");
+      assertThat(returnValue.toString(),
+                 is("Diagrams index sent to " + indexFile));
+      assertThat(Files.isRegularFile(indexFile), is(true));
+
+      // One diagram for each schema with tables, and no foreign keys
+      // drawn to tables in other schemas
+      int diagramCount = 0;
+      try (final DirectoryStream<Path> diagrams = Files
+        .newDirectoryStream(outputDirectory, "diagram-*.scdot");)
+      {
+        for (final Path diagram: diagrams)
+        {
+          diagramCount++;
+          final String diagramText = new String(Files.readAllBytes(diagram),
+                                                UTF_8);
+          assertThat(diagram.toString(),
+                     diagramText.contains("FK_SALES_BOOKS"),
+                     is(false));
+        }
+      }
+      final Set<Schema> schemas = new HashSet<>();
+      for (final Table table: state.getCatalog().getTables())
+      {
+        schemas.add(table.getSchema());
+      }
+      assertThat(diagramCount, is(schemas.size()));
+    }
+    finally
+    {
+      deleteDirectory(outputDirectory);
+    }
+    assertThat(outputOf(err), hasNoContent());
+  }
+
+  @Test
+  public void executeSplitWithWeakAssociations()
+    throws Exception
+  {
+    state.updateAdditionalConfiguration(config -> config
+      .put("schemacrawler.format.show_weak_associations", "true"));
+    final MethodTarget commandTarget = lookupCommand(registry, "execute");
+
+    final Path outputDirectory = Files.createTempDirectory("schemacrawler");
+    try
+    {
+      final Path outputFile = outputDirectory.resolve("diagram.scdot");
+      final Object returnValue = invoke(commandTarget,
+                                        "schema",
+                                        outputFile.toString(),
+                                        "scdot",
+                                        DiagramSplit.component,
+                                        OutputCompression.auto,
+                                        0,
+                                        0);
+      assertThat(returnValue.toString(),
+                 is("Diagrams index sent to "
+                    + outputDirectory.resolve("diagram.html")));
+
+      // Weak associations are found once, into sets that diagrams
+      // rendered concurrently can share
+      for (final Table table: state.getCatalog().getTables())
+      {
+        assertThat(table.getFullName(),
+                   table.getAttribute("schemacrawler.weak_associations"),
+                   is(instanceOf(ConcurrentSkipListSet.class)));
+      }
+    }
+    finally
+    {
+      deleteDirectory(outputDirectory);
+    }
+    assertThat(outputOf(err), hasNoContent());
+  }
+
+  @Test
+  public void catalogSubset()
+  {
+    final Catalog catalog = state.getCatalog();
+    final Table books = catalog.getTables().stream()
+      .filter(table -> table.getFullName().equals("PUBLIC.BOOKS.BOOKS"))
+      .findFirst().get();
+    final Collection<Table> tables = catalog.getTables(books.getSchema());
+    final Catalog subset = CatalogSubset.restrict(catalog, tables);
+
+    assertThat(subset.getTables().size(), is(tables.size()));
+    assertThat(subset.getSchemas().size(), is(1));
+
+    // Foreign keys from tables in other schemas are hidden
+    final Table subsetBooks = subset.lookupTable(books.getSchema(), "BOOKS")
+      .get();
+    assertThat(subsetBooks, is(books));
+    assertThat(hasForeignKey(books, "FK_SALES_BOOKS"), is(true));
+    assertThat(hasForeignKey(subsetBooks, "FK_SALES_BOOKS"), is(false));
+    assertThat(hasForeignKey(subsetBooks, "FK_Y_BOOK"), is(true));
+
+    // Attributes of the view do not change the catalog
+    subset.setAttribute("schemacrawler.shell.test", "subset");
+    assertThat(subset.getAttribute("schemacrawler.shell.test"),
+               is("subset"));
+    assertThat(catalog.hasAttribute("schemacrawler.shell.test"), is(false));
+  }
+
+  @Test
+  public void executeWithoutConnection()
+    throws Exception
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "execute");
+
+    // Count connections borrowed from the data source
+    final DataSource dataSource = state.getDataSource();
+    final AtomicInteger borrowed = new AtomicInteger();
+    state.setDataSource((DataSource) Proxy
+      .newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[] { DataSource.class },
+                        (proxy, method, args) -> {
+                          if ("getConnection".equals(method.getName()))
+                          {
+                            borrowed.incrementAndGet();
+                          }
+                          return method.invoke(dataSource, args);
+                        }));
+    final Path outputFile = Files.createTempFile("schemacrawler", ".txt");
+    try
+    {
+      // Schema output needs only the loaded catalog
+      final Object returnValue = invoke(commandTarget,
+                                        "schema",
+                                        outputFile.toString(),
+                                        "text",
+                                        DiagramSplit.none,
+                                        OutputCompression.auto,
+                                        0,
+                                        0);
+      assertThat(returnValue.toString(), startsWith("Output sent to "));
+      assertThat(Files.size(outputFile) > 0, is(true));
+      assertThat(borrowed.get(), is(0));
+
+      // Row counts need the database
+      final Object countValue = invoke(commandTarget,
+                                       "count",
+                                       outputFile.toString(),
+                                       "text",
+                                       DiagramSplit.none,
+                                       OutputCompression.auto,
+                                       0,
+                                       0);
+      assertThat(countValue.toString(), startsWith("Output sent to "));
+      assertThat(borrowed.get(), is(1));
+      assertThat(outputOf(err), hasNoContent());
+    }
+    finally
+    {
+      state.setDataSource(dataSource);
+      Files.deleteIfExists(outputFile);
+    }
+
+    // A connection is borrowed on first use, and not to check whether
+    // it is closed
+    try (final LazyConnection lazyConnection = new LazyConnection(dataSource);)
+    {
+      final Connection connection = lazyConnection.getConnection();
+      assertThat(connection.isClosed(), is(false));
+      assertThat(lazyConnection.isUsed(), is(false));
+      assertThat(connection.getMetaData(), notNullValue());
+      assertThat(lazyConnection.isUsed(), is(true));
+    }
+  }
+
+  @Test
+  public void executeCompressed()
+    throws Exception
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "execute");
+
+    final Path outputFile = Files.createTempFile("schemacrawler", ".txt.gz");
+    try
+    {
+      final Object returnValue = invoke(commandTarget,
+                                        "schema",
+                                        outputFile.toString(),
+                                        "text",
+                                        DiagramSplit.none,
+                                        OutputCompression.auto,
+                                        0,
+                                        0);
+
+      assertThat(returnValue, notNullValue());
+      assertThat(returnValue, is(instanceOf(AttributedString.class)));
+      assertThat(returnValue.toString(), startsWith("Output sent to "));
+
+      try (
+          final BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files
+            .newInputStream(outputFile)), UTF_8));)
+      {
+        assertThat(reader.readLine(), notNullValue());
+      }
+      assertThat(outputOf(err), hasNoContent());
+    }
+    finally
+    {
+      Files.deleteIfExists(outputFile);
+    }
+  }
+
+  @Test
+  public void executeCompressedWithoutOutputFile()
+  {
+    final MethodTarget commandTarget = lookupCommand(registry, "execute");
+
+    final Object returnValue = invoke(commandTarget,
+                                      "schema",
+                                      "",
+                                      "text",
+                                      DiagramSplit.none,
+                                      OutputCompression.gzip,
+                                      0,
+                                      0);
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue.toString(),
+               is("Output file has to be specified for compressed output"));
+    assertThat(outputOf(out), hasNoContent());
+  }
+
   @Before
   public void setup()
     throws SchemaCrawlerException, SQLException
@@ -178,11 +606,23 @@ public class ExecuteCommandsTest
     // Create a connection
     final ConnectCommands connectCommands = new ConnectCommands(state);
     connectCommands
-      .connectUrl("jdbc:hsqldb:hsql://localhost:9001/schemacrawler", "sa", "");
+      .connectUrl("jdbc:hsqldb:hsql://localhost:9001/schemacrawler",
+                  "sa",
+                  "",
+                  0,
+                  ResultSetType.forward_only);
 
     // Load schema
     final LoadCommands loadCommands = new LoadCommands(state);
-    loadCommands.loadCatalog(InfoLevel.standard);
+    loadCommands.loadCatalog(InfoLevel.standard,
+                             0,
+                             0,
+                             0,
+                             false,
+                             false,
+                             "",
+                             "",
+                             "");
   }
 
   @Before
@@ -202,4 +642,30 @@ public class ExecuteCommandsTest
     state.sweep();
   }
 
+  private boolean hasForeignKey(final Table table, final String name)
+  {
+    for (final ForeignKey foreignKey: table.getForeignKeys())
+    {
+      if (foreignKey.getName().equals(name))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void deleteDirectory(final Path directory)
+    throws IOException
+  {
+    try (final DirectoryStream<Path> files = Files
+      .newDirectoryStream(directory);)
+    {
+      for (final Path file: files)
+      {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
 }
@@ -34,6 +34,9 @@ import static org.hamcrest.core.IsCollectionContaining.hasItem;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.springframework.util.ReflectionUtils.findMethod;
+import static schemacrawler.shell.catalog.TableRowCounter.APPROXIMATE_ROW_COUNTS;
+import static schemacrawler.shell.catalog.TableRowCounter.ROW_COUNT_QUERY_TIMEOUT;
+import static schemacrawler.shell.catalog.TableRowCounter.ROW_COUNT_THREADS;
 
 import java.sql.SQLException;
 
@@ -50,12 +53,14 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import schemacrawler.schema.RoutineType;
+import schemacrawler.schemacrawler.Config;
 import schemacrawler.schemacrawler.InclusionRule;
 import schemacrawler.schemacrawler.InclusionRuleWithRegularExpression;
 import schemacrawler.schemacrawler.SchemaCrawlerException;
 import schemacrawler.schemacrawler.SchemaCrawlerOptions;
 import schemacrawler.shell.commands.ConnectCommands;
 import schemacrawler.shell.commands.FilterCommands;
+import schemacrawler.shell.state.ResultSetType;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
 import schemacrawler.shell.test.BaseSchemaCrawlerShellTest;
 import schemacrawler.shell.test.TestSchemaCrawlerShellState;
@@ -98,24 +103,33 @@ public class FilterCommandsTest
                              commandMethod,
                              boolean.class,
                              int.class,
+                             int.class,
+                             boolean.class,
+                             int.class,
                              int.class)));
     assertThat(commandTarget.getAvailability().isAvailable(), is(true));
 
     // Check state before invoking command
     final SchemaCrawlerOptions preOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(preOptions.isNoEmptyTables(), is(false));
     assertThat(preOptions.getChildTableFilterDepth(), is(0));
     assertThat(preOptions.getParentTableFilterDepth(), is(0));
 
-    invoke(commandTarget, true, 1, 1);
+    invoke(commandTarget, true, 1, 1, true, 2, 30);
 
     // Check state after invoking command
     final SchemaCrawlerOptions postOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(postOptions.isNoEmptyTables(), is(true));
     assertThat(postOptions.getChildTableFilterDepth(), is(1));
     assertThat(postOptions.getParentTableFilterDepth(), is(1));
+
+    final Config config = state.getAdditionalConfiguration();
+    assertThat(config.getBooleanValue(APPROXIMATE_ROW_COUNTS, false),
+               is(true));
+    assertThat(config.getIntegerValue(ROW_COUNT_THREADS, 0), is(2));
+    assertThat(config.getIntegerValue(ROW_COUNT_QUERY_TIMEOUT, 0), is(30));
   }
 
   @Test
@@ -141,7 +155,7 @@ public class FilterCommandsTest
 
     // Check state before invoking command
     final SchemaCrawlerOptions preOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(preOptions.isGrepColumns(), is(false));
     assertThat(preOptions.isGrepRoutineColumns(), is(false));
     assertThat(preOptions.isGrepDefinitions(), is(false));
@@ -152,7 +166,7 @@ public class FilterCommandsTest
 
     // Check state after invoking command
     final SchemaCrawlerOptions postOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(postOptions.isGrepColumns(), is(true));
     assertThat(postOptions.isGrepRoutineColumns(), is(true));
     assertThat(postOptions.isGrepDefinitions(), is(true));
@@ -194,7 +208,7 @@ public class FilterCommandsTest
 
     // Check state before invoking command
     final SchemaCrawlerOptions preOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(getInclusionPattern(preOptions.getSchemaInclusionRule()),
                is(".*"));
     assertThat(preOptions.getTableTypes(), hasItem("VIEW"));
@@ -225,7 +239,7 @@ public class FilterCommandsTest
 
     // Check state after invoking command
     final SchemaCrawlerOptions postOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(getInclusionPattern(postOptions.getSchemaInclusionRule()),
                is("t.*t"));
     assertThat(postOptions.getTableTypes(), hasItem("XX"));
@@ -255,7 +269,11 @@ public class FilterCommandsTest
     // Create a connection
     final ConnectCommands connectCommands = new ConnectCommands(state);
     connectCommands
-      .connectUrl("jdbc:hsqldb:hsql://localhost:9001/schemacrawler", "sa", "");
+      .connectUrl("jdbc:hsqldb:hsql://localhost:9001/schemacrawler",
+                  "sa",
+                  "",
+                  0,
+                  ResultSetType.forward_only);
   }
 
   private String getExclusionPattern(final InclusionRule inclusionRule)
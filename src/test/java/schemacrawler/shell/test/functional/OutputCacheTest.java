@@ -0,0 +1,136 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.test.functional;
+
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import schemacrawler.shell.output.OutputCache;
+
+public class OutputCacheTest
+{
+
+  private Path outputDirectory;
+  private Path outputFile;
+
+  @After
+  public void cleanUp()
+    throws IOException
+  {
+    Files.deleteIfExists(outputFile);
+    Files.deleteIfExists(outputFile
+      .resolveSibling(outputFile.getFileName() + ".sha256"));
+    Files.deleteIfExists(outputDirectory);
+  }
+
+  @Test
+  public void eviction()
+    throws IOException
+  {
+    final OutputCache outputCache = new OutputCache(outputFile);
+    final String hash = outputCache.hash("catalog", options("png"));
+    outputCache.update(hash);
+    assertThat(outputCache.isCurrent(hash), is(true));
+
+    // A render that is started drops the stored hash
+    outputCache.invalidate();
+    assertThat(outputCache.isCurrent(hash), is(false));
+
+    // Output that is deleted is rendered again
+    outputCache.update(hash);
+    Files.delete(outputFile);
+    assertThat(outputCache.isCurrent(hash), is(false));
+  }
+
+  @Test
+  public void hit()
+  {
+    final OutputCache outputCache = new OutputCache(outputFile);
+    final String hash = outputCache.hash("catalog", options("png"));
+    assertThat(outputCache.isCurrent(hash), is(false));
+
+    outputCache.update(hash);
+
+    // Hashes do not depend on the order of options
+    final Map<String, String> reorderedOptions = new LinkedHashMap<>();
+    reorderedOptions.put("outputformat", "png");
+    reorderedOptions.put("command", "schema");
+    assertThat(new OutputCache(outputFile)
+      .isCurrent(outputCache.hash("catalog", reorderedOptions)), is(true));
+  }
+
+  @Test
+  public void miss()
+  {
+    final OutputCache outputCache = new OutputCache(outputFile);
+    final String hash = outputCache.hash("catalog", options("png"));
+    outputCache.update(hash);
+
+    final String changedCatalogHash = outputCache.hash("changed catalog",
+                                                       options("png"));
+    final String changedOptionsHash = outputCache.hash("catalog",
+                                                       options("svg"));
+    assertThat(changedCatalogHash, is(not(hash)));
+    assertThat(changedOptionsHash, is(not(hash)));
+    assertThat(outputCache.isCurrent(changedCatalogHash), is(false));
+    assertThat(outputCache.isCurrent(changedOptionsHash), is(false));
+  }
+
+  @Before
+  public void setup()
+    throws IOException
+  {
+    outputDirectory = Files.createTempDirectory("schemacrawler");
+    outputFile = outputDirectory.resolve("diagram.png");
+    Files.write(outputFile, "diagram".getBytes(UTF_8));
+  }
+
+  private Map<String, String> options(final String outputFormat)
+  {
+    final Map<String, String> options = new HashMap<>();
+    options.put("command", "schema");
+    options.put("outputformat", outputFormat);
+    return options;
+  }
+
+}
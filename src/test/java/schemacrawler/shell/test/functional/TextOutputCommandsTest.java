@@ -55,6 +55,7 @@ import schemacrawler.schemacrawler.SchemaCrawlerOptions;
 import schemacrawler.shell.commands.ConnectCommands;
 import schemacrawler.shell.commands.LoadCommands;
 import schemacrawler.shell.commands.TextOutputCommands;
+import schemacrawler.shell.state.ResultSetType;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
 import schemacrawler.shell.test.BaseSchemaCrawlerShellTest;
 import schemacrawler.shell.test.TestSchemaCrawlerShellState;
@@ -98,14 +99,14 @@ public class TextOutputCommandsTest
 
     // Check state before invoking command
     final SchemaCrawlerOptions preOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(preOptions.getTitle(), is(""));
 
     invoke(commandTarget, "title");
 
     // Check state after invoking command
     final SchemaCrawlerOptions postOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(postOptions.getTitle(), is("title"));
   }
 
@@ -120,11 +121,23 @@ public class TextOutputCommandsTest
     // Create a connection
     final ConnectCommands connectCommands = new ConnectCommands(state);
     connectCommands
-      .connectUrl("jdbc:hsqldb:hsql://localhost:9001/schemacrawler", "sa", "");
+      .connectUrl("jdbc:hsqldb:hsql://localhost:9001/schemacrawler",
+                  "sa",
+                  "",
+                  0,
+                  ResultSetType.forward_only);
 
     // Load schema
     final LoadCommands loadCommands = new LoadCommands(state);
-    loadCommands.loadCatalog(InfoLevel.minimum);
+    loadCommands.loadCatalog(InfoLevel.minimum,
+                             0,
+                             0,
+                             0,
+                             false,
+                             false,
+                             "",
+                             "",
+                             "");
   }
 
   @Test
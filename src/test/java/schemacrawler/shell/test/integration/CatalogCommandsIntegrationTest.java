@@ -0,0 +1,210 @@
+/*
+========================================================================
+SchemaCrawler
+http://www.schemacrawler.com
+Copyright (c) 2000-2019, Sualeh Fatehi <sualeh@hotmail.com>.
+All rights reserved.
+------------------------------------------------------------------------
+
+SchemaCrawler is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+
+SchemaCrawler and the accompanying materials are made available under
+the terms of the Eclipse Public License v1.0, GNU General Public License
+v3 or GNU Lesser General Public License v3.
+
+You may elect to redistribute this code under any of these licenses.
+
+The Eclipse Public License is available at:
+http://www.eclipse.org/legal/epl-v10.html
+
+The GNU General Public License v3 and the GNU Lesser General Public
+License v3 are available at:
+http://www.gnu.org/licenses/
+
+========================================================================
+*/
+
+package schemacrawler.shell.test.integration;
+
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.springframework.util.ReflectionUtils.findMethod;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.jline.utils.AttributedString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.shell.MethodTarget;
+import org.springframework.shell.Shell;
+import org.springframework.shell.jline.InteractiveShellApplicationRunner;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import schemacrawler.shell.commands.CatalogCommands;
+import schemacrawler.shell.state.SchemaCrawlerShellState;
+import schemacrawler.shell.test.BaseSchemaCrawlerShellTest;
+import schemacrawler.shell.test.TestSchemaCrawlerShellState;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(properties = {
+                               InteractiveShellApplicationRunner.SPRING_SHELL_INTERACTIVE_ENABLED
+                               + "=" + false })
+@ContextConfiguration(classes = TestSchemaCrawlerShellState.class)
+public class CatalogCommandsIntegrationTest
+  extends BaseSchemaCrawlerShellTest
+{
+
+  private static final Class<?> COMMANDS_CLASS_UNDER_TEST = CatalogCommands.class;
+
+  @Autowired
+  private Shell shell;
+  @Autowired
+  private SchemaCrawlerShellState state;
+
+  @Before
+  public void setup()
+  {
+    connect();
+    loadCatalog();
+  }
+
+  @After
+  public void sweep()
+  {
+    assertThat(shell.evaluate(() -> "sweep"), nullValue());
+    assertThat(shell.evaluate(() -> "is-connected"), is(false));
+  }
+
+  @Test
+  public void diffCatalog()
+    throws IOException
+  {
+    final String command = "diff-catalog";
+    final String commandMethod = "diffCatalog";
+
+    final MethodTarget commandTarget = lookupCommand(shell, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Compare catalog snapshots, or a snapshot with the loaded catalog"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class,
+                             String.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Path snapshotFile = Files.createTempFile("sc", ".snapshot");
+    shell.evaluate(() -> "snapshot-catalog -name before -outputfile "
+                         + snapshotFile);
+    final Object returnValue = shell
+      .evaluate(() -> command + " -from " + snapshotFile);
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), is("Found 0 differences"));
+  }
+
+  @Test
+  public void relatedTables()
+  {
+    final String command = "related-tables";
+    final String commandMethod = "relatedTables";
+
+    final MethodTarget commandTarget = lookupCommand(shell, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("List tables related by foreign keys to matching tables"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class,
+                             int.class,
+                             int.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Object returnValue = shell
+      .evaluate(() -> command + " -tables .*\\.AUTHORS -children 1");
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), startsWith("Found "));
+  }
+
+  @Test
+  public void snapshotCatalog()
+  {
+    final String command = "snapshot-catalog";
+    final String commandMethod = "snapshotCatalog";
+
+    final MethodTarget commandTarget = lookupCommand(shell, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Save a fingerprint of the loaded catalog, to compare with later"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             String.class,
+                             String.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Object returnValue = shell.evaluate(() -> command
+                                                    + " -name snapshot");
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), startsWith("Saved snapshot snapshot"));
+  }
+
+  @Test
+  public void weakAssociations()
+  {
+    final String command = "weak-associations";
+    final String commandMethod = "weakAssociations";
+
+    final MethodTarget commandTarget = lookupCommand(shell, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("7. Catalog Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("List weak associations inferred from column names"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST, commandMethod)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Object returnValue = shell.evaluate(() -> command);
+
+    assertThat(returnValue, notNullValue());
+    assertThat(returnValue, is(instanceOf(AttributedString.class)));
+    assertThat(returnValue.toString(), startsWith("Found "));
+  }
+
+  private void connect()
+  {
+    shell
+      .evaluate(() -> "connect -server hsqldb -user sa -database schemacrawler");
+    assertThat(state.isConnected(), is(true));
+  }
+
+  private void loadCatalog()
+  {
+    shell.evaluate(() -> "load-catalog -infolevel standard");
+    assertThat(state.isLoaded(), is(true));
+  }
+
+}
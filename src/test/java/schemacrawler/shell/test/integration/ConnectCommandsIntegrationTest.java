@@ -64,6 +64,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import schemacrawler.shell.commands.ConnectCommands;
+import schemacrawler.shell.state.ResultSetType;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
 import schemacrawler.shell.test.BaseSchemaCrawlerShellTest;
 import schemacrawler.shell.test.TestSchemaCrawlerShellState;
@@ -120,7 +121,9 @@ public class ConnectCommandsIntegrationTest
                              String.class,
                              String.class,
                              String.class,
-                             String.class)));
+                             String.class,
+                             int.class,
+                             ResultSetType.class)));
     assertThat(commandTarget.getAvailability().isAvailable(), is(true));
 
     assertThat(shell.evaluate(() -> "is-connected"), is(false));
@@ -155,7 +158,9 @@ public class ConnectCommandsIntegrationTest
                              commandMethod,
                              String.class,
                              String.class,
-                             String.class)));
+                             String.class,
+                             int.class,
+                             ResultSetType.class)));
     assertThat(commandTarget.getAvailability().isAvailable(), is(true));
 
     assertThat(shell.evaluate(() -> "is-connected"), is(false));
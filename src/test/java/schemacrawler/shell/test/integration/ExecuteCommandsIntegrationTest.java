@@ -62,6 +62,8 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import schemacrawler.shell.commands.ExecuteCommands;
+import schemacrawler.shell.output.DiagramSplit;
+import schemacrawler.shell.output.OutputCompression;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
 import schemacrawler.shell.test.BaseSchemaCrawlerShellTest;
 import schemacrawler.shell.test.TestSchemaCrawlerShellState;
@@ -141,20 +143,22 @@ public class ExecuteCommandsIntegrationTest
                              commandMethod,
                              String.class,
                              String.class,
-                             String.class)));
+                             String.class,
+                             DiagramSplit.class,
+                             OutputCompression.class,
+                             int.class,
+                             int.class)));
     assertThat(commandTarget.getAvailability().isAvailable(), is(true));
 
     // Check state before invoking command
-    final OutputOptions preOutputOptions = state.getOutputOptionsBuilder()
-      .toOptions();
+    final OutputOptions preOutputOptions = state.getOutputOptions();
     assertThat(preOutputOptions.getOutputFormatValue(), is("text"));
 
     final Object returnValue = shell
       .evaluate(() -> command + " -command schema -fmt text");
 
     // Check state after invoking command
-    final OutputOptions postOutputOptions = state.getOutputOptionsBuilder()
-      .toOptions();
+    final OutputOptions postOutputOptions = state.getOutputOptions();
     assertThat(postOutputOptions.getOutputFormatValue(), is("text"));
 
     assertThat(returnValue, notNullValue());
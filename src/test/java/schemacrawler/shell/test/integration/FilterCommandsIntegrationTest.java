@@ -36,6 +36,9 @@ import static org.hamcrest.core.IsNot.not;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.springframework.util.ReflectionUtils.findMethod;
+import static schemacrawler.shell.catalog.TableRowCounter.APPROXIMATE_ROW_COUNTS;
+import static schemacrawler.shell.catalog.TableRowCounter.ROW_COUNT_QUERY_TIMEOUT;
+import static schemacrawler.shell.catalog.TableRowCounter.ROW_COUNT_THREADS;
 
 import org.junit.After;
 import org.junit.Before;
@@ -50,6 +53,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import schemacrawler.schema.RoutineType;
+import schemacrawler.schemacrawler.Config;
 import schemacrawler.schemacrawler.InclusionRule;
 import schemacrawler.schemacrawler.InclusionRuleWithRegularExpression;
 import schemacrawler.schemacrawler.SchemaCrawlerOptions;
@@ -103,26 +107,36 @@ public class FilterCommandsIntegrationTest
                              commandMethod,
                              boolean.class,
                              int.class,
+                             int.class,
+                             boolean.class,
+                             int.class,
                              int.class)));
     assertThat(commandTarget.getAvailability().isAvailable(), is(true));
 
     // Check state before invoking command
     final SchemaCrawlerOptions preOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(preOptions.isNoEmptyTables(), is(false));
     assertThat(preOptions.getChildTableFilterDepth(), is(0));
     assertThat(preOptions.getParentTableFilterDepth(), is(0));
 
     assertThat(shell
-      .evaluate(() -> command + " -noemptytables -parents 1 -children 1"),
+      .evaluate(() -> command
+                      + " -noemptytables -parents 1 -children 1 -approximatecounts -countthreads 2 -counttimeout 30"),
                not(instanceOf(Throwable.class)));
 
     // Check state after invoking command
     final SchemaCrawlerOptions postOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(postOptions.isNoEmptyTables(), is(true));
     assertThat(postOptions.getChildTableFilterDepth(), is(1));
     assertThat(postOptions.getParentTableFilterDepth(), is(1));
+
+    final Config config = state.getAdditionalConfiguration();
+    assertThat(config.getBooleanValue(APPROXIMATE_ROW_COUNTS, false),
+               is(true));
+    assertThat(config.getIntegerValue(ROW_COUNT_THREADS, 0), is(2));
+    assertThat(config.getIntegerValue(ROW_COUNT_QUERY_TIMEOUT, 0), is(30));
   }
 
   @Test
@@ -147,7 +161,7 @@ public class FilterCommandsIntegrationTest
 
     // Check state before invoking command
     final SchemaCrawlerOptions preOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(preOptions.isGrepColumns(), is(false));
     assertThat(preOptions.isGrepRoutineColumns(), is(false));
     assertThat(preOptions.isGrepDefinitions(), is(false));
@@ -161,7 +175,7 @@ public class FilterCommandsIntegrationTest
 
     // Check state after invoking command
     final SchemaCrawlerOptions postOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(postOptions.isGrepColumns(), is(true));
     assertThat(postOptions.isGrepRoutineColumns(), is(true));
     assertThat(postOptions.isGrepDefinitions(), is(true));
@@ -202,7 +216,7 @@ public class FilterCommandsIntegrationTest
 
     // Check state before invoking command
     final SchemaCrawlerOptions preOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(getInclusionPattern(preOptions.getSchemaInclusionRule()),
                is(".*"));
     assertThat(preOptions.getTableTypes(), hasItem("VIEW"));
@@ -228,7 +242,7 @@ public class FilterCommandsIntegrationTest
 
     // Check state after invoking command
     final SchemaCrawlerOptions postOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(getInclusionPattern(postOptions.getSchemaInclusionRule()),
                is("t.*t"));
     assertThat(postOptions.getTableTypes(), hasItem("XX"));
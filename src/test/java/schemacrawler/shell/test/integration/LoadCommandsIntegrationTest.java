@@ -50,6 +50,7 @@ import org.springframework.shell.jline.InteractiveShellApplicationRunner;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import schemacrawler.crawl.MetadataRetrievalStrategy;
 import schemacrawler.schemacrawler.InfoLevel;
 import schemacrawler.shell.commands.LoadCommands;
 import schemacrawler.shell.state.SchemaCrawlerShellState;
@@ -93,7 +94,15 @@ public class LoadCommandsIntegrationTest
     assertThat(commandTarget.getMethod(),
                is(findMethod(COMMANDS_CLASS_UNDER_TEST,
                              commandMethod,
-                             InfoLevel.class)));
+                             InfoLevel.class,
+                             int.class,
+                             int.class,
+                             int.class,
+                             boolean.class,
+                             boolean.class,
+                             String.class,
+                             String.class,
+                             String.class)));
     assertThat(commandTarget.getAvailability().isAvailable(), is(true));
 
     assertThat(state.getCatalog(), nullValue());
@@ -111,6 +120,38 @@ public class LoadCommandsIntegrationTest
     assertThat(shell.evaluate(() -> "is-loaded"), is(true));
   }
 
+  @Test
+  public void retrieval()
+  {
+    final String command = "retrieval";
+    final String commandMethod = "retrieval";
+
+    final MethodTarget commandTarget = lookupCommand(shell, command);
+    assertThat(commandTarget, notNullValue());
+    assertThat(commandTarget.getGroup(), is("3. Catalog Load Commands"));
+    assertThat(commandTarget.getHelp(),
+               is("Choose how each type of metadata is retrieved"));
+    assertThat(commandTarget.getMethod(),
+               is(findMethod(COMMANDS_CLASS_UNDER_TEST,
+                             commandMethod,
+                             MetadataRetrievalStrategy.class,
+                             MetadataRetrievalStrategy.class,
+                             MetadataRetrievalStrategy.class,
+                             MetadataRetrievalStrategy.class,
+                             MetadataRetrievalStrategy.class)));
+    assertThat(commandTarget.getAvailability().isAvailable(), is(true));
+
+    final Object returnValue = shell
+      .evaluate(() -> command + " -columns data_dictionary_all");
+
+    assertThat(returnValue, nullValue());
+    assertThat(state.getSchemaRetrievalOptionsBuilder().toOptions()
+      .getTableColumnRetrievalStrategy(),
+               is(MetadataRetrievalStrategy.data_dictionary_all));
+    assertThat(state.getSchemaRetrievalOptionsBuilder().toOptions()
+      .getTableRetrievalStrategy(), is(MetadataRetrievalStrategy.metadata));
+  }
+
   @After
   public void sweep()
   {
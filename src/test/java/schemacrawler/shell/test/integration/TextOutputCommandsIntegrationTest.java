@@ -94,7 +94,7 @@ public class TextOutputCommandsIntegrationTest
 
     // Check state before invoking command
     final SchemaCrawlerOptions preOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(preOptions.getTitle(), is(""));
 
     assertThat(shell.evaluate(() -> command + " -title title"),
@@ -102,7 +102,7 @@ public class TextOutputCommandsIntegrationTest
 
     // Check state after invoking command
     final SchemaCrawlerOptions postOptions = state
-      .getSchemaCrawlerOptionsBuilder().toOptions();
+      .getSchemaCrawlerOptions();
     assertThat(postOptions.getTitle(), is("title"));
   }
 